@@ -3,6 +3,7 @@ package org.apache.lucene.index;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.ChecksumIndexInput;
 import org.apache.lucene.document.Document;
 import java.text.NumberFormat;
 import java.io.PrintStream;
@@ -10,6 +11,7 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
 import org.apache.lucene.document.Fieldable; // for javadoc
 
@@ -180,6 +182,14 @@ public class CheckIndex {
 			 * @see Fieldable#setOmitTf
 			 */
 			public boolean hasProx;
+
+			/**
+			 * Number of files verified against the checksums recorded in the
+			 * segments file, or -1 if none were recorded.
+			 * 
+			 * @see IndexWriter#setChecksumFiles
+			 */
+			public int numChecksummedFiles = -1;
 		}
 	}
 
@@ -334,6 +344,8 @@ public class CheckIndex {
 				sFormat = "FORMAT_DEL_COUNT [Lucene 2.4]";
 			else if (format == SegmentInfos.FORMAT_HAS_PROX)
 				sFormat = "FORMAT_HAS_PROX [Lucene 2.4]";
+			else if (format == SegmentInfos.FORMAT_FILE_CHECKSUMS)
+				sFormat = "FORMAT_FILE_CHECKSUMS [Lucene 2.4]";
 			else if (format < SegmentInfos.CURRENT_FORMAT) {
 				sFormat = "int=" + format
 						+ " [newer version of Lucene than this tool]";
@@ -417,6 +429,28 @@ public class CheckIndex {
 					segInfoStat.hasDeletions = true;
 					segInfoStat.deletionsFileName = delFileName;
 				}
+				final Map checksums = info.getChecksums();
+				if (checksums != null) {
+					if (infoStream != null)
+						infoStream.print("    test: file checksums......");
+					Iterator it = checksums.entrySet().iterator();
+					while (it.hasNext()) {
+						final Map.Entry entry = (Map.Entry) it.next();
+						final String fileName = (String) entry.getKey();
+						final long expected = ((Long) entry.getValue())
+								.longValue();
+						final long actual = ChecksumIndexInput.checksum(dir,
+								fileName);
+						if (actual != expected)
+							throw new RuntimeException(
+									"checksum mismatch in file " + fileName
+											+ ": expected " + expected
+											+ " but got " + actual);
+					}
+					segInfoStat.numChecksummedFiles = checksums.size();
+					msg("OK [" + checksums.size() + " files]");
+				}
+
 				if (infoStream != null)
 					infoStream.print("    test: open reader.........");
 				reader = SegmentReader.get(info);
@@ -461,6 +495,7 @@ public class CheckIndex {
 					infoStream.print("    test: terms, freq, prox...");
 				final TermEnum termEnum = reader.terms();
 				final TermPositions termPositions = reader.termPositions();
+				final ImpactTermDocs impacts = (ImpactTermDocs) termPositions;
 
 				// Used only to count up # deleted docs for this
 				// term
@@ -475,6 +510,9 @@ public class CheckIndex {
 					final Term term = termEnum.term();
 					final int docFreq = termEnum.docFreq();
 					termPositions.seek(term);
+					final int maxFreq = impacts.maxFreq();
+					final int maxNorm = impacts.maxNorm() & 0xFF;
+					final byte[] norms = reader.norms(term.field());
 					int lastDoc = -1;
 					int freq0 = 0;
 					totFreq += docFreq;
@@ -490,6 +528,27 @@ public class CheckIndex {
 							throw new RuntimeException("term " + term
 									+ ": doc " + doc + ": freq " + freq
 									+ " is out of bounds");
+						if (maxFreq > 0 && freq > maxFreq)
+							throw new RuntimeException("term " + term
+									+ ": doc " + doc + ": freq " + freq
+									+ " > maxFreq " + maxFreq);
+						final int norm = norms[doc] & 0xFF;
+						if (maxNorm > 0 && norm > maxNorm)
+							throw new RuntimeException("term " + term
+									+ ": doc " + doc + ": norm " + norm
+									+ " > maxNorm " + maxNorm);
+						final int blockMaxFreq = impacts.blockMaxFreq(doc);
+						if (blockMaxFreq > 0 && freq > blockMaxFreq)
+							throw new RuntimeException("term " + term
+									+ ": doc " + doc + ": freq " + freq
+									+ " > maxFreq " + blockMaxFreq
+									+ " of its skip block");
+						final int blockMaxNorm = impacts.blockMaxNorm() & 0xFF;
+						if (blockMaxNorm > 0 && norm > blockMaxNorm)
+							throw new RuntimeException("term " + term
+									+ ": doc " + doc + ": norm " + norm
+									+ " > maxNorm " + blockMaxNorm
+									+ " of its skip block");
 
 						int lastPos = -1;
 						totPos += freq;
@@ -136,7 +136,10 @@ class CompoundFileReader extends Directory {
         if (entry == null)
             throw new IOException("No sub-file with id " + id + " found");
 
-        return new CSIndexInput(stream, entry.offset, entry.length, readBufferSize);
+        CSIndexInput input = new CSIndexInput(stream, entry.offset, entry.length, readBufferSize);
+        input.setMaxBufferSize(directory.getReadAheadSize(id));
+        return input;
+
     }
 
     /** Returns an array of strings, one for each file in the directory. */
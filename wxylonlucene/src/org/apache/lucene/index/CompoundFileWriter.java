@@ -20,6 +20,7 @@ package org.apache.lucene.index;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RAMOutputStream;
 import java.util.LinkedList;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -207,6 +208,65 @@ final class CompoundFileWriter {
         }
     }
 
+    /** Copies the compound file src in srcDir to dest in
+     *  destDir, renaming the sub-files of segment oldSegment
+     *  to belong to newSegment.  Only the directory at the
+     *  start of the file is rewritten; the data of the
+     *  sub-files is copied as is.
+     */
+    static void copyRenamed(Directory srcDir, String src, Directory destDir, String dest,
+                            String oldSegment, String newSegment)
+    throws IOException
+    {
+        IndexInput is = null;
+        IndexOutput os = null;
+        try {
+            is = srcDir.openInput(src);
+            final int count = is.readVInt();
+            final long[] offsets = new long[count];
+            final String[] ids = new String[count];
+            for (int i=0; i<count; i++) {
+                offsets[i] = is.readLong();
+                ids[i] = is.readString();
+                if (ids[i].startsWith(oldSegment))
+                    ids[i] = newSegment + ids[i].substring(oldSegment.length());
+            }
+            final long dataStart = is.getFilePointer();
+
+            // The new names may differ in length, so write the
+            // directory once to learn by how much the data moves
+            RAMOutputStream header = new RAMOutputStream();
+            writeDirectory(header, offsets, ids, 0);
+            final long shift = header.getFilePointer() - dataStart;
+            header.reset();
+            writeDirectory(header, offsets, ids, shift);
+
+            os = destDir.createOutput(dest);
+            header.writeTo(os);
+            os.copyBytes(is, is.length() - dataStart);
+
+            IndexOutput tmp = os;
+            os = null;
+            tmp.close();
+        } finally {
+            try {
+                if (os != null) try { os.close(); } catch (IOException e) { }
+            } finally {
+                if (is != null) is.close();
+            }
+        }
+    }
+
+    private static void writeDirectory(IndexOutput os, long[] offsets, String[] ids, long shift)
+    throws IOException
+    {
+        os.writeVInt(ids.length);
+        for (int i=0; i<ids.length; i++) {
+            os.writeLong(offsets[i] + shift);
+            os.writeString(ids[i]);
+        }
+    }
+
     /** Copy the contents of the file with specified extension into the
      *  provided output stream. Use the provided buffer for moving data
      *  to reduce memory allocation.
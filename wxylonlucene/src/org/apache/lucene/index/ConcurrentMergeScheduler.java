@@ -18,19 +18,31 @@ package org.apache.lucene.index;
  */
 
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RateLimiter;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.ArrayList;
 
 /** A {@link MergeScheduler} that runs each merge using a
  *  separate thread, up until a maximum number of threads
- *  ({@link #setMaxThreadCount}) at which when a merge is
+ *  ({@link #setMaxMergeCount}) at which when a merge is
  *  needed, the thread(s) that are updating the index will
  *  pause until one or more merges completes.  This is a
  *  simple way to use concurrency in the indexing process
  *  without having to create and manage application level
- *  threads. */
+ *  threads.
+ *
+ *  <p>At most {@link #setMaxThreadCount} merges actually run
+ *  at once: if more merge threads exist, the ones with the
+ *  biggest merges are paused until smaller merges finish,
+ *  so small merges are not held up behind big ones.  The
+ *  rate at which merges write can be limited per merge
+ *  ({@link #setMaxMergeMBPerSec}) and for all merges
+ *  together ({@link #setMaxTotalMergeMBPerSec}), to leave
+ *  disk bandwidth to searches.</p> */
 
 public class ConcurrentMergeScheduler extends MergeScheduler {
 
@@ -38,9 +50,20 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
 
   protected List mergeThreads = new ArrayList();
 
-  // Max number of threads allowed to be merging at once
+  // Max number of threads allowed to be merging at once;
+  // merge threads beyond this are paused
   private int maxThreadCount = 3;
 
+  // Max number of merge threads, running or paused, before
+  // incoming threads stall; -1 means maxThreadCount+2
+  private int maxMergeCount = -1;
+
+  // Write rate limit of each merge in MB/sec; 0 means none
+  private double maxMergeMBPerSec;
+
+  // Shared by all merges of this scheduler
+  private final RateLimiter totalRateLimiter = new RateLimiter(0);
+
   private List exceptions = new ArrayList();
   protected Directory dir;
 
@@ -56,22 +79,71 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
   }
 
   /** Sets the max # simultaneous threads that may be
-   *  running.  If a merge is necessary yet we already have
-   *  this many threads running, the incoming thread (that
-   *  is calling add/updateDocument) will block until
-   *  a merge thread has completed. */
-  public void setMaxThreadCount(int count) {
+   *  running.  If more merge threads exist (see {@link
+   *  #setMaxMergeCount}), those with the biggest merges are
+   *  paused until the others complete. */
+  public synchronized void setMaxThreadCount(int count) {
     if (count < 1)
       throw new IllegalArgumentException("count should be at least 1");
+    if (maxMergeCount != -1 && count > maxMergeCount)
+      throw new IllegalArgumentException("count should be <= maxMergeCount (= " + maxMergeCount + ")");
     maxThreadCount = count;
+    updateMergeThreads();
   }
 
   /** Get the max # simultaneous threads that may be
    *  running. @see #setMaxThreadCount. */
-  public int getMaxThreadCount() {
+  public synchronized int getMaxThreadCount() {
     return maxThreadCount;
   }
 
+  /** Sets the max # merge threads, running or paused, that
+   *  may exist.  If a merge is necessary yet we already have
+   *  this many threads, the incoming thread (that is calling
+   *  add/updateDocument) will block until a merge thread has
+   *  completed.  Must be at least {@link #getMaxThreadCount};
+   *  by default it is 2 more. */
+  public synchronized void setMaxMergeCount(int count) {
+    if (count < maxThreadCount)
+      throw new IllegalArgumentException("count should be >= maxThreadCount (= " + maxThreadCount + ")");
+    maxMergeCount = count;
+  }
+
+  /** Get the max # merge threads that may exist.
+   *  @see #setMaxMergeCount */
+  public synchronized int getMaxMergeCount() {
+    return maxMergeCount == -1 ? maxThreadCount+2 : maxMergeCount;
+  }
+
+  /** Limits the rate at which each merge writes, in MB per
+   *  second.  0 (the default) means no limit.  Applies to
+   *  running merges too. */
+  public synchronized void setMaxMergeMBPerSec(double mbPerSec) {
+    if (mbPerSec < 0)
+      throw new IllegalArgumentException("mbPerSec should be >= 0");
+    maxMergeMBPerSec = mbPerSec;
+    final int numThreads = mergeThreads.size();
+    for(int i=0;i<numThreads;i++)
+      ((MergeThread) mergeThreads.get(i)).getCurrentMerge().rateLimiter.setMbPerSec(mbPerSec);
+  }
+
+  /** @see #setMaxMergeMBPerSec */
+  public synchronized double getMaxMergeMBPerSec() {
+    return maxMergeMBPerSec;
+  }
+
+  /** Limits the rate at which all merges of this scheduler
+   *  together write, in MB per second.  0 (the default)
+   *  means no limit. */
+  public void setMaxTotalMergeMBPerSec(double mbPerSec) {
+    totalRateLimiter.setMbPerSec(mbPerSec);
+  }
+
+  /** @see #setMaxTotalMergeMBPerSec */
+  public double getMaxTotalMergeMBPerSec() {
+    return totalRateLimiter.getMbPerSec();
+  }
+
   /** Return the priority that merge threads run at.  By
    *  default the priority is 1 plus the priority of (ie,
    *  slightly higher priority than) the first thread that
@@ -126,6 +198,42 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
       }
     }
   }
+  /** Runs the maxThreadCount smallest merges and pauses
+   *  the others. */
+  private synchronized void updateMergeThreads() {
+    final List active = new ArrayList();
+    final int numThreads = mergeThreads.size();
+    for(int i=0;i<numThreads;i++) {
+      MergeThread mergeThread = (MergeThread) mergeThreads.get(i);
+      if (mergeThread.isAlive())
+        active.add(mergeThread);
+    }
+
+    Collections.sort(active, new Comparator() {
+        public int compare(Object a, Object b) {
+          final long sizeA = ((MergeThread) a).getCurrentMerge().estimatedMergeBytes;
+          final long sizeB = ((MergeThread) b).getCurrentMerge().estimatedMergeBytes;
+          return sizeA < sizeB ? -1 : (sizeA == sizeB ? 0 : 1);
+        }
+      });
+
+    final int numActive = active.size();
+    for(int i=0;i<numActive;i++) {
+      final MergePolicy.OneMerge merge = ((MergeThread) active.get(i)).getCurrentMerge();
+      final boolean pause = i >= maxThreadCount;
+      if (pause != merge.getPause()) {
+        message((pause ? "pause " : "resume ") + merge.segString(dir));
+        merge.setPause(pause);
+      }
+    }
+  }
+
+  /** Applies the write rate limits to a merge about to run. */
+  private synchronized void initRateLimits(MergePolicy.OneMerge merge) {
+    merge.rateLimiter.setMbPerSec(maxMergeMBPerSec);
+    merge.totalRateLimiter = totalRateLimiter;
+  }
+
   private synchronized int mergeThreadCount() {
     int count = 0;
     final int numThreads = mergeThreads.size();
@@ -176,7 +284,7 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
       writer.mergeInit(merge);
 
       synchronized(this) {
-        while (mergeThreadCount() >= maxThreadCount) {
+        while (mergeThreadCount() >= getMaxMergeCount()) {
           message("    too many merge threads running; stalling...");
           try {
             wait();
@@ -187,14 +295,16 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
 
         message("  consider merge " + merge.segString(dir));
       
-        assert mergeThreadCount() < maxThreadCount;
+        assert mergeThreadCount() < getMaxMergeCount();
 
         // OK to spawn a new merge thread to handle this
         // merge:
+        initRateLimits(merge);
         final MergeThread merger = getMergeThread(writer, merge);
         mergeThreads.add(merger);
         message("    launch new thread [" + merger.getName() + "]");
         merger.start();
+        updateMergeThreads();
       }
     }
   }
@@ -233,6 +343,31 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
       return runningMerge;
     }
 
+    /** Returns the merge this thread is running, or is
+     *  about to run. */
+    public MergePolicy.OneMerge getCurrentMerge() {
+      MergePolicy.OneMerge merge = getRunningMerge();
+      return merge == null ? startMerge : merge;
+    }
+
+    /** Returns the total size of the segments the current
+     *  merge reads. */
+    public long getMergeBytes() {
+      return getCurrentMerge().getEstimatedMergeBytes();
+    }
+
+    /** Returns the number of bytes the current merge has
+     *  written so far. */
+    public long getBytesWritten() {
+      return getCurrentMerge().getBytesWritten();
+    }
+
+    /** Returns true if the current merge is paused because
+     *  smaller merges are running. */
+    public boolean isPaused() {
+      return getCurrentMerge().getPause();
+    }
+
     public void setThreadPriority(int pri) {
       try {
         setPriority(pri);
@@ -264,6 +399,9 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
           merge = writer.getNextMerge();
           if (merge != null) {
             writer.mergeInit(merge);
+            initRateLimits(merge);
+            setRunningMerge(merge);
+            updateMergeThreads();
             message("  merge thread: do another merge " + merge.segString(dir));
           } else
             break;
@@ -291,15 +429,15 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
           ConcurrentMergeScheduler.this.notifyAll();
           boolean removed = mergeThreads.remove(this);
           assert removed;
+          // let a paused merge take our place
+          updateMergeThreads();
         }
       }
     }
 
     public String toString() {
-      MergePolicy.OneMerge merge = getRunningMerge();
-      if (merge == null)
-        merge = startMerge;
-      return "merge thread: " + merge.segString(dir);
+      MergePolicy.OneMerge merge = getCurrentMerge();
+      return "merge thread: " + merge.segString(dir) + " (" + merge.getBytesWritten() + " of ~" + merge.getEstimatedMergeBytes() + " bytes written" + (merge.getPause() ? ", paused" : "") + ")";
     }
   }
 
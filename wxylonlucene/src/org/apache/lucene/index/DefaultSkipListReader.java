@@ -29,6 +29,9 @@ import org.apache.lucene.store.IndexInput;
  */
 class DefaultSkipListReader extends MultiLevelSkipListReader {
   private boolean currentFieldStoresPayloads;
+  private final boolean hasImpacts;
+  private int maxFreq;
+  private byte maxNorm;
   private long freqPointer[];
   private long proxPointer[];
   private int payloadLength[];
@@ -38,8 +41,9 @@ class DefaultSkipListReader extends MultiLevelSkipListReader {
   private int lastPayloadLength;
                            
 
-  DefaultSkipListReader(IndexInput skipStream, int maxSkipLevels, int skipInterval) {
+  DefaultSkipListReader(IndexInput skipStream, int maxSkipLevels, int skipInterval, boolean hasImpacts) {
     super(skipStream, maxSkipLevels, skipInterval);
+    this.hasImpacts = hasImpacts;
     freqPointer = new long[maxSkipLevels];
     proxPointer = new long[maxSkipLevels];
     payloadLength = new int[maxSkipLevels];
@@ -75,6 +79,19 @@ class DefaultSkipListReader extends MultiLevelSkipListReader {
     return lastPayloadLength;
   }
   
+  /** Returns the largest term frequency of the documents after
+   * {@link #getDoc()} up to and including {@link #getNextSkipDoc()},
+   * or 0 if the skip data does not record it. */
+  int getMaxFreq() {
+    return maxFreq;
+  }
+
+  /** Returns the largest norm of the same documents, or 0 if the
+   * skip data does not record it. */
+  byte getMaxNorm() {
+    return maxNorm;
+  }
+
   protected void seekChild(int level) throws IOException {
     super.seekChild(level);
     freqPointer[level] = lastFreqPointer;
@@ -108,6 +125,10 @@ class DefaultSkipListReader extends MultiLevelSkipListReader {
     }
     freqPointer[level] += skipStream.readVInt();
     proxPointer[level] += skipStream.readVInt();
+    if (level == 0 && hasImpacts) {
+      maxFreq = skipStream.readVInt();
+      maxNorm = skipStream.readByte();
+    }
     
     return delta;
   }
@@ -42,11 +42,15 @@ class DefaultSkipListWriter extends MultiLevelSkipListWriter {
   private int curPayloadLength;
   private long curFreqPointer;
   private long curProxPointer;
+  private int curMaxFreq;
+  private byte curMaxNorm;
+  private boolean recordImpacts;
   
-  DefaultSkipListWriter(int skipInterval, int numberOfSkipLevels, int docCount, IndexOutput freqOutput, IndexOutput proxOutput) {
+  DefaultSkipListWriter(int skipInterval, int numberOfSkipLevels, int docCount, IndexOutput freqOutput, IndexOutput proxOutput, boolean recordImpacts) {
     super(skipInterval, numberOfSkipLevels, docCount);
     this.freqOutput = freqOutput;
     this.proxOutput = proxOutput;
+    this.recordImpacts = recordImpacts;
     
     lastSkipDoc = new int[numberOfSkipLevels];
     lastSkipPayloadLength = new int[numberOfSkipLevels];
@@ -55,12 +59,17 @@ class DefaultSkipListWriter extends MultiLevelSkipListWriter {
   }
 
   /**
-   * Sets the values for the current skip data. 
+   * Sets the values for the current skip data.
+   * @param maxFreq the largest term frequency of the documents
+   *        after the previous skip point up to and including doc
+   * @param maxNorm the largest norm of these documents, or 0
    */
-  void setSkipData(int doc, boolean storePayloads, int payloadLength) {
+  void setSkipData(int doc, boolean storePayloads, int payloadLength, int maxFreq, byte maxNorm) {
     this.curDoc = doc;
     this.curStorePayloads = storePayloads;
     this.curPayloadLength = payloadLength;
+    this.curMaxFreq = maxFreq;
+    this.curMaxNorm = maxNorm;
     this.curFreqPointer = freqOutput.getFilePointer();
     if (proxOutput != null)
       this.curProxPointer = proxOutput.getFilePointer();
@@ -86,6 +95,10 @@ class DefaultSkipListWriter extends MultiLevelSkipListWriter {
     //           DocSkip,FreqSkip,ProxSkip --> VInt
     //           DocSkip records the document number before every SkipInterval th  document in TermFreqs. 
     //           Document numbers are represented as differences from the previous value in the sequence.
+    //           On level 0, if the term dictionary is in FORMAT_IMPACTS, a VInt MaxFreq and a
+    //           byte MaxNorm follow ProxSkip: the largest term frequency and norm of the
+    //           documents after the previous skip point up to and including DocSkip, MaxNorm 0
+    //           if not known.
     // Case 2: current field stores payloads
     //           SkipDatum                 --> DocSkip, PayloadLength?, FreqSkip,ProxSkip
     //           DocSkip,FreqSkip,ProxSkip --> VInt
@@ -115,6 +128,10 @@ class DefaultSkipListWriter extends MultiLevelSkipListWriter {
     }
     skipBuffer.writeVInt((int) (curFreqPointer - lastSkipFreqPointer[level]));
     skipBuffer.writeVInt((int) (curProxPointer - lastSkipProxPointer[level]));
+    if (level == 0 && recordImpacts) {
+      skipBuffer.writeVInt(curMaxFreq);
+      skipBuffer.writeByte(curMaxNorm);
+    }
 
     lastSkipDoc[level] = curDoc;
     //System.out.println("write doc at level " + level + ": " + curDoc);
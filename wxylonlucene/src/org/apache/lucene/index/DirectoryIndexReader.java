@@ -34,6 +34,11 @@ abstract class DirectoryIndexReader extends IndexReader {
 
 	protected boolean readOnly;
 
+	// Set on readers returned by IndexWriter.getReader(): the writer they
+	// reopen from, and its change count when they were opened
+	private IndexWriter writer;
+	private long writerChangeCount;
+
 	void init(Directory directory, SegmentInfos segmentInfos,
 			boolean closeDirectory, boolean readOnly) throws IOException {
 		this.directory = directory;
@@ -56,6 +61,11 @@ abstract class DirectoryIndexReader extends IndexReader {
 	protected DirectoryIndexReader() {
 	}
 
+	void setWriter(IndexWriter writer, long writerChangeCount) {
+		this.writer = writer;
+		this.writerChangeCount = writerChangeCount;
+	}
+
 	DirectoryIndexReader(Directory directory, SegmentInfos segmentInfos,
 			boolean closeDirectory, boolean readOnly) throws IOException {
 		super();
@@ -125,6 +135,11 @@ abstract class DirectoryIndexReader extends IndexReader {
 			return this;
 		}
 
+		if (writer != null)
+			// near real-time reader: get the uncommitted segments from the
+			// writer instead of the last commit
+			return writer.getReader();
+
 		return (DirectoryIndexReader) new SegmentInfos.FindSegmentsFile(
 				directory) {
 
@@ -181,6 +196,11 @@ abstract class DirectoryIndexReader extends IndexReader {
 	 * which controls when the {@link IndexWriter} actually commits changes to
 	 * the index.
 	 * 
+	 * <p>
+	 * For a reader returned by {@link IndexWriter#getReader()}, this instead
+	 * checks whether the writer has made any changes, committed or not,
+	 * since the reader was opened.
+	 * 
 	 * @throws CorruptIndexException
 	 *             if the index is corrupt
 	 * @throws IOException
@@ -188,6 +208,8 @@ abstract class DirectoryIndexReader extends IndexReader {
 	 */
 	public boolean isCurrent() throws CorruptIndexException, IOException {
 		ensureOpen();
+		if (writer != null)
+			return writer.isReaderCurrent(writerChangeCount);
 		return SegmentInfos.readCurrentVersion(directory) == segmentInfos
 				.getVersion();
 	}
@@ -71,8 +71,10 @@ final class DocInverter extends DocFieldConsumer {
       endChildThreadsAndFields.put(perThread.endConsumer, endChildFields);
     }
     
-    consumer.flush(childThreadsAndFields, state);
+    // Norms first: the postings record the largest norm of
+    // each term
     endConsumer.flush(endChildThreadsAndFields, state);
+    consumer.flush(childThreadsAndFields, state);
   }
 
   public void closeDocStore(DocumentsWriter.FlushState state) throws IOException {
@@ -33,6 +33,7 @@ import java.io.PrintStream;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.ArrayList;
@@ -72,7 +73,9 @@ import java.text.NumberFormat;
  * thread will get the same ThreadState over time (thread
  * affinity) so that if there are consistent patterns (for
  * example each thread is indexing a different content
- * source) then we make better use of RAM.  Then
+ * source) then we make better use of RAM.  Up to
+ * maxThreadStates ThreadStates are created, after which
+ * threads share them.  Then
  * processDocument is called on that ThreadState without
  * synchronization (most of the "heavy lifting" is in this
  * call).  Finally the synchronized "finishDocument" is
@@ -120,9 +123,10 @@ final class DocumentsWriter {
   private int numDocsInRAM;                       // # docs buffered in RAM
   int numDocsInStore;                     // # docs written to doc stores
 
-  // Max # ThreadState instances; if there are more threads
-  // than this they share ThreadStates
-  private final static int MAX_THREAD_STATE = 5;
+  // Default max # ThreadState instances; if there are more
+  // threads than this they share ThreadStates
+  final static int DEFAULT_MAX_THREAD_STATES = 5;
+  private int maxThreadStates = DEFAULT_MAX_THREAD_STATES;
   private DocumentsWriterThreadState[] threadStates = new DocumentsWriterThreadState[0];
   private final HashMap threadBindings = new HashMap();
 
@@ -165,6 +169,12 @@ final class DocumentsWriter {
     int numDocsInStore;
     Collection flushedFiles;
 
+    // field name -> byte[] norms of the flushed docs, set by
+    // NormsWriter before the postings are written and removed
+    // as each field's postings are written; null unless the
+    // writer records impacts
+    Map norms;
+
     public String segmentFileName(String ext) {
       return segmentName + "." + ext;
     }
@@ -307,6 +317,14 @@ final class DocumentsWriter {
     }
   }
 
+  synchronized void setMaxThreadStates(int maxThreadStates) {
+    this.maxThreadStates = maxThreadStates;
+  }
+
+  synchronized int getMaxThreadStates() {
+    return maxThreadStates;
+  }
+
   synchronized double getRAMBufferSizeMB() {
     if (ramBufferSize == IndexWriter.DISABLE_AUTO_FLUSH) {
       return ramBufferSize;
@@ -537,6 +555,7 @@ final class DocumentsWriter {
     flushState.numDocsInRAM = numDocsInRAM;
     flushState.numDocsInStore = numDocsInStore;
     flushState.flushedFiles = new HashSet();
+    flushState.norms = writer.getRecordImpacts() ? new HashMap() : null;
   }
 
   /** Flush all pending docs to a new segment */
@@ -669,7 +688,7 @@ final class DocumentsWriter {
         if (minThreadState == null || ts.numThreads < minThreadState.numThreads)
           minThreadState = ts;
       }
-      if (minThreadState != null && (minThreadState.numThreads == 0 || threadStates.length >= MAX_THREAD_STATE)) {
+      if (minThreadState != null && (minThreadState.numThreads == 0 || threadStates.length >= maxThreadStates)) {
         state = minThreadState;
         state.numThreads++;
       } else {
@@ -896,6 +915,12 @@ final class DocumentsWriter {
     return deletesFlushed.any();
   }
 
+  /** Returns true if there are buffered documents or
+   *  deletes that have not been applied to the segments. */
+  synchronized boolean anyChanges() {
+    return numDocsInRAM != 0 || deletesInRAM.any() || deletesFlushed.any();
+  }
+
   synchronized boolean applyDeletes(SegmentInfos infos) throws IOException {
 
     if (!hasDeletes())
@@ -912,21 +937,19 @@ final class DocumentsWriter {
     int docStart = 0;
     boolean any = false;
     for (int i = 0; i < infosEnd; i++) {
-      IndexReader reader = SegmentReader.get(infos.info(i), false);
+      // Pooled readers keep their terms index and deleted
+      // docs loaded across flushes
+      SegmentReader reader = writer.readerPool.get(infos.info(i));
       boolean success = false;
       try {
         any |= applyDeletes(reader, docStart);
         docStart += reader.maxDoc();
+        reader.doCommit();
         success = true;
       } finally {
-        if (reader != null) {
-          try {
-            if (success)
-              reader.doCommit();
-          } finally {
-            reader.doClose();
-          }
-        }
+        // On exception, drop the reader so its partially
+        // applied deletes are never written
+        writer.readerPool.release(reader, !success);
       }
     }
 
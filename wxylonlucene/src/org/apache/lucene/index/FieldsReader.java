@@ -47,6 +47,9 @@ final class FieldsReader {
 	// It should not be cloned outside of a synchronized context.
 	private final IndexInput fieldsStream;
 
+	// The main indexStream, used only for cloning.
+	private final IndexInput cloneableIndexStream;
+
 	private final IndexInput indexStream;
 	private int numTotalDocs;
 	private int size;
@@ -54,12 +57,44 @@ final class FieldsReader {
 	private final int format;
 	private final int formatSize;
 
+	// False for instances returned by clone(), which must not close the
+	// cloneable streams they share with the original
+	private boolean isOriginal;
+
 	// The docID offset where our docs begin in the index
 	// file. This will be 0 if we have our own private file.
 	private int docStoreOffset;
 
 	private CloseableThreadLocal fieldsStreamTL = new CloseableThreadLocal();
 
+	// Used by clone()
+	private FieldsReader(FieldInfos fieldInfos, int numTotalDocs, int size,
+			int format, int formatSize, int docStoreOffset,
+			IndexInput cloneableFieldsStream, IndexInput cloneableIndexStream) {
+		this.fieldInfos = fieldInfos;
+		this.numTotalDocs = numTotalDocs;
+		this.size = size;
+		this.format = format;
+		this.formatSize = formatSize;
+		this.docStoreOffset = docStoreOffset;
+		this.cloneableFieldsStream = cloneableFieldsStream;
+		this.cloneableIndexStream = cloneableIndexStream;
+		fieldsStream = (IndexInput) cloneableFieldsStream.clone();
+		indexStream = (IndexInput) cloneableIndexStream.clone();
+	}
+
+	/**
+	 * Returns a FieldsReader over the same files with its own stream
+	 * positions, so that each thread can load documents without locking.
+	 * Closing the clone does not close the files.
+	 */
+	public Object clone() {
+		ensureOpen();
+		return new FieldsReader(fieldInfos, numTotalDocs, size, format,
+				formatSize, docStoreOffset, cloneableFieldsStream,
+				cloneableIndexStream);
+	}
+
 	FieldsReader(Directory d, String segment, FieldInfos fn) throws IOException {
 		this(d, segment, fn, BufferedIndexInput.BUFFER_SIZE, -1, 0);
 	}
@@ -73,19 +108,19 @@ final class FieldsReader {
 			int readBufferSize, int docStoreOffset, int size)
 			throws IOException {
 		boolean success = false;
-
+		isOriginal = true;
 		try {
 			fieldInfos = fn;
 
 			cloneableFieldsStream = d.openInput(segment + "."
 					+ IndexFileNames.FIELDS_EXTENSION, readBufferSize);
-			indexStream = d.openInput(segment + "."
+			cloneableIndexStream = d.openInput(segment + "."
 					+ IndexFileNames.FIELDS_INDEX_EXTENSION, readBufferSize);
 
 			// First version of fdx did not include a format
 			// header, but, the first int will always be 0 in that
 			// case
-			int firstInt = indexStream.readInt();
+			int firstInt = cloneableIndexStream.readInt();
 			if (firstInt == 0)
 				format = 0;
 			else
@@ -106,7 +141,7 @@ final class FieldsReader {
 
 			fieldsStream = (IndexInput) cloneableFieldsStream.clone();
 
-			final long indexSize = indexStream.length() - formatSize;
+			final long indexSize = cloneableIndexStream.length() - formatSize;
 
 			if (docStoreOffset != -1) {
 				// We read only a slice out of this shared fields file
@@ -127,6 +162,7 @@ final class FieldsReader {
 			}
 
 			numTotalDocs = (int) (indexSize >> 3);
+			indexStream = (IndexInput) cloneableIndexStream.clone();
 			success = true;
 		} finally {
 			// With lock-less commits, it's entirely possible (and
@@ -162,12 +198,17 @@ final class FieldsReader {
 			if (fieldsStream != null) {
 				fieldsStream.close();
 			}
-			if (cloneableFieldsStream != null) {
-				cloneableFieldsStream.close();
-			}
 			if (indexStream != null) {
 				indexStream.close();
 			}
+			if (isOriginal) {
+				if (cloneableFieldsStream != null) {
+					cloneableFieldsStream.close();
+				}
+				if (cloneableIndexStream != null) {
+					cloneableIndexStream.close();
+				}
+			}
 			fieldsStreamTL.close();
 			closed = true;
 		}
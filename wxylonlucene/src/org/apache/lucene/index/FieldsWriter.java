@@ -250,6 +250,31 @@ final class FieldsWriter
       assert fieldsStream.getFilePointer() == position;
     }
 
+    /** Bulk write a contiguous series of documents from a
+     *  segment with a different field name -> number
+     *  mapping.  Each field number is rewritten through
+     *  fieldNumberMap (the segment's number -> our number),
+     *  while the field bits and the (possibly compressed)
+     *  value bytes are copied without decoding them.  The
+     *  stream IndexInput is the fieldsStream, already seeked
+     *  to the first document. */
+    final void addRemappedRawDocuments(IndexInput stream, int[] fieldNumberMap, int numDocs) throws IOException {
+      for(int i=0;i<numDocs;i++) {
+        indexStream.writeLong(fieldsStream.getFilePointer());
+        final int numFields = stream.readVInt();
+        fieldsStream.writeVInt(numFields);
+        for(int j=0;j<numFields;j++) {
+          fieldsStream.writeVInt(fieldNumberMap[stream.readVInt()]);
+          fieldsStream.writeByte(stream.readByte());
+          // Strings, binary and compressed values are all
+          // written as a byte length followed by the bytes
+          final int length = stream.readVInt();
+          fieldsStream.writeVInt(length);
+          fieldsStream.copyBytes(stream, length);
+        }
+      }
+    }
+
     final void addDocument(Document doc) throws IOException {
         indexStream.writeLong(fieldsStream.getFilePointer());
 
@@ -92,10 +92,13 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
     Collections.sort(allFields);
     final int numAllFields = allFields.size();
 
+    final boolean recordImpacts = state.norms != null;
+
     final TermInfosWriter termsOut = new TermInfosWriter(state.directory,
                                                          state.segmentName,
                                                          fieldInfos,
-                                                         state.docWriter.writer.getTermIndexInterval());
+                                                         state.docWriter.writer.getTermIndexInterval(),
+                                                         recordImpacts);
 
     final IndexOutput freqOut = state.directory.createOutput(state.segmentFileName(IndexFileNames.FREQ_EXTENSION));
     final IndexOutput proxOut;
@@ -107,7 +110,8 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
 
     final DefaultSkipListWriter skipListWriter = new DefaultSkipListWriter(termsOut.skipInterval,
                                                                            termsOut.maxSkipLevels,
-                                                                           state.numDocsInRAM, freqOut, proxOut);
+                                                                           state.numDocsInRAM, freqOut, proxOut,
+                                                                           recordImpacts);
 
     int start = 0;
     while(start < numAllFields) {
@@ -155,6 +159,10 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
       proxOut.close();
     }
     termsOut.close();
+
+    // Norms of fields that had no postings
+    if (recordImpacts)
+      state.norms.clear();
     
     // Record all files we have flushed
     state.flushedFiles.add(state.segmentFileName(IndexFileNames.FIELD_INFOS_EXTENSION));
@@ -214,6 +222,11 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
     // If current field omits tf then it cannot store
     // payloads.  We silently drop the payloads in this case:
     final boolean currentFieldStorePayloads = currentFieldOmitTf ? false : fields[0].fieldInfo.storePayloads;
+
+    // null if the field omits norms or impacts are not
+    // recorded; dropped from the flush state as this field
+    // is the only one that needs them
+    final byte[] norms = flushState.norms == null ? null : (byte[]) flushState.norms.remove(fields[0].fieldInfo.name);
   
     FreqProxFieldMergeState[] termStates = new FreqProxFieldMergeState[numFields];
 
@@ -237,6 +250,10 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
 
       int df = 0;
       int lastPayloadLength = -1;
+      int maxFreq = 0;                            // of the whole term
+      int maxNorm = 0;
+      int blockMaxFreq = 0;                       // since the last skip point
+      int blockMaxNorm = 0;
 
       int lastDoc = 0;
 
@@ -258,8 +275,10 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
       while(numToMerge > 0) {
         
         if ((++df % skipInterval) == 0) {
-          skipListWriter.setSkipData(lastDoc, currentFieldStorePayloads, lastPayloadLength);
+          skipListWriter.setSkipData(lastDoc, currentFieldStorePayloads, lastPayloadLength, blockMaxFreq, (byte) blockMaxNorm);
           skipListWriter.bufferSkip(df);
+          blockMaxFreq = 0;
+          blockMaxNorm = 0;
         }
 
         FreqProxFieldMergeState minState = termStates[0];
@@ -270,6 +289,21 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
         final int doc = minState.docID;
         final int termDocFreq = minState.termFreq;
 
+        final int freq = currentFieldOmitTf ? 1 : termDocFreq;
+        if (freq > blockMaxFreq) {
+          blockMaxFreq = freq;
+          if (freq > maxFreq)
+            maxFreq = freq;
+        }
+        if (norms != null) {
+          final int norm = norms[doc] & 0xFF;
+          if (norm > blockMaxNorm) {
+            blockMaxNorm = norm;
+            if (norm > maxNorm)
+              maxNorm = norm;
+          }
+        }
+
         assert doc < flushState.numDocsInRAM;
         assert doc > lastDoc || df == 1;
 
@@ -352,7 +386,7 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
       long skipPointer = skipListWriter.writeSkip(freqOut);
 
       // Write term
-      termInfo.set(df, freqPointer, proxPointer, (int) (skipPointer - freqPointer));
+      termInfo.set(df, freqPointer, proxPointer, (int) (skipPointer - freqPointer), maxFreq, (byte) maxNorm);
 
       // TODO: we could do this incrementally
       UnicodeUtil.UTF16toUTF8(text, start, termsUTF8);
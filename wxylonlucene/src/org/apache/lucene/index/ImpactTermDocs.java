@@ -0,0 +1,62 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+/**
+ * Expert: a {@link TermDocs} that can bound the impacts of its
+ * documents without reading them.  The impact of a document is its
+ * term frequency and the norm of the field, which scores grow with.
+ * The index records the largest frequency and the largest norm,
+ * compared as unsigned byte, per term and per block of postings
+ * between two skip points.  Scorers use these to skip documents that
+ * cannot score high enough to be collected.
+ *
+ * <p>Only terms in at least as many documents as the skip interval,
+ * 16, in segments written by an {@link IndexWriter} that records
+ * impacts (see {@link IndexWriter#setRecordImpacts}) have them.  They
+ * include deleted documents.  The norms are not bounded for fields
+ * without norms, nor once {@link IndexReader#setNorm} changed them.
+ */
+public interface ImpactTermDocs extends TermDocs {
+
+  /** Returns the largest frequency of the current term in any
+   * document, or 0 if it is not recorded. */
+  int maxFreq();
+
+  /** Returns the largest norm of the current term in any document,
+   * or 0 if it is not recorded. */
+  byte maxNorm() throws IOException;
+
+  /** Returns the largest frequency of the current term in the block
+   * of postings containing <i>target</i>, or 0 if it is not recorded.
+   * The block ends at {@link #blockEnd()}.  This does not move the
+   * enumeration, but <i>target</i> must not be greater than the target
+   * of any later call of {@link #skipTo(int)}. */
+  int blockMaxFreq(int target) throws IOException;
+
+  /** Returns the largest norm in the block of postings of the last
+   * call of {@link #blockMaxFreq(int)}, or 0 if it is not recorded. */
+  byte blockMaxNorm();
+
+  /** Returns the last document of the block of postings of the last
+   * call of {@link #blockMaxFreq(int)}, <code>Integer.MAX_VALUE</code>
+   * for the last block. */
+  int blockEnd();
+}
@@ -114,6 +114,10 @@ public abstract class IndexReader {
 	private boolean closed;
 	protected boolean hasChanges;
 
+	private volatile long normsVersion;
+
+	private volatile long undeleteVersion;
+
 	private volatile int refCount;
 
 	// for testing
@@ -661,6 +665,22 @@ public abstract class IndexReader {
 				"This reader does not support this method.");
 	}
 
+	/**
+	 * Expert: returns the sequential sub readers this reader is composed of,
+	 * in document order, or null if this reader is not composed of other
+	 * readers. Searches can then run one sub reader at a time, so that data
+	 * cached per reader (like the {@link org.apache.lucene.search.FieldCache})
+	 * is kept per segment and survives {@link #reopen()} for the segments that
+	 * did not change. The document numbers of each sub reader start at the sum
+	 * of the {@link #maxDoc()} of the sub readers before it.
+	 * 
+	 * <p>
+	 * <b>NOTE:</b> do not modify the returned array.
+	 */
+	public IndexReader[] getSequentialSubReaders() {
+		return null;
+	}
+
 	/**
 	 * Return an array of term frequency vectors for the specified document. The
 	 * array contains a vector for each vectorized field in the document. Each
@@ -902,6 +922,16 @@ public abstract class IndexReader {
 		acquireWriteLock();
 		hasChanges = true;
 		doSetNorm(doc, field, value);
+		normsVersion++;
+	}
+
+	/**
+	 * Expert: returns a number that changes whenever {@link #setNorm} changed
+	 * a norm of this reader, so that values computed from the norms can be
+	 * cached until then.
+	 */
+	public long getNormsVersion() {
+		return normsVersion;
 	}
 
 	/** Implements setNorm in subclass. */
@@ -1122,6 +1152,18 @@ public abstract class IndexReader {
 		acquireWriteLock();
 		hasChanges = true;
 		doUndeleteAll();
+		undeleteVersion++;
+	}
+
+	/**
+	 * Expert: returns a number that changes whenever {@link #undeleteAll}
+	 * brought back deleted documents of this reader. Deletes only remove
+	 * documents, so values computed from the live documents that hold for
+	 * any subset of them, like the largest frequency of a term, can be cached
+	 * until then.
+	 */
+	public long getUndeleteVersion() {
+		return undeleteVersion;
 	}
 
 	/** Implements actual undeleteAll() in subclass. */
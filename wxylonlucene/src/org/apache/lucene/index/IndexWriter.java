@@ -4,6 +4,7 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.search.Similarity;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.store.BufferedIndexInput;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.Lock;
@@ -18,6 +19,7 @@ import java.util.List;
 import java.util.Collection;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -146,6 +148,8 @@ public class IndexWriter {
 	private SegmentInfos segmentInfos = new SegmentInfos(); // the segments
 
 	private DocumentsWriter docWriter;
+	// 应用删除、合并和近实时读者共用的SegmentReader
+	final ReaderPool readerPool = new ReaderPool();
 	private IndexFileDeleter deleter;
 
 	private Set segmentsToOptimize = new HashSet(); // used by optimize to note
@@ -155,6 +159,8 @@ public class IndexWriter {
 	private Lock writeLock;
 
 	private int termIndexInterval = DEFAULT_TERM_INDEX_INTERVAL;
+	private int mergePostingsThreadCount = 1;
+	private boolean recordImpacts;
 	//是否关闭索引目录Directory d
 	private boolean closeDir;
 	private boolean closed;
@@ -299,6 +305,25 @@ public class IndexWriter {
 		getLogMergePolicy().setUseCompoundDocStore(value);
 	}
 
+	private volatile boolean checksumFiles;
+
+	/**
+	 * Setting to record the CRC32 of every file of every segment in the
+	 * segments file. When on, each commit reads the files written since the
+	 * previous commit once, right before syncing them (so they are usually
+	 * still in the OS cache), and {@link CheckIndex} can later verify the
+	 * whole index against these checksums. Off by default.
+	 */
+	public void setChecksumFiles(boolean value) {
+		ensureOpen();
+		checksumFiles = value;
+	}
+
+	/** @see #setChecksumFiles */
+	public boolean getChecksumFiles() {
+		return checksumFiles;
+	}
+
 	/**
 	 * Expert: Set the Similarity implementation used by this IndexWriter.
 	 * 
@@ -360,6 +385,70 @@ public class IndexWriter {
 		return termIndexInterval;
 	}
 
+	/**
+	 * Expert: Set how many threads merge the postings (the term dictionary,
+	 * frequency and position files) of each merge. With more than one thread
+	 * the fields are handed out to the threads, which write their postings to
+	 * temporary files that are then concatenated into the merged segment. This
+	 * shortens large merges, such as {@link #optimize()} of many big segments,
+	 * when CPU and IO capacity are to spare, at the cost of writing the
+	 * postings twice. The default is 1, which merges the postings on the
+	 * merging thread only.
+	 */
+	public void setMergePostingsThreadCount(int count) {
+		ensureOpen();
+		if (count < 1)
+			throw new IllegalArgumentException(
+					"count must be at least 1 (got " + count + ")");
+		this.mergePostingsThreadCount = count;
+	}
+
+	/**
+	 * Expert: Return the number of threads that merge the postings of each
+	 * merge.
+	 * 
+	 * @see #setMergePostingsThreadCount(int)
+	 */
+	public int getMergePostingsThreadCount() {
+		// We pass false because this method is called by SegmentMerger while we
+		// are in the process of closing
+		ensureOpen(false);
+		return mergePostingsThreadCount;
+	}
+
+	/**
+	 * Expert: Set whether segments written from now on record the impacts of
+	 * their terms: the largest term frequency and norm of the postings of each
+	 * term in at least 16 documents, and of each block of postings between two
+	 * skip points. Searches that skip non-competitive documents (see
+	 * {@link org.apache.lucene.search.TopDocCollector#setSkipNonCompetitive})
+	 * use them to skip whole blocks of postings.
+	 * 
+	 * <p>
+	 * Impacts take a few bytes per such term and skip point, and the term
+	 * dictionary is then written in a format older versions of Lucene cannot
+	 * read. While flushing, the norms of every field are also kept in RAM until
+	 * that field's postings are written. Segments written without impacts
+	 * still work, their score bounds are then read from the postings. The
+	 * default is false.
+	 */
+	public void setRecordImpacts(boolean recordImpacts) {
+		ensureOpen();
+		this.recordImpacts = recordImpacts;
+	}
+
+	/**
+	 * Expert: Return whether new segments record the impacts of their terms.
+	 * 
+	 * @see #setRecordImpacts(boolean)
+	 */
+	public boolean getRecordImpacts() {
+		// We pass false because this method is called by SegmentMerger while we
+		// are in the process of closing
+		ensureOpen(false);
+		return recordImpacts;
+	}
+
 	public IndexWriter(String path, Analyzer a, boolean create,
 			MaxFieldLength mfl) throws CorruptIndexException,
 			LockObtainFailedException, IOException {
@@ -826,6 +915,45 @@ public class IndexWriter {
 		return docWriter.getMaxBufferedDocs();
 	}
 
+	/** Default value for {@link #setMaxThreadStates}. */
+	public final static int DEFAULT_MAX_THREAD_STATES = DocumentsWriter.DEFAULT_MAX_THREAD_STATES;
+
+	/**
+	 * Sets how many threads can invert documents at the same time. Each
+	 * indexing thread is bound to its own in-memory buffer until this many
+	 * exist; further threads share the least used buffer and wait for each
+	 * other. Raise this on machines with many cores that index from many
+	 * threads. Threads that are already bound keep their buffer until the
+	 * next flush. All buffers are flushed together into one segment, and
+	 * every indexing thread waits while that happens.
+	 * 
+	 * <p>
+	 * The default is {@link #DEFAULT_MAX_THREAD_STATES}.
+	 * </p>
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if maxThreadStates is smaller than 1
+	 */
+	public void setMaxThreadStates(int maxThreadStates) {
+		ensureOpen();
+		if (maxThreadStates < 1)
+			throw new IllegalArgumentException(
+					"maxThreadStates must be at least 1");
+		docWriter.setMaxThreadStates(maxThreadStates);
+		if (infoStream != null)
+			message("setMaxThreadStates " + maxThreadStates);
+	}
+
+	/**
+	 * Returns how many threads can invert documents at the same time.
+	 * 
+	 * @see #setMaxThreadStates
+	 */
+	public int getMaxThreadStates() {
+		ensureOpen();
+		return docWriter.getMaxThreadStates();
+	}
+
 	/**
 	 * Determines the amount of RAM that may be used for buffering added
 	 * documents before they are flushed as a new Segment. Generally for faster
@@ -1171,6 +1299,7 @@ public class IndexWriter {
 
 			synchronized (this) {
 				docWriter = null;
+				readerPool.clear();
 				deleter.close();
 			}
 
@@ -1630,6 +1759,11 @@ public class IndexWriter {
 		}
 	}
 
+	// 返回正在参与合并的段（MergePolicy在选择合并时用来跳过这些段，调用时已持有IndexWriter的锁）
+	synchronized Collection getMergingSegments() {
+		return mergingSegments;
+	}
+
 	// for test purpose
 	final synchronized int getSegmentCount() {
 		return segmentInfos.size();
@@ -2180,6 +2314,9 @@ public class IndexWriter {
 		segmentInfos.addAll(localRollbackSegmentInfos);
 		localRollbackSegmentInfos = null;
 
+		// 池中读者的删除可能已经写到回滚掉的.del文件中
+		readerPool.clear();
+
 		// This must come after we rollback segmentInfos, so
 		// that if a commit() kicks off it does not see the
 		// segmentInfos with external segments
@@ -2310,6 +2447,9 @@ public class IndexWriter {
 
 				assert !hasExternalSegments();
 
+				// 池中读者的删除可能已经写到回滚掉的.del文件中
+				readerPool.clear();
+
 				docWriter.abort();
 
 				assert testPoint("rollback before checkpoint");
@@ -2416,6 +2556,8 @@ public class IndexWriter {
 	 */
 	private synchronized void checkpoint() throws IOException {
 		changeCount++;
+		// 先关闭已经不在segmentInfos中的段的读者，它们的文件才能被删除
+		readerPool.prune(segmentInfos);
 		deleter.checkpoint(segmentInfos, false);
 	}
 
@@ -2661,6 +2803,162 @@ public class IndexWriter {
 		}
 	}
 
+	/**
+	 * Adds all segments from an array of indexes into this index by copying
+	 * their files, without merging them.
+	 * 
+	 * <p>
+	 * Unlike {@link #addIndexesNoOptimize}, no segment is read or rewritten by
+	 * a {@link SegmentMerger}: each file of each incoming segment is copied
+	 * into this index's Directory under a new segment name, and the segment is
+	 * registered as it is, including its deletions and separate norms.
+	 * Segments sharing doc stores keep sharing one copy of them. This makes
+	 * assembling an index from shards built elsewhere only as expensive as
+	 * copying the files. When both Directories are {@link FSDirectory}
+	 * instances on the same filesystem the files are hard-linked if the JVM
+	 * supports it (see {@link Directory#copy(Directory, String, String)}).
+	 * 
+	 * <p>
+	 * No merges are started; the index will have at least as many segments as
+	 * all indexes together. Call {@link #maybeMerge} or {@link #optimize}
+	 * afterwards to reduce them.
+	 * 
+	 * <p>
+	 * The same notes as for {@link #addIndexesNoOptimize} apply: the incoming
+	 * indexes must not be changed while this method is running, adding or
+	 * deleting documents is paused until it completes, and it is
+	 * transactional, so either all or none of the indexes are added.
+	 * 
+	 * @throws CorruptIndexException
+	 *             if the index is corrupt
+	 * @throws IOException
+	 *             if there is a low-level IO error
+	 */
+	public void addIndexesByCopy(Directory[] dirs)
+			throws CorruptIndexException, IOException {
+
+		ensureOpen();
+
+		noDupDirs(dirs);
+
+		// Do not allow add docs or deletes while we are running:
+		docWriter.pauseAllThreads();
+
+		try {
+			if (infoStream != null)
+				message("flush at addIndexesByCopy");
+			flush(true, false, true);
+
+			boolean success = false;
+
+			startTransaction(false);
+
+			try {
+
+				int docCount = 0;
+				for (int i = 0; i < dirs.length; i++) {
+					SegmentInfos sis = new SegmentInfos(); // read infos
+															// from dir
+					sis.read(dirs[i]);
+
+					// 源索引中共享文档存储的段拷贝后仍共享同一份：原文档存储段名 -> 新名字
+					Map docStoreNames = new HashMap();
+					for (int j = 0; j < sis.size(); j++) {
+						SegmentInfo info = sis.info(j);
+						// 拷贝文件时不持有IndexWriter的锁，以免挡住正在进行的合并
+						SegmentInfo newInfo = copySegment(dirs[i], info,
+								docStoreNames);
+						synchronized (this) {
+							ensureOpen();
+							segmentInfos.add(newInfo);
+						}
+						docCount += info.docCount;
+					}
+				}
+
+				// Notify DocumentsWriter that the flushed count just increased
+				docWriter.updateFlushedDocCount(docCount);
+
+				success = true;
+
+			} finally {
+				if (success) {
+					commitTransaction();
+				} else {
+					rollbackTransaction();
+				}
+			}
+		} catch (OutOfMemoryError oom) {
+			hitOOM = true;
+			throw oom;
+		} finally {
+			docWriter.resumeAllThreads();
+		}
+	}
+
+	/*
+	 * Copies the files of the segment info from dir into our directory under
+	 * a new segment name and returns the SegmentInfo for the copy. A shared
+	 * doc store is only copied the first time a segment using it is seen.
+	 */
+	private SegmentInfo copySegment(Directory dir, SegmentInfo info,
+			Map docStoreNames) throws IOException {
+
+		final String newName = newSegmentName();
+
+		String docStoreSegment = null;
+		String newDocStoreSegment = null;
+		boolean copyDocStore = false;
+		if (info.getDocStoreOffset() != -1) {
+			docStoreSegment = info.getDocStoreSegment();
+			newDocStoreSegment = (String) docStoreNames.get(docStoreSegment);
+			if (newDocStoreSegment == null) {
+				newDocStoreSegment = newSegmentName();
+				docStoreNames.put(docStoreSegment, newDocStoreSegment);
+				copyDocStore = true;
+			}
+		}
+
+		final List files = info.files();
+		final Map fileNames = new HashMap();
+		for (int i = 0; i < files.size(); i++) {
+			final String file = (String) files.get(i);
+			final String oldSegment;
+			final String newSegment;
+			final boolean isDocStoreFile = docStoreSegment != null
+					&& file.startsWith(docStoreSegment + ".")
+					&& IndexFileNames.isDocStoreFile(file);
+			if (isDocStoreFile) {
+				oldSegment = docStoreSegment;
+				newSegment = newDocStoreSegment;
+			} else {
+				// 其它文件（包括.del和分离的norms文件）都以段名开头
+				assert file.startsWith(info.name) : "file " + file
+						+ " does not belong to segment " + info.name;
+				oldSegment = info.name;
+				newSegment = newName;
+			}
+			final String newFile = newSegment
+					+ file.substring(oldSegment.length());
+			fileNames.put(file, newFile);
+			if (isDocStoreFile && !copyDocStore)
+				continue;
+
+			if (infoStream != null)
+				message("copy " + file + " from " + dir + " to " + newFile);
+			if (file.endsWith("." + IndexFileNames.COMPOUND_FILE_EXTENSION)
+					|| file.endsWith("."
+							+ IndexFileNames.COMPOUND_FILE_STORE_EXTENSION))
+				// 复合文件内部的子文件名带有段名，需要改写文件头
+				CompoundFileWriter.copyRenamed(dir, file, directory, newFile,
+						oldSegment, newSegment);
+			else
+				dir.copy(directory, file, newFile);
+		}
+
+		return info.copy(directory, newName, newDocStoreSegment, fileNames);
+	}
+
 	private boolean hasExternalSegments() {
 		return hasExternalSegments(segmentInfos);
 	}
@@ -3080,6 +3378,197 @@ public class IndexWriter {
 		message("commit: done");
 	}
 
+	/**
+	 * Returns a read-only reader on the index as this writer currently sees
+	 * it, including all documents added and deleted so far, without
+	 * committing. Buffered documents and deletes are flushed to new segment
+	 * files, but no <code>segments_N</code> file is written and no file is
+	 * synced, so this is much cheaper than {@link #commit()} followed by
+	 * {@link IndexReader#open(Directory)}.
+	 * 
+	 * <p>
+	 * Calling {@link IndexReader#reopen()} on the returned reader gets the
+	 * changes made since from this writer again. The per-segment readers
+	 * share their terms index, norms and deleted docs with the readers this
+	 * writer keeps open to apply deletes, so reopening only loads what new
+	 * segments bring. {@link IndexReader#isCurrent()} returns
+	 * false once this writer has made further changes. Both throw an
+	 * {@link AlreadyClosedException} once this writer was closed.
+	 * </p>
+	 * 
+	 * <p>
+	 * The reader must be closed by the caller. It keeps its segment files
+	 * open even if a merge or commit deletes them in the meantime, so on
+	 * platforms that refuse to delete open files those deletions are retried
+	 * once the reader is closed.
+	 * </p>
+	 * 
+	 * @throws CorruptIndexException
+	 *             if the index is corrupt
+	 * @throws IOException
+	 *             if there is a low-level IO error
+	 */
+	public IndexReader getReader() throws CorruptIndexException, IOException {
+		ensureOpen();
+
+		message("flush at getReader");
+		// 把缓冲的文档和删除写成新段（关闭共享的文档存储，读者才能读到存储字段），但不提交
+		flush(false, true, true);
+
+		DirectoryIndexReader reader;
+		synchronized (this) {
+			// 持有锁打开读者，期间合并不能提交、删除也不会应用到一半
+			SegmentInfos infos = (SegmentInfos) segmentInfos.clone();
+			SegmentReader[] readers = new SegmentReader[infos.size()];
+			boolean success = false;
+			try {
+				for (int i = 0; i < readers.length; i++)
+					readers[i] = readerPool.getReadOnlyClone(segmentInfos.info(i), infos.info(i), true,
+							BufferedIndexInput.BUFFER_SIZE);
+				if (readers.length == 1)
+					reader = readers[0];
+				else
+					reader = new ReadOnlyMultiSegmentReader(directory, infos, false, readers);
+				success = true;
+			} finally {
+				if (!success) {
+					for (int i = 0; i < readers.length; i++)
+						if (readers[i] != null) {
+							try {
+								readers[i].close();
+							} catch (Throwable t) {
+								// 保留原来的异常
+							}
+						}
+				}
+			}
+			reader.init(directory, infos, false, true);
+			reader.setWriter(this, changeCount);
+		}
+
+		// 读者已经打开，再按需合并（和flush时传入triggerMerge=true不同，这样读者不用等串行的合并）
+		maybeMerge();
+		return reader;
+	}
+
+	/**
+	 * Keeps the SegmentReaders this writer opens on its own segments open
+	 * across flushes and merges. Applying buffered deletes, merging and
+	 * {@link #getReader()} all get them from here, so the terms index, norms
+	 * and deleted docs of a segment are loaded once instead of on every
+	 * flush. Deletes are still written to a new <code>.del</code> file each
+	 * time they are applied, so every SegmentInfo always describes the
+	 * deletions of its pooled reader.
+	 */
+	class ReaderPool {
+
+		// 段名 -> 池中的可写SegmentReader，池持有它的一个引用
+		private final Map readerMap = new HashMap();
+
+		// 返回info对应段的读者，用完后必须调用release；info必须是segmentInfos中当前的SegmentInfo实例
+		synchronized SegmentReader get(SegmentInfo info) throws IOException {
+			SegmentReader sr = (SegmentReader) readerMap.get(info.name);
+			if (sr != null && !isCurrent(sr, info)) {
+				// 段已经变了（例如回滚之后.del文件的代数不同，或者刚改成了复合文件），丢弃旧的读者
+				readerMap.remove(info.name);
+				sr.decRef();
+				sr = null;
+			}
+			if (sr == null) {
+				// 应用删除用不到存储字段和词向量，合并和近实时读者需要时再openDocStores
+				sr = SegmentReader.get(info, false);
+				if (info.dir != directory)
+					// addIndexes加入的外部目录的段不放入池中，由调用者持有唯一的引用
+					return sr;
+				readerMap.put(info.name, sr);
+			} else
+				// 回滚或事务回滚之后segmentInfos中的实例会换成副本，保证删除写到当前实例的.del代数上
+				sr.setSegmentInfo(info);
+			sr.incRef();
+			return sr;
+		}
+
+		private boolean isCurrent(SegmentReader sr, SegmentInfo info)
+				throws IOException {
+			final SegmentInfo si = sr.getSegmentInfo();
+			return si.dir == info.dir
+					&& si.docCount == info.docCount
+					&& (sr.cfsReader != null) == info.getUseCompoundFile()
+					&& si.hasDeletions() == info.hasDeletions()
+					&& (!info.hasDeletions() || si.getDelFileName().equals(
+							info.getDelFileName()));
+		}
+
+		// 归还get返回的读者；discard为true时（应用删除中途出错）丢弃读者中还没有写入.del文件的删除，并把它移出池
+		synchronized void release(SegmentReader sr, boolean discard)
+				throws IOException {
+			if (discard) {
+				sr.hasChanges = false;
+				final String name = sr.getSegmentInfo().name;
+				if (readerMap.get(name) == sr) {
+					readerMap.remove(name);
+					sr.decRef();
+				}
+			}
+			sr.decRef();
+		}
+
+		// 返回snapshot（info在某一时刻的副本）描述的段的只读读者，和池中的读者共享索引数据，删除文档写时复制；
+		// 读者用readBufferSize大小的缓冲读取
+		synchronized SegmentReader getReadOnlyClone(SegmentInfo info,
+				SegmentInfo snapshot, boolean doOpenStores, int readBufferSize) throws IOException {
+			SegmentReader sr = get(info);
+			try {
+				if (doOpenStores)
+					sr.openDocStores(snapshot);
+				return sr.reopenSegment(snapshot, true, true, readBufferSize);
+			} finally {
+				release(sr, false);
+			}
+		}
+
+		// 关闭不再属于infos的段（已经被合并掉或者删除）的读者
+		synchronized void prune(SegmentInfos infos) throws IOException {
+			if (readerMap.isEmpty())
+				return;
+			Set live = new HashSet();
+			for (int i = 0; i < infos.size(); i++)
+				live.add(infos.info(i).name);
+			Iterator it = readerMap.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry entry = (Map.Entry) it.next();
+				if (!live.contains(entry.getKey())) {
+					it.remove();
+					((SegmentReader) entry.getValue()).decRef();
+				}
+			}
+		}
+
+		// 关闭池中所有的读者（正在被合并或近实时读者使用的，等它们关闭后才真正关闭）
+		synchronized void clear() throws IOException {
+			IOException exc = null;
+			Iterator it = readerMap.values().iterator();
+			while (it.hasNext()) {
+				try {
+					((SegmentReader) it.next()).decRef();
+				} catch (IOException ioe) {
+					// 继续关闭其余的读者，最后抛出第一个异常
+					if (exc == null)
+						exc = ioe;
+				}
+			}
+			readerMap.clear();
+			if (exc != null)
+				throw exc;
+		}
+	}
+
+	// 判断在changeCount为readerChangeCount时打开的近实时读者是否仍然看到了该writer的所有修改
+	synchronized boolean isReaderCurrent(long readerChangeCount) {
+		ensureOpen();
+		return readerChangeCount == changeCount && !docWriter.anyChanges();
+	}
+
 	/**
 	 * Flush all in-memory buffered udpates (adds and deletes) to the Directory.
 	 * 
@@ -3285,7 +3774,8 @@ public class IndexWriter {
 		return docWriter.getNumDocsInRAM();
 	}
 
-	private int ensureContiguousMerge(MergePolicy.OneMerge merge) {
+	// 检查合并的段都还在索引中；返回这些段在segmentInfos中是否连续
+	private boolean ensureValidMerge(MergePolicy.OneMerge merge) {
 
 		int first = segmentInfos.indexOf(merge.segments.info(0));
 		if (first == -1)
@@ -3293,30 +3783,20 @@ public class IndexWriter {
 					+ merge.segments.info(0).name + " in current segments",
 					directory);
 
-		final int numSegments = segmentInfos.size();
-
+		boolean contiguous = true;
 		final int numSegmentsToMerge = merge.segments.size();
 		for (int i = 0; i < numSegmentsToMerge; i++) {
 			final SegmentInfo info = merge.segments.info(i);
-
-			if (first + i >= numSegments
-					|| !segmentInfos.info(first + i).equals(info)) {
-				if (segmentInfos.indexOf(info) == -1)
-					throw new MergePolicy.MergeException(
-							"MergePolicy selected a segment (" + info.name
-									+ ") that is not in the index", directory);
-				else
-					throw new MergePolicy.MergeException(
-							"MergePolicy selected non-contiguous segments to merge ("
-									+ merge.segString(directory)
-									+ " vs "
-									+ segString()
-									+ "), which IndexWriter (currently) cannot handle",
-							directory);
-			}
+			final int index = segmentInfos.indexOf(info);
+			if (index == -1)
+				throw new MergePolicy.MergeException(
+						"MergePolicy selected a segment (" + info.name
+								+ ") that is not in the index", directory);
+			if (index != first + i)
+				contiguous = false;
 		}
 
-		return first;
+		return contiguous;
 	}
 
 	/**
@@ -3424,7 +3904,6 @@ public class IndexWriter {
 		}
 	}
 
-	/* FIXME if we want to support non-contiguous segment merges */
 	synchronized private boolean commitMerge(MergePolicy.OneMerge merge,
 			SegmentMerger merger, int mergedDocCount) throws IOException {
 
@@ -3454,7 +3933,12 @@ public class IndexWriter {
 			return false;
 		}
 
-		final int start = ensureContiguousMerge(merge);
+		final boolean contiguous = ensureValidMerge(merge);
+
+		// 合并不连续的段会打乱其余段的docID顺序，已刷新的缓冲删除里的docID上限无法再重新映射，
+		// 所以先把它们应用到源段上（commitMergedDeletes会把它们带到合并后的段上）
+		if (!contiguous)
+			applyDeletes();
 
 		commitMergedDeletes(merge);
 
@@ -3483,7 +3967,15 @@ public class IndexWriter {
 
 		merge.info.setHasProx(merger.hasProx());
 
-		segmentInfos.subList(start, start + merge.segments.size()).clear();
+		// 合并后的段放在第一个被合并的段的位置上
+		int start = segmentInfos.size();
+		final int numSegmentsToMerge = merge.segments.size();
+		for (int i = 0; i < numSegmentsToMerge; i++)
+			start = Math.min(start, segmentInfos.indexOf(merge.segments.info(i)));
+		if (contiguous)
+			segmentInfos.subList(start, start + numSegmentsToMerge).clear();
+		else
+			segmentInfos.removeAll(merge.segments);
 		assert !segmentInfos.contains(merge.info);
 		segmentInfos.add(start, merge.info);
 
@@ -3629,7 +4121,7 @@ public class IndexWriter {
 				isExternal = true;
 		}
 
-		ensureContiguousMerge(merge);
+		ensureValidMerge(merge);
 
 		pendingMerges.add(merge);
 
@@ -3797,6 +4289,9 @@ public class IndexWriter {
 			// they are not removed while we are trying to merge.
 			if (si.dir == directory)
 				deleter.incRef(si.files());
+
+			// 合并大约要读这么多字节，MergeScheduler据此判断合并的大小和进度
+			merge.estimatedMergeBytes += si.sizeInBytes();
 		}
 
 		merge.increfDone = true;
@@ -3913,17 +4408,15 @@ public class IndexWriter {
 		try {
 			int totDocCount = 0;
 
-			for (int i = 0; i < numSegments; i++) {
-				SegmentInfo si = sourceSegmentsClone.info(i);
-				IndexReader reader = SegmentReader.get(true, si,
-						MERGE_READ_BUFFER_SIZE, merge.mergeDocStores); // no
-																		// need
-																		// to
-																		// set
-																		// deleter
-																		// (yet)
-				merger.add(reader);
-				totDocCount += reader.numDocs();
+			// 在锁内从读者池中取得合并开始时（sourceSegmentsClone）各段的快照，这时不会有应用到一半的删除
+			synchronized (this) {
+				for (int i = 0; i < numSegments; i++) {
+					IndexReader reader = readerPool.getReadOnlyClone(
+							sourceSegments.info(i), sourceSegmentsClone.info(i),
+							merge.mergeDocStores, MERGE_READ_BUFFER_SIZE);
+					merger.add(reader);
+					totDocCount += reader.numDocs();
+				}
 			}
 			if (infoStream != null) {
 				message("merge: total " + totDocCount + " docs");
@@ -4212,6 +4705,23 @@ public class IndexWriter {
 		}
 	}
 
+	// 计算toSync中新文件的校验和（不持有锁），然后把结果记录到segmentInfos中对应的段，下次提交时不必重新计算
+	private void checksumSegments(SegmentInfos toSync) throws IOException {
+		boolean changed = false;
+		for (int i = 0; i < toSync.size(); i++)
+			changed |= toSync.info(i).updateChecksums();
+		if (!changed)
+			return;
+		synchronized (this) {
+			for (int i = 0; i < toSync.size(); i++) {
+				final SegmentInfo info = toSync.info(i);
+				final int idx = segmentInfos.indexOf(info);
+				if (idx != -1)
+					segmentInfos.info(idx).copyChecksums(info);
+			}
+		}
+	}
+
 	/**
 	 * Walk through all files referenced by the current segmentInfos and ask the
 	 * Directory to sync each file, if it wasn't already. If that succeeds, then
@@ -4286,10 +4796,14 @@ public class IndexWriter {
 
 			try {
 
+				if (checksumFiles)
+					checksumSegments(toSync);
+
 				// Loop until all files toSync references are sync'd:
 				while (true) {
 
 					final Collection pending = new ArrayList();
+					final List mine = new ArrayList();
 
 					for (int i = 0; i < toSync.size(); i++) {
 						final SegmentInfo info = toSync.info(i);
@@ -4297,25 +4811,31 @@ public class IndexWriter {
 						for (int j = 0; j < files.size(); j++) {
 							final String fileName = (String) files.get(j);
 							if (startSync(fileName, pending)) {
-								boolean success = false;
-								try {
-									// Because we incRef'd this commit point,
-									// above,
-									// the file had better exist:
-									assert directory.fileExists(fileName) : "file '"
-											+ fileName
-											+ "' does not exist dir="
-											+ directory;
-									message("now sync " + fileName);
-									directory.sync(fileName);
-									success = true;
-								} finally {
-									finishSync(fileName, success);
-								}
+								// Because we incRef'd this commit point,
+								// above,
+								// the file had better exist:
+								assert directory.fileExists(fileName) : "file '"
+										+ fileName
+										+ "' does not exist dir="
+										+ directory;
+								mine.add(fileName);
 							}
 						}
 					}
 
+					// 一次同步本线程负责的所有文件，让Directory可以并行地fsync
+					if (mine.size() > 0) {
+						boolean success = false;
+						try {
+							message("now sync " + mine);
+							directory.sync(mine);
+							success = true;
+						} finally {
+							for (int i = 0; i < mine.size(); i++)
+								finishSync((String) mine.get(i), success);
+						}
+					}
+
 					// All files that I require are either synced or being
 					// synced by other threads. If they are being synced,
 					// we must at this point block until they are done.
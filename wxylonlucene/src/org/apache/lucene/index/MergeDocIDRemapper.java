@@ -32,6 +32,22 @@ final class MergeDocIDRemapper {
 
   public MergeDocIDRemapper(SegmentInfos infos, int[][] docMaps, int[] delCounts, MergePolicy.OneMerge merge, int mergedDocCount) {
     this.docMaps = docMaps;
+
+    if (!isContiguous(infos, merge)) {
+      // IndexWriter applies all flushed deletes before it
+      // commits a merge of non-contiguous segments, so the
+      // only docIDs left to renumber are those buffered in
+      // RAM, which come after all segments and simply shift
+      int numDocs = 0;
+      for(int j=0;j<merge.segments.size();j++)
+        numDocs += merge.segments.info(j).docCount;
+      for(int j=0;j<infos.size();j++)
+        minDocID += infos.info(j).docCount;
+      maxDocID = minDocID;
+      docShift = numDocs - mergedDocCount;
+      return;
+    }
+
     SegmentInfo firstSegment = merge.segments.info(0);
     int i = 0;
     while(true) {
@@ -72,6 +88,17 @@ final class MergeDocIDRemapper {
     assert docShift == maxDocID - (newStarts[docMaps.length-1] + merge.segments.info(docMaps.length-1).docCount - delCounts[docMaps.length-1]);
   }
 
+  private static boolean isContiguous(SegmentInfos infos, MergePolicy.OneMerge merge) {
+    final int first = infos.indexOf(merge.segments.info(0));
+    final int numSegments = merge.segments.size();
+    if (first + numSegments > infos.size())
+      return false;
+    for(int j=0;j<numSegments;j++)
+      if (!infos.info(first+j).equals(merge.segments.info(j)))
+        return false;
+    return true;
+  }
+
   public int remap(int oldDocID) {
     if (oldDocID < minDocID)
       // Unaffected by merge
@@ -18,6 +18,7 @@ package org.apache.lucene.index;
  */
 
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RateLimiter;
 
 import java.io.IOException;
 import java.util.List;
@@ -73,10 +74,18 @@ public abstract class MergePolicy {
     long mergeGen;                  // used by IndexWriter
     boolean isExternal;             // used by IndexWriter
     int maxNumSegmentsOptimize;     // used by IndexWriter
+    long estimatedMergeBytes;       // used by IndexWriter
+
+    // Counts (and optionally limits) the bytes this merge
+    // writes; the MergeScheduler may add a limiter shared by
+    // all merges
+    final RateLimiter rateLimiter = new RateLimiter(0);
+    RateLimiter totalRateLimiter;
 
     final SegmentInfos segments;
     final boolean useCompoundFile;
     boolean aborted;
+    boolean paused;
     Throwable error;
 
     public OneMerge(SegmentInfos segments, boolean useCompoundFile) {
@@ -103,6 +112,7 @@ public abstract class MergePolicy {
      *  not be committed. */
     synchronized void abort() {
       aborted = true;
+      notifyAll();
     }
 
     /** Returns true if this merge was aborted. */
@@ -113,6 +123,49 @@ public abstract class MergePolicy {
     synchronized void checkAborted(Directory dir) throws MergeAbortedException {
       if (aborted)
         throw new MergeAbortedException("merge is aborted: " + segString(dir));
+
+      // The merge calls this regularly, so this is where a
+      // paused merge waits
+      boolean interrupted = false;
+      while (paused) {
+        try {
+          // wake up now and then in case we were aborted
+          wait(1000);
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        }
+        if (aborted) {
+          if (interrupted)
+            Thread.currentThread().interrupt();
+          throw new MergeAbortedException("merge is aborted: " + segString(dir));
+        }
+      }
+      if (interrupted)
+        Thread.currentThread().interrupt();
+    }
+
+    /** Pauses (or resumes) this merge the next time it
+     *  checks whether it was aborted. */
+    synchronized void setPause(boolean paused) {
+      this.paused = paused;
+      if (!paused)
+        notifyAll();
+    }
+
+    synchronized boolean getPause() {
+      return paused;
+    }
+
+    /** Returns the total size of the segments being
+     *  merged, which is about what the merge reads. */
+    public long getEstimatedMergeBytes() {
+      return estimatedMergeBytes;
+    }
+
+    /** Returns the number of bytes this merge has written
+     *  so far. */
+    public long getBytesWritten() {
+      return rateLimiter.getTotalBytes();
     }
 
     String segString(Directory dir) {
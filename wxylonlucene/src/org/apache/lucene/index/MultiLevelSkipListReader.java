@@ -86,6 +86,14 @@ abstract class MultiLevelSkipListReader {
   int getDoc() {
     return lastDoc;
   }
+
+  /** Returns the id of the doc of the skip entry following the one
+   *  {@link #getDoc()} belongs to, which is greater than or equal to
+   *  the target of the last call of {@link #skipTo(int)}, or
+   *  <code>Integer.MAX_VALUE</code> if there is no such entry. */
+  int getNextSkipDoc() {
+    return skipDoc[0];
+  }
   
   
   /** Skips entries to the first beyond the current whose document number is
@@ -192,6 +192,10 @@ public class MultiReader extends IndexReader {
   public boolean isOptimized() {
     return false;
   }
+
+  public IndexReader[] getSequentialSubReaders() {
+    return subReaders;
+  }
   
   public synchronized int numDocs() {
     // Don't call ensureOpen() here (it could affect performance)
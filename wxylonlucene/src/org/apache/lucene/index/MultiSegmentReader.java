@@ -70,6 +70,13 @@ class MultiSegmentReader extends DirectoryIndexReader {
     initialize(readers);
   }
 
+  /** Construct on segment readers opened by the caller,
+   *  which this reader takes over. */
+  MultiSegmentReader(Directory directory, SegmentInfos sis, boolean closeDirectory, SegmentReader[] readers, boolean readOnly) throws IOException {
+    super(directory, sis, closeDirectory, readOnly);
+    initialize(readers);
+  }
+
   /** This contructor is only used for {@link #reopen()} */
   MultiSegmentReader(Directory directory, SegmentInfos infos, boolean closeDirectory, SegmentReader[] oldReaders, int[] oldStarts, Map oldNormsCache, boolean readOnly) throws IOException {
     super(directory, infos, closeDirectory, readOnly);
@@ -236,6 +243,10 @@ class MultiSegmentReader extends DirectoryIndexReader {
   public boolean isOptimized() {
     return false;
   }
+
+  public IndexReader[] getSequentialSubReaders() {
+    return subReaders;
+  }
   
   public synchronized int numDocs() {
     // Don't call ensureOpen() here (it could affect performance)
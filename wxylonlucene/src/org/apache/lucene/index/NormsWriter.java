@@ -110,6 +110,8 @@ final class NormsWriter extends InvertedDocEndConsumer {
 
           normCount++;
 
+          final byte[] norms = new byte[state.numDocsInRAM];
+
           final NormsWriterPerField[] fields = new NormsWriterPerField[numFields];
           int[] uptos = new int[numFields];
 
@@ -137,9 +139,9 @@ final class NormsWriter extends InvertedDocEndConsumer {
 
             // Fill hole
             for(;upto<minDocID;upto++)
-              normsOut.writeByte(defaultNorm);
+              norms[upto] = defaultNorm;
 
-            normsOut.writeByte(fields[minLoc].norms[uptos[minLoc]]);
+            norms[upto] = fields[minLoc].norms[uptos[minLoc]];
             (uptos[minLoc])++;
             upto++;
 
@@ -155,7 +157,11 @@ final class NormsWriter extends InvertedDocEndConsumer {
           
           // Fill final hole with defaultNorm
           for(;upto<state.numDocsInRAM;upto++)
-            normsOut.writeByte(defaultNorm);
+            norms[upto] = defaultNorm;
+
+          normsOut.writeBytes(norms, norms.length);
+          if (state.norms != null)
+            state.norms.put(fieldInfo.name, norms);
         } else if (fieldInfo.isIndexed && !fieldInfo.omitNorms) {
           normCount++;
           // Fill entire field with default norm:
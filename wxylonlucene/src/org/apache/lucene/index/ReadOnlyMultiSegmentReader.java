@@ -27,6 +27,10 @@ class ReadOnlyMultiSegmentReader extends MultiSegmentReader {
     super(directory, sis, closeDirectory, true);
   }
 
+  ReadOnlyMultiSegmentReader(Directory directory, SegmentInfos sis, boolean closeDirectory, SegmentReader[] readers) throws IOException {
+    super(directory, sis, closeDirectory, readers, true);
+  }
+
   ReadOnlyMultiSegmentReader(Directory directory, SegmentInfos infos, boolean closeDirectory, SegmentReader[] oldReaders, int[] oldStarts, Map oldNormsCache) throws IOException {
     super(directory, infos, closeDirectory, oldReaders, oldStarts, oldNormsCache, true);
   }
@@ -26,9 +26,4 @@ class ReadOnlySegmentReader extends SegmentReader {
   protected void acquireWriteLock() {
     noWrite();
   }
-
-  // Not synchronized
-  public boolean isDeleted(int n) {
-    return deletedDocs != null && deletedDocs.get(n);
-  }
 }
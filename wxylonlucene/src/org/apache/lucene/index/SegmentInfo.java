@@ -17,6 +17,7 @@ package org.apache.lucene.index;
  * limitations under the License.
  */
 
+import org.apache.lucene.store.ChecksumIndexInput;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.IndexInput;
@@ -24,6 +25,9 @@ import org.apache.lucene.util.BitVector;
 import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Iterator;
 
 final class SegmentInfo {
 
@@ -79,6 +83,9 @@ final class SegmentInfo {
 
   private boolean hasProx;                        // True if this segment has any fields with omitTf==false
 
+  private Map checksums;                          // file name -> CRC32 (Long) of the whole file, or null
+                                                  // if the writer did not compute checksums
+
   public SegmentInfo(String name, int docCount, Directory dir) {
     this.name = name;
     this.docCount = docCount;
@@ -133,6 +140,7 @@ final class SegmentInfo {
     isCompoundFile = src.isCompoundFile;
     hasSingleNormFile = src.hasSingleNormFile;
     delCount = src.delCount;
+    checksums = src.checksums == null ? null : new HashMap(src.checksums);
   }
 
   /**
@@ -188,6 +196,14 @@ final class SegmentInfo {
         hasProx = input.readByte() == 1;
       else
         hasProx = true;
+      if (format <= SegmentInfos.FORMAT_FILE_CHECKSUMS) {
+        int numChecksums = input.readInt();
+        if (numChecksums > 0) {
+          checksums = new HashMap();
+          for(int j=0;j<numChecksums;j++)
+            checksums.put(input.readString(), Long.valueOf(input.readLong()));
+        }
+      }
     } else {
       delGen = CHECK_DIR;
       normGen = null;
@@ -294,6 +310,37 @@ final class SegmentInfo {
     si.docStoreOffset = docStoreOffset;
     si.docStoreSegment = docStoreSegment;
     si.docStoreIsCompoundFile = docStoreIsCompoundFile;
+    // Clones used to get the default hasProx=true, so a clone
+    // of an all-omitTf segment listed a .prx file it has not got
+    si.hasProx = hasProx;
+    if (checksums != null)
+      si.checksums = new HashMap(checksums);
+    return si;
+  }
+
+  /**
+   * Returns a copy of this SegmentInfo for the segment's
+   * files copied into dir under the new name.  If we share
+   * doc stores, the copy shares docStoreSegment instead.
+   * fileNames maps each of our file names to the name of
+   * its copy and is used to carry over the checksums.
+   */
+  SegmentInfo copy(Directory dir, String name, String docStoreSegment, Map fileNames) {
+    SegmentInfo si = (SegmentInfo) clone();
+    si.dir = dir;
+    si.name = name;
+    if (docStoreOffset != -1)
+      si.docStoreSegment = docStoreSegment;
+    if (checksums != null) {
+      si.checksums = new HashMap();
+      Iterator it = checksums.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry entry = (Map.Entry) it.next();
+        Object fileName = fileNames.get(entry.getKey());
+        if (fileName != null)
+          si.checksums.put(fileName, entry.getValue());
+      }
+    }
     return si;
   }
 
@@ -492,9 +539,9 @@ final class SegmentInfo {
   }
   
   /**
-   * Save this segment's info.
+   * Save this segment's info in the given segments file format.
    */
-  void write(IndexOutput output)
+  void write(IndexOutput output, int format)
     throws IOException {
     output.writeString(name);
     output.writeInt(docCount);
@@ -517,6 +564,19 @@ final class SegmentInfo {
     output.writeByte(isCompoundFile);
     output.writeInt(delCount);
     output.writeByte((byte) (hasProx ? 1:0));
+    if (format > SegmentInfos.FORMAT_FILE_CHECKSUMS) {
+      assert checksums == null;
+    } else if (checksums == null) {
+      output.writeInt(0);
+    } else {
+      output.writeInt(checksums.size());
+      Iterator it = checksums.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry entry = (Map.Entry) it.next();
+        output.writeString((String) entry.getKey());
+        output.writeLong(((Long) entry.getValue()).longValue());
+      }
+    }
   }
 
   void setHasProx(boolean hasProx) {
@@ -528,6 +588,56 @@ final class SegmentInfo {
     return hasProx;
   }
 
+  /** Returns the CRC32 (Long) of each file of this segment
+   *  by file name, or null if they were not computed. */
+  Map getChecksums() {
+    return checksums;
+  }
+
+  /**
+   * Computes the CRC32 of those files of this segment
+   * that have none yet, and drops the checksums of files
+   * the segment no longer uses.  Index files are written
+   * once, so a checksum stays valid as long as the file
+   * exists.  Returns true if anything changed.
+   */
+  boolean updateChecksums() throws IOException {
+    final List files = files();
+    final int size = files.size();
+    boolean changed = checksums == null || checksums.size() != size;
+    Map newChecksums = new HashMap();
+    for(int i=0;i<size;i++) {
+      final String fileName = (String) files.get(i);
+      Long checksum = checksums == null ? null : (Long) checksums.get(fileName);
+      if (checksum == null) {
+        checksum = Long.valueOf(ChecksumIndexInput.checksum(dir, fileName));
+        changed = true;
+      }
+      newChecksums.put(fileName, checksum);
+    }
+    if (changed)
+      checksums = newChecksums;
+    return changed;
+  }
+
+  /** Takes over the checksums src computed for files we
+   *  also use. */
+  void copyChecksums(SegmentInfo src) throws IOException {
+    if (src.checksums == null)
+      return;
+    final List files = files();
+    Map newChecksums = new HashMap();
+    for(int i=0;i<files.size();i++) {
+      final String fileName = (String) files.get(i);
+      Object checksum = src.checksums.get(fileName);
+      if (checksum == null && checksums != null)
+        checksum = checksums.get(fileName);
+      if (checksum != null)
+        newChecksums.put(fileName, checksum);
+    }
+    checksums = newChecksums;
+  }
+
   private void addIfExists(List files, String fileName) throws IOException {
     if (dir.fileExists(fileName))
       files.add(fileName);
@@ -58,8 +58,16 @@ final class SegmentInfos extends Vector {
 	 */
 	public static final int FORMAT_HAS_PROX = -7;
 
+	/**
+	 * This format adds the CRC32 of each file of the segment, if the writer
+	 * computed them, so that {@link CheckIndex} can verify the files. It is
+	 * only written when some segment has checksums, so that indexes without
+	 * them stay readable by older releases.
+	 */
+	public static final int FORMAT_FILE_CHECKSUMS = -8;
+
 	/* This must always point to the most recent file format. */
-	static final int CURRENT_FORMAT = FORMAT_HAS_PROX;
+	static final int CURRENT_FORMAT = FORMAT_FILE_CHECKSUMS;
 
 	public int counter = 0; // used to name new segments
 	/**
@@ -309,13 +317,20 @@ final class SegmentInfos extends Vector {
 		boolean success = false;
 
 		try {
-			output.writeInt(CURRENT_FORMAT); // write FORMAT
+			int format = FORMAT_HAS_PROX;
+			for (int i = 0; i < size(); i++) {
+				if (info(i).getChecksums() != null) {
+					format = FORMAT_FILE_CHECKSUMS;
+					break;
+				}
+			}
+			output.writeInt(format); // write FORMAT
 			output.writeLong(++version); // every write changes
 			// the index
 			output.writeInt(counter); // write counter
 			output.writeInt(size()); // write infos
 			for (int i = 0; i < size(); i++) {
-				info(i).write(output);
+				info(i).write(output, format);
 			}
 			output.prepareCommit();
 			success = true;
@@ -35,6 +35,12 @@ final class SegmentMergeInfo {
     term = te.term();
   }
 
+  SegmentMergeInfo(int b, TermEnum te, IndexReader r, int[] docMap)
+    throws IOException {
+    this(b, te, r);
+    this.docMap = docMap;
+  }
+
   // maps around deleted docs
   int[] getDocMap() {
     if (docMap == null) {
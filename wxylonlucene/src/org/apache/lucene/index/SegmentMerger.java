@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -27,8 +28,12 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.document.FieldSelectorResult;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RateLimitedDirectoryWrapper;
+import org.apache.lucene.store.RateLimiter;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.UnicodeUtil;
 
 /**
  * The SegmentMerger class combines two or more Segments, represented by an IndexReader ({@link #add},
@@ -49,6 +54,8 @@ final class SegmentMerger {
   private Directory directory;
   private String segment;
   private int termIndexInterval = IndexWriter.DEFAULT_TERM_INDEX_INTERVAL;
+  private int postingsMergeThreadCount = 1;
+  private boolean recordImpacts;
 
   private List readers = new ArrayList();
   private FieldInfos fieldInfos;
@@ -80,9 +87,19 @@ final class SegmentMerger {
   SegmentMerger(IndexWriter writer, String name, MergePolicy.OneMerge merge) {
     directory = writer.getDirectory();
     segment = name;
-    if (merge != null)
+    if (merge != null) {
       checkAbort = new CheckAbort(merge, directory);
+      // Count, and maybe throttle, everything the merge writes
+      final RateLimiter[] rateLimiters;
+      if (merge.totalRateLimiter != null)
+        rateLimiters = new RateLimiter[] {merge.rateLimiter, merge.totalRateLimiter};
+      else
+        rateLimiters = new RateLimiter[] {merge.rateLimiter};
+      directory = new RateLimitedDirectoryWrapper(directory, rateLimiters);
+    }
     termIndexInterval = writer.getTermIndexInterval();
+    postingsMergeThreadCount = writer.getMergePostingsThreadCount();
+    recordImpacts = writer.getRecordImpacts();
   }
   
   boolean hasProx() {
@@ -216,29 +233,39 @@ final class SegmentMerger {
   }
 
   private SegmentReader[] matchingSegmentReaders;
+  private int[][] fieldNumberMaps;
   private int[] rawDocLengths;
   private int[] rawDocLengths2;
 
   private void setMatchingSegmentReaders() {
-    // If the i'th reader is a SegmentReader and has
-    // identical fieldName -> number mapping, then this
-    // array will be non-null at position i:
+    // If the i'th reader is a SegmentReader, then this
+    // array will be non-null at position i, and we can bulk
+    // copy its stored fields and term vectors:
     matchingSegmentReaders = new SegmentReader[readers.size()];
 
-    // If this reader is a SegmentReader, and all of its
-    // field name -> number mappings match the "merged"
-    // FieldInfos, then we can do a bulk copy of the
-    // stored fields:
+    // If the i'th reader's field name -> number mapping
+    // differs from the "merged" FieldInfos, this array maps
+    // its field numbers to ours at position i, so that the
+    // raw documents are copied with only their field numbers
+    // rewritten.  It is null at position i if all mappings
+    // match and the raw bytes can be copied as they are:
+    fieldNumberMaps = new int[readers.size()][];
+
     for (int i = 0; i < readers.size(); i++) {
       IndexReader reader = (IndexReader) readers.get(i);
       if (reader instanceof SegmentReader) {
         SegmentReader segmentReader = (SegmentReader) reader;
         boolean same = true;
         FieldInfos segmentFieldInfos = segmentReader.getFieldInfos();
-        for (int j = 0; same && j < segmentFieldInfos.size(); j++)
-          same = fieldInfos.fieldName(j).equals(segmentFieldInfos.fieldName(j));
-        if (same)
-          matchingSegmentReaders[i] = segmentReader;
+        final int[] fieldNumberMap = new int[segmentFieldInfos.size()];
+        for (int j = 0; j < segmentFieldInfos.size(); j++) {
+          fieldNumberMap[j] = fieldInfos.fieldNumber(segmentFieldInfos.fieldName(j));
+          if (fieldNumberMap[j] != j)
+            same = false;
+        }
+        matchingSegmentReaders[i] = segmentReader;
+        if (!same)
+          fieldNumberMaps[i] = fieldNumberMap;
       }
     }
 
@@ -310,6 +337,7 @@ final class SegmentMerger {
         for (int i = 0; i < readers.size(); i++) {
           final IndexReader reader = (IndexReader) readers.get(i);
           final SegmentReader matchingSegmentReader = matchingSegmentReaders[i];
+          final int[] fieldNumberMap = fieldNumberMaps[i];
           final FieldsReader matchingFieldsReader;
           final boolean hasMatchingReader;
           if (matchingSegmentReader != null) {
@@ -331,8 +359,9 @@ final class SegmentMerger {
             if (!hasDeletions || !reader.isDeleted(j)) { // skip deleted docs
               if (hasMatchingReader) {
                 // We can optimize this case (doing a bulk
-                // byte copy) since the field numbers are
-                // identical
+                // byte copy) since the field values need
+                // not be decoded; at most the field numbers
+                // must be rewritten
                 int start = j;
                 int numDocs = 0;
                 do {
@@ -347,7 +376,10 @@ final class SegmentMerger {
                 } while(numDocs < MAX_RAW_MERGE_DOCS);
 
                 IndexInput stream = matchingFieldsReader.rawDocs(rawDocLengths, start, numDocs);
-                fieldsWriter.addRawDocuments(stream, rawDocLengths, numDocs);
+                if (fieldNumberMap == null)
+                  fieldsWriter.addRawDocuments(stream, rawDocLengths, numDocs);
+                else
+                  fieldsWriter.addRemappedRawDocuments(stream, fieldNumberMap, numDocs);
                 docCount += numDocs;
                 if (checkAbort != null)
                   checkAbort.work(300*numDocs);
@@ -402,6 +434,7 @@ final class SegmentMerger {
     try {
       for (int r = 0; r < readers.size(); r++) {
         final SegmentReader matchingSegmentReader = matchingSegmentReaders[r];
+        final int[] fieldNumberMap = fieldNumberMaps[r];
         TermVectorsReader matchingVectorsReader;
         final boolean hasMatchingReader;
         if (matchingSegmentReader != null) {
@@ -427,8 +460,9 @@ final class SegmentMerger {
           if (!hasDeletions || !reader.isDeleted(docNum)) {
             if (hasMatchingReader) {
               // We can optimize this case (doing a bulk
-              // byte copy) since the field numbers are
-              // identical
+              // byte copy) since the vectors need not be
+              // decoded; at most the field numbers must be
+              // rewritten
               int start = docNum;
               int numDocs = 0;
               do {
@@ -443,7 +477,10 @@ final class SegmentMerger {
               } while(numDocs < MAX_RAW_MERGE_DOCS);
 
               matchingVectorsReader.rawDocs(rawDocLengths, rawDocLengths2, start, numDocs);
-              termVectorsWriter.addRawDocuments(matchingVectorsReader, rawDocLengths, rawDocLengths2, numDocs);
+              if (fieldNumberMap == null)
+                termVectorsWriter.addRawDocuments(matchingVectorsReader, rawDocLengths, rawDocLengths2, numDocs);
+              else
+                termVectorsWriter.addRemappedRawDocuments(matchingVectorsReader, fieldNumberMap, rawDocLengths, rawDocLengths2, numDocs);
               if (checkAbort != null)
                 checkAbort.work(300*numDocs);
             } else {
@@ -476,269 +513,626 @@ final class SegmentMerger {
       throw new RuntimeException("mergeVectors produced an invalid result: mergedDocs is " + mergedDocs + " but tvx size is " + tvxSize + "; now aborting this merge to prevent index corruption");
   }
 
-  private IndexOutput freqOutput = null;
-  private IndexOutput proxOutput = null;
-  private TermInfosWriter termInfosWriter = null;
   private int skipInterval;
   private int maxSkipLevels;
-  private SegmentMergeQueue queue = null;
-  private DefaultSkipListWriter skipListWriter = null;
+  private int[] bases;
+  private int[][] docMaps;
+  int[][] getDocMaps() {
+    return docMaps;
+  }
+  private int[] delCounts;
+  int[] getDelCounts() {
+    return delCounts;
+  }
 
   private final void mergeTerms() throws CorruptIndexException, IOException {
+    IndexOutput freqOutput = null;
+    IndexOutput proxOutput = null;
+    TermInfosWriter termInfosWriter = null;
     try {
       freqOutput = directory.createOutput(segment + ".frq");
       if (hasProx())
         proxOutput = directory.createOutput(segment + ".prx");
       termInfosWriter =
               new TermInfosWriter(directory, segment, fieldInfos,
-                                  termIndexInterval);
+                                  termIndexInterval, recordImpacts);
       skipInterval = termInfosWriter.skipInterval;
       maxSkipLevels = termInfosWriter.maxSkipLevels;
-      skipListWriter = new DefaultSkipListWriter(skipInterval, maxSkipLevels, mergedDocs, freqOutput, proxOutput);
-      queue = new SegmentMergeQueue(readers.size());
 
-      mergeTermInfos();
+      setDocMaps();
+
+      final String[] fields = indexedFields();
+      if (postingsMergeThreadCount > 1 && fields.length > 1)
+        mergeTermInfosParallel(fields, Math.min(postingsMergeThreadCount, fields.length),
+                               freqOutput, proxOutput, termInfosWriter);
+      else
+        new PostingsWriter(freqOutput, proxOutput, termInfosWriter).mergeTermInfos(null);
 
     } finally {
       if (freqOutput != null) freqOutput.close();
       if (proxOutput != null) proxOutput.close();
       if (termInfosWriter != null) termInfosWriter.close();
-      if (queue != null) queue.close();
     }
   }
 
-  private final void mergeTermInfos() throws CorruptIndexException, IOException {
-    int base = 0;
+  /** Computes each reader's docID base in the merged segment,
+   *  and the maps around its deleted docs. */
+  private void setDocMaps() {
     final int readerCount = readers.size();
+    bases = new int[readerCount];
+    int base = 0;
     for (int i = 0; i < readerCount; i++) {
       IndexReader reader = (IndexReader) readers.get(i);
-      TermEnum termEnum = reader.terms();
-      SegmentMergeInfo smi = new SegmentMergeInfo(base, termEnum, reader);
-      int[] docMap  = smi.getDocMap();
-      if (docMap != null) {
+      bases[i] = base;
+      if (reader.hasDeletions()) {
         if (docMaps == null) {
           docMaps = new int[readerCount][];
           delCounts = new int[readerCount];
         }
+        // build array which maps document numbers around deletions
+        int maxDoc = reader.maxDoc();
+        int[] docMap = new int[maxDoc];
+        int j = 0;
+        for (int k = 0; k < maxDoc; k++) {
+          if (reader.isDeleted(k))
+            docMap[k] = -1;
+          else
+            docMap[k] = j++;
+        }
         docMaps[i] = docMap;
-        delCounts[i] = smi.reader.maxDoc() - smi.reader.numDocs();
+        delCounts[i] = reader.maxDoc() - reader.numDocs();
       }
-
       base += reader.numDocs();
-      if (smi.next())
-        queue.put(smi);				  // initialize queue
-      else
-        smi.close();
     }
+  }
 
-    SegmentMergeInfo[] match = new SegmentMergeInfo[readers.size()];
+  /** Returns the names of all indexed fields, in term order. */
+  private String[] indexedFields() {
+    List fields = new ArrayList();
+    for (int i = 0; i < fieldInfos.size(); i++) {
+      FieldInfo fi = fieldInfos.fieldInfo(i);
+      if (fi.isIndexed)
+        fields.add(fi.name);
+    }
+    String[] result = (String[]) fields.toArray(new String[fields.size()]);
+    Arrays.sort(result);
+    return result;
+  }
 
-    while (queue.size() > 0) {
-      int matchSize = 0;			  // pop matching terms
-      match[matchSize++] = (SegmentMergeInfo) queue.pop();
-      Term term = match[0].term;
-      SegmentMergeInfo top = (SegmentMergeInfo) queue.top();
+  /** Merges the postings of the given fields with several
+   *  threads.  Each thread takes the next field that is not
+   *  merged yet, and appends its postings to a private pair
+   *  of temporary freq/prox files and its term entries to a
+   *  private RAM buffer.  Once all fields are done, the
+   *  pieces are concatenated in field order into the final
+   *  files, shifting the freq/prox pointers of the term
+   *  entries.  Skip data only holds pointers relative to the
+   *  start of each term's postings, so it is copied as is. */
+  private final void mergeTermInfosParallel(String[] fields, int numThreads,
+                                            IndexOutput freqOutput, IndexOutput proxOutput,
+                                            TermInfosWriter termInfosWriter)
+    throws CorruptIndexException, IOException {
+
+    final FieldPostings[] results = new FieldPostings[fields.length];
+    nextField = 0;
+    final PostingsMergeThread[] threads = new PostingsMergeThread[numThreads];
+    try {
+      for (int i = 0; i < numThreads; i++)
+        threads[i] = new PostingsMergeThread(i, fields, results);
+      for (int i = 1; i < numThreads; i++)
+        threads[i].start();
+
+      // This thread does its share, too
+      threads[0].run();
+
+      boolean interrupted = false;
+      for (int i = 1; i < numThreads; i++) {
+        while (threads[i].isAlive()) {
+          try {
+            threads[i].join();
+          } catch (InterruptedException ie) {
+            interrupted = true;
+          }
+        }
+      }
+      if (interrupted)
+        Thread.currentThread().interrupt();
+
+      for (int i = 0; i < numThreads; i++) {
+        final Throwable t = threads[i].exc;
+        if (t instanceof IOException)
+          throw (IOException) t;
+        else if (t instanceof RuntimeException)
+          throw (RuntimeException) t;
+        else if (t instanceof Error)
+          throw (Error) t;
+        else if (t != null)
+          throw new RuntimeException(t);
+      }
 
-      while (top != null && term.compareTo(top.term) == 0) {
-        match[matchSize++] = (SegmentMergeInfo) queue.pop();
-        top = (SegmentMergeInfo) queue.top();
+      for (int i = 0; i < numThreads; i++)
+        threads[i].openInputs();
+
+      final TermInfo termInfo = new TermInfo();
+      byte[] termBytes = new byte[10];
+      for (int i = 0; i < fields.length; i++) {
+        final FieldPostings result = results[i];
+        final PostingsMergeThread thread = threads[result.thread];
+
+        final long freqShift = freqOutput.getFilePointer() - result.freqStart;
+        thread.freqInput.seek(result.freqStart);
+        freqOutput.copyBytes(thread.freqInput, result.freqEnd - result.freqStart);
+
+        final long proxShift;
+        if (proxOutput != null) {
+          proxShift = proxOutput.getFilePointer() - result.proxStart;
+          thread.proxInput.seek(result.proxStart);
+          proxOutput.copyBytes(thread.proxInput, result.proxEnd - result.proxStart);
+        } else
+          proxShift = 0;
+
+        final int fieldNumber = fieldInfos.fieldNumber(fields[i]);
+        final IndexInput termsInput = thread.termsInput;
+        termsInput.seek(result.termsStart);
+        for (int j = 0; j < result.numTerms; j++) {
+          final int length = termsInput.readVInt();
+          if (termBytes.length < length)
+            termBytes = new byte[(int) (1.25*length)];
+          termsInput.readBytes(termBytes, 0, length);
+          final int df = termsInput.readVInt();
+          final long freqPointer = termsInput.readVLong() + freqShift;
+          final long proxPointer = termsInput.readVLong() + proxShift;
+          final int skipOffset = termsInput.readVInt();
+          final int maxFreq = termsInput.readVInt();
+          final byte maxNorm = termsInput.readByte();
+          termInfo.set(df, freqPointer, proxPointer, skipOffset, maxFreq, maxNorm);
+          termInfosWriter.add(fieldNumber, termBytes, length, termInfo);
+        }
       }
+    } finally {
+      for (int i = 0; i < numThreads; i++)
+        if (threads[i] != null)
+          threads[i].close();
+    }
+  }
 
-      final int df = mergeTermInfo(match, matchSize);		  // add new TermInfo
+  /** Where one field's postings and term entries ended up
+   *  in the outputs of the thread that merged it. */
+  private static final class FieldPostings {
+    int thread;
+    long freqStart, freqEnd;
+    long proxStart, proxEnd;
+    long termsStart;
+    int numTerms;
+  }
 
-      if (checkAbort != null)
-        checkAbort.work(df/3.0);
+  private final class PostingsMergeThread extends Thread {
+    private final int id;
+    private final String[] fields;
+    private final FieldPostings[] results;
+    private final RAMDirectory termsDir = new RAMDirectory();
+    private final String freqFileName;
+    private final String proxFileName;
+    private IndexOutput freqOutput;
+    private IndexOutput proxOutput;
+    private IndexOutput termsOutput;
+    private boolean outputsClosed;
+    IndexInput freqInput;
+    IndexInput proxInput;
+    IndexInput termsInput;
+    volatile Throwable exc;
+
+    PostingsMergeThread(int id, String[] fields, FieldPostings[] results) {
+      this.id = id;
+      this.fields = fields;
+      this.results = results;
+      freqFileName = segment + "_" + id + ".frq";
+      proxFileName = segment + "_" + id + ".prx";
+      setName("Lucene Postings Merge Thread #" + id);
+      setDaemon(true);
+    }
 
-      while (matchSize > 0) {
-        SegmentMergeInfo smi = match[--matchSize];
-        if (smi.next())
-          queue.put(smi);			  // restore queue
-        else
-          smi.close();				  // done with a segment
+    public void run() {
+      try {
+        freqOutput = directory.createOutput(freqFileName);
+        if (hasProx())
+          proxOutput = directory.createOutput(proxFileName);
+        termsOutput = termsDir.createOutput("terms");
+        final PostingsWriter writer = new PostingsWriter(freqOutput, proxOutput, termsOutput);
+
+        String field;
+        while ((field = nextField(results)) != null) {
+          final FieldPostings result = new FieldPostings();
+          result.thread = id;
+          result.freqStart = freqOutput.getFilePointer();
+          result.proxStart = proxOutput == null ? 0 : proxOutput.getFilePointer();
+          result.termsStart = termsOutput.getFilePointer();
+          writer.numTerms = 0;
+
+          writer.mergeTermInfos(field);
+
+          result.freqEnd = freqOutput.getFilePointer();
+          result.proxEnd = proxOutput == null ? 0 : proxOutput.getFilePointer();
+          result.numTerms = writer.numTerms;
+          synchronized (results) {
+            results[indexOf(field)] = result;
+          }
+        }
+      } catch (Throwable t) {
+        exc = t;
+        // Stop the other threads
+        synchronized (results) {
+          nextField = fields.length;
+        }
       }
     }
-  }
 
-  private final TermInfo termInfo = new TermInfo(); // minimize consing
+    private int indexOf(String field) {
+      for (int i = 0; i < fields.length; i++)
+        if (fields[i] == field)
+          return i;
+      throw new IllegalStateException("unknown field " + field);
+    }
 
-  /** Merge one term found in one or more segments. The array <code>smis</code>
-   *  contains segments that are positioned at the same term. <code>N</code>
-   *  is the number of cells in the array actually occupied.
-   *
-   * @param smis array of segments
-   * @param n number of cells in the array actually occupied
-   * @throws CorruptIndexException if the index is corrupt
-   * @throws IOException if there is a low-level IO error
-   */
-  private final int mergeTermInfo(SegmentMergeInfo[] smis, int n)
-          throws CorruptIndexException, IOException {
-    final long freqPointer = freqOutput.getFilePointer();
-    final long proxPointer;
-    if (proxOutput != null)
-      proxPointer = proxOutput.getFilePointer();
-    else
-      proxPointer = 0;
-
-    int df;
-    if (fieldInfos.fieldInfo(smis[0].term.field).omitTf) { // append posting data
-      df = appendPostingsNoTf(smis, n);     
-    } else{
-      df = appendPostings(smis, n);      
+    private String nextField(FieldPostings[] results) {
+      synchronized (results) {
+        if (nextField < fields.length)
+          return fields[nextField++];
+        return null;
+      }
     }
-    
-    long skipPointer = skipListWriter.writeSkip(freqOutput);
 
-    if (df > 0) {
-      // add an entry to the dictionary with pointers to prox and freq files
-      termInfo.set(df, freqPointer, proxPointer, (int) (skipPointer - freqPointer));
-      termInfosWriter.add(smis[0].term, termInfo);
+    void openInputs() throws IOException {
+      closeOutputs();
+      freqInput = directory.openInput(freqFileName);
+      if (proxOutput != null)
+        proxInput = directory.openInput(proxFileName);
+      termsInput = termsDir.openInput("terms");
     }
 
-    return df;
-  }
-  
-  private byte[] payloadBuffer;
-  private int[][] docMaps;
-  int[][] getDocMaps() {
-    return docMaps;
-  }
-  private int[] delCounts;
-  int[] getDelCounts() {
-    return delCounts;
+    private void closeOutputs() throws IOException {
+      if (outputsClosed)
+        return;
+      outputsClosed = true;
+      try {
+        if (freqOutput != null) freqOutput.close();
+        if (proxOutput != null) proxOutput.close();
+      } finally {
+        if (termsOutput != null) termsOutput.close();
+      }
+    }
+
+    void close() throws IOException {
+      try {
+        try {
+          closeOutputs();
+        } finally {
+          if (freqInput != null) freqInput.close();
+          if (proxInput != null) proxInput.close();
+          if (termsInput != null) termsInput.close();
+        }
+      } finally {
+        // The thread may have failed before creating the files
+        if (directory.fileExists(freqFileName))
+          directory.deleteFile(freqFileName);
+        if (directory.fileExists(proxFileName))
+          directory.deleteFile(proxFileName);
+        termsDir.close();
+      }
+    }
   }
 
-  /** Process postings from multiple segments all positioned on the
-   *  same term. Writes out merged entries into freqOutput and
-   *  the proxOutput streams.
-   *
-   * @param smis array of segments
-   * @param n number of cells in the array actually occupied
-   * @return number of documents across all segments where this term was found
-   * @throws CorruptIndexException if the index is corrupt
-   * @throws IOException if there is a low-level IO error
-   */
-  private final int appendPostings(SegmentMergeInfo[] smis, int n)
-          throws CorruptIndexException, IOException {
-    int lastDoc = 0;
-    int df = 0;					  // number of docs w/ term
-    skipListWriter.resetSkip();
-    boolean storePayloads = fieldInfos.fieldInfo(smis[0].term.field).storePayloads;
-    int lastPayloadLength = -1;   // ensures that we write the first length
-    for (int i = 0; i < n; i++) {
-      SegmentMergeInfo smi = smis[i];
-      TermPositions postings = smi.getPositions();
-      assert postings != null;
-      int base = smi.base;
-      int[] docMap = smi.getDocMap();
-      postings.seek(smi.termEnum);
-      while (postings.next()) {
-        int doc = postings.doc();
-        if (docMap != null)
-          doc = docMap[doc];                      // map around deletions
-        doc += base;                              // convert to merged space
-
-        if (doc < 0 || (df > 0 && doc <= lastDoc))
-          throw new CorruptIndexException("docs out of order (" + doc +
-              " <= " + lastDoc + " )");
-
-        df++;
-
-        if ((df % skipInterval) == 0) {
-          skipListWriter.setSkipData(lastDoc, storePayloads, lastPayloadLength);
-          skipListWriter.bufferSkip(df);
+  // Next field to hand to a PostingsMergeThread; guarded by
+  // the results array
+  private int nextField;
+
+  /** Merges postings of consecutive terms into a pair of
+   *  freq/prox outputs.  The term entries are added to a
+   *  TermInfosWriter, or, when the outputs are temporary,
+   *  buffered to a RAM file with pointers relative to the
+   *  start of these outputs. */
+  private final class PostingsWriter {
+    private final IndexOutput freqOutput;
+    private final IndexOutput proxOutput;
+    private final TermInfosWriter termInfosWriter;
+    private final IndexOutput termsOutput;
+    private final DefaultSkipListWriter skipListWriter;
+    private final TermInfo termInfo = new TermInfo(); // minimize consing
+    private final UnicodeUtil.UTF8Result utf8Result = new UnicodeUtil.UTF8Result();
+    private byte[] payloadBuffer;
+    private int maxFreq;                          // of the last term appended
+    private int maxNorm;
+    int numTerms;
+
+    PostingsWriter(IndexOutput freqOutput, IndexOutput proxOutput, TermInfosWriter termInfosWriter) {
+      this(freqOutput, proxOutput, termInfosWriter, null);
+    }
+
+    PostingsWriter(IndexOutput freqOutput, IndexOutput proxOutput, IndexOutput termsOutput) {
+      this(freqOutput, proxOutput, null, termsOutput);
+    }
+
+    private PostingsWriter(IndexOutput freqOutput, IndexOutput proxOutput,
+                           TermInfosWriter termInfosWriter, IndexOutput termsOutput) {
+      this.freqOutput = freqOutput;
+      this.proxOutput = proxOutput;
+      this.termInfosWriter = termInfosWriter;
+      this.termsOutput = termsOutput;
+      skipListWriter = new DefaultSkipListWriter(skipInterval, maxSkipLevels, mergedDocs, freqOutput, proxOutput, recordImpacts);
+    }
+
+    /** Merges the terms of the given field, or of all fields
+     *  if field is null. */
+    final void mergeTermInfos(String field) throws CorruptIndexException, IOException {
+      final int readerCount = readers.size();
+      final SegmentMergeQueue queue = new SegmentMergeQueue(readerCount);
+      try {
+        for (int i = 0; i < readerCount; i++) {
+          IndexReader reader = (IndexReader) readers.get(i);
+          TermEnum termEnum = field == null ? reader.terms() : reader.terms(new Term(field, "", false));
+          SegmentMergeInfo smi = new SegmentMergeInfo(bases[i], termEnum, reader,
+                                                      docMaps == null ? null : docMaps[i]);
+          // A positioned enum already stands on its first term
+          if (field == null ? smi.next() : (smi.term != null && smi.term.field == field))
+            queue.put(smi);				  // initialize queue
+          else
+            smi.close();
         }
 
-        int docCode = (doc - lastDoc) << 1;	  // use low bit to flag freq=1
-        lastDoc = doc;
+        SegmentMergeInfo[] match = new SegmentMergeInfo[readerCount];
 
-        int freq = postings.freq();
-        if (freq == 1) {
-          freqOutput.writeVInt(docCode | 1);	  // write doc & freq=1
-        } else {
-          freqOutput.writeVInt(docCode);	  // write doc
-          freqOutput.writeVInt(freq);		  // write frequency in doc
+        while (queue.size() > 0) {
+          int matchSize = 0;			  // pop matching terms
+          match[matchSize++] = (SegmentMergeInfo) queue.pop();
+          Term term = match[0].term;
+          SegmentMergeInfo top = (SegmentMergeInfo) queue.top();
+
+          while (top != null && term.compareTo(top.term) == 0) {
+            match[matchSize++] = (SegmentMergeInfo) queue.pop();
+            top = (SegmentMergeInfo) queue.top();
+          }
+
+          final int df = mergeTermInfo(match, matchSize);		  // add new TermInfo
+
+          if (checkAbort != null)
+            checkAbort.work(df/3.0);
+
+          while (matchSize > 0) {
+            SegmentMergeInfo smi = match[--matchSize];
+            if (smi.next() && (field == null || smi.term.field == field))
+              queue.put(smi);			  // restore queue
+            else
+              smi.close();				  // done with a segment
+          }
+        }
+      } finally {
+        queue.close();
+      }
+    }
+
+    /** Merge one term found in one or more segments. The array <code>smis</code>
+     *  contains segments that are positioned at the same term. <code>N</code>
+     *  is the number of cells in the array actually occupied.
+     *
+     * @param smis array of segments
+     * @param n number of cells in the array actually occupied
+     * @throws CorruptIndexException if the index is corrupt
+     * @throws IOException if there is a low-level IO error
+     */
+    private final int mergeTermInfo(SegmentMergeInfo[] smis, int n)
+            throws CorruptIndexException, IOException {
+      final long freqPointer = freqOutput.getFilePointer();
+      final long proxPointer;
+      if (proxOutput != null)
+        proxPointer = proxOutput.getFilePointer();
+      else
+        proxPointer = 0;
+
+      int df;
+      if (fieldInfos.fieldInfo(smis[0].term.field).omitTf) { // append posting data
+        df = appendPostingsNoTf(smis, n);     
+      } else{
+        df = appendPostings(smis, n);      
+      }
+    
+      long skipPointer = skipListWriter.writeSkip(freqOutput);
+
+      if (df > 0) {
+        // add an entry to the dictionary with pointers to prox and freq files
+        termInfo.set(df, freqPointer, proxPointer, (int) (skipPointer - freqPointer), maxFreq, (byte) maxNorm);
+        if (termInfosWriter != null)
+          termInfosWriter.add(smis[0].term, termInfo);
+        else {
+          final String text = smis[0].term.text;
+          UnicodeUtil.UTF16toUTF8(text, 0, text.length(), utf8Result);
+          termsOutput.writeVInt(utf8Result.length);
+          termsOutput.writeBytes(utf8Result.result, 0, utf8Result.length);
+          termsOutput.writeVInt(termInfo.docFreq);
+          termsOutput.writeVLong(termInfo.freqPointer);
+          termsOutput.writeVLong(termInfo.proxPointer);
+          termsOutput.writeVInt(termInfo.skipOffset);
+          termsOutput.writeVInt(termInfo.maxFreq);
+          termsOutput.writeByte(termInfo.maxNorm);
         }
+        numTerms++;
+      }
+
+      return df;
+    }
+
+    /** Process postings from multiple segments all positioned on the
+     *  same term. Writes out merged entries into freqOutput and
+     *  the proxOutput streams.
+     *
+     * @param smis array of segments
+     * @param n number of cells in the array actually occupied
+     * @return number of documents across all segments where this term was found
+     * @throws CorruptIndexException if the index is corrupt
+     * @throws IOException if there is a low-level IO error
+     */
+    private final int appendPostings(SegmentMergeInfo[] smis, int n)
+            throws CorruptIndexException, IOException {
+      int lastDoc = 0;
+      int df = 0;					  // number of docs w/ term
+      skipListWriter.resetSkip();
+      boolean storePayloads = fieldInfos.fieldInfo(smis[0].term.field).storePayloads;
+      int lastPayloadLength = -1;   // ensures that we write the first length
+      maxFreq = 0;
+      maxNorm = 0;
+      int blockMaxFreq = 0;                       // since the last skip point
+      int blockMaxNorm = 0;
+      for (int i = 0; i < n; i++) {
+        SegmentMergeInfo smi = smis[i];
+        TermPositions postings = smi.getPositions();
+        assert postings != null;
+        int base = smi.base;
+        int[] docMap = smi.getDocMap();
+        byte[] norms = norms(smi);
+        postings.seek(smi.termEnum);
+        while (postings.next()) {
+          int doc = postings.doc();
+          int norm = norms == null ? 0 : norms[doc] & 0xFF;
+          if (docMap != null)
+            doc = docMap[doc];                      // map around deletions
+          doc += base;                              // convert to merged space
+
+          if (doc < 0 || (df > 0 && doc <= lastDoc))
+            throw new CorruptIndexException("docs out of order (" + doc +
+                " <= " + lastDoc + " )");
+
+          df++;
+
+          if ((df % skipInterval) == 0) {
+            skipListWriter.setSkipData(lastDoc, storePayloads, lastPayloadLength, blockMaxFreq, (byte) blockMaxNorm);
+            skipListWriter.bufferSkip(df);
+            blockMaxFreq = 0;
+            blockMaxNorm = 0;
+          }
+
+          int docCode = (doc - lastDoc) << 1;	  // use low bit to flag freq=1
+          lastDoc = doc;
+
+          int freq = postings.freq();
+          if (freq > blockMaxFreq) {
+            blockMaxFreq = freq;
+            if (freq > maxFreq)
+              maxFreq = freq;
+          }
+          if (norm > blockMaxNorm) {
+            blockMaxNorm = norm;
+            if (norm > maxNorm)
+              maxNorm = norm;
+          }
+          if (freq == 1) {
+            freqOutput.writeVInt(docCode | 1);	  // write doc & freq=1
+          } else {
+            freqOutput.writeVInt(docCode);	  // write doc
+            freqOutput.writeVInt(freq);		  // write frequency in doc
+          }
         
-        /** See {@link DocumentWriter#writePostings(Posting[], String)} for 
-         *  documentation about the encoding of positions and payloads
-         */
-        int lastPosition = 0;			  // write position deltas
-        for (int j = 0; j < freq; j++) {
-          int position = postings.nextPosition();
-          int delta = position - lastPosition;
-          if (storePayloads) {
-            int payloadLength = postings.getPayloadLength();
-            if (payloadLength == lastPayloadLength) {
-              proxOutput.writeVInt(delta * 2);
-            } else {
-              proxOutput.writeVInt(delta * 2 + 1);
-              proxOutput.writeVInt(payloadLength);
-              lastPayloadLength = payloadLength;
-            }
-            if (payloadLength > 0) {
-              if (payloadBuffer == null || payloadBuffer.length < payloadLength) {
-                payloadBuffer = new byte[payloadLength];
+          /** See {@link DocumentWriter#writePostings(Posting[], String)} for 
+           *  documentation about the encoding of positions and payloads
+           */
+          int lastPosition = 0;			  // write position deltas
+          for (int j = 0; j < freq; j++) {
+            int position = postings.nextPosition();
+            int delta = position - lastPosition;
+            if (storePayloads) {
+              int payloadLength = postings.getPayloadLength();
+              if (payloadLength == lastPayloadLength) {
+                proxOutput.writeVInt(delta * 2);
+              } else {
+                proxOutput.writeVInt(delta * 2 + 1);
+                proxOutput.writeVInt(payloadLength);
+                lastPayloadLength = payloadLength;
+              }
+              if (payloadLength > 0) {
+                if (payloadBuffer == null || payloadBuffer.length < payloadLength) {
+                  payloadBuffer = new byte[payloadLength];
+                }
+                postings.getPayload(payloadBuffer, 0);
+                proxOutput.writeBytes(payloadBuffer, 0, payloadLength);
               }
-              postings.getPayload(payloadBuffer, 0);
-              proxOutput.writeBytes(payloadBuffer, 0, payloadLength);
+            } else {
+              proxOutput.writeVInt(delta);
             }
-          } else {
-            proxOutput.writeVInt(delta);
+            lastPosition = position;
           }
-          lastPosition = position;
         }
       }
+      return df;
     }
-    return df;
-  }
 
-  /** Process postings from multiple segments without tf, all positioned on the
-   *  same term. Writes out merged entries only into freqOutput, proxOut is not written.
-   *
-   * @param smis array of segments
-   * @param n number of cells in the array actually occupied
-   * @return number of documents across all segments where this term was found
-   * @throws CorruptIndexException if the index is corrupt
-   * @throws IOException if there is a low-level IO error
-   */
-  private final int appendPostingsNoTf(SegmentMergeInfo[] smis, int n)
-          throws CorruptIndexException, IOException {
-    int lastDoc = 0;
-    int df = 0;           // number of docs w/ term
-    skipListWriter.resetSkip();
-    int lastPayloadLength = -1;   // ensures that we write the first length
-    for (int i = 0; i < n; i++) {
-      SegmentMergeInfo smi = smis[i];
-      TermPositions postings = smi.getPositions();
-      assert postings != null;
-      int base = smi.base;
-      int[] docMap = smi.getDocMap();
-      postings.seek(smi.termEnum);
-      while (postings.next()) {
-        int doc = postings.doc();
-        if (docMap != null)
-          doc = docMap[doc];                      // map around deletions
-        doc += base;                              // convert to merged space
-
-        if (doc < 0 || (df > 0 && doc <= lastDoc))
-          throw new CorruptIndexException("docs out of order (" + doc +
-              " <= " + lastDoc + " )");
-
-        df++;
-
-        if ((df % skipInterval) == 0) {
-          skipListWriter.setSkipData(lastDoc, false, lastPayloadLength);
-          skipListWriter.bufferSkip(df);
-        }
+    /** Process postings from multiple segments without tf, all positioned on the
+     *  same term. Writes out merged entries only into freqOutput, proxOut is not written.
+     *
+     * @param smis array of segments
+     * @param n number of cells in the array actually occupied
+     * @return number of documents across all segments where this term was found
+     * @throws CorruptIndexException if the index is corrupt
+     * @throws IOException if there is a low-level IO error
+     */
+    private final int appendPostingsNoTf(SegmentMergeInfo[] smis, int n)
+            throws CorruptIndexException, IOException {
+      int lastDoc = 0;
+      int df = 0;           // number of docs w/ term
+      skipListWriter.resetSkip();
+      int lastPayloadLength = -1;   // ensures that we write the first length
+      maxFreq = 1;                  // every freq is 1
+      maxNorm = 0;
+      int blockMaxNorm = 0;         // since the last skip point
+      for (int i = 0; i < n; i++) {
+        SegmentMergeInfo smi = smis[i];
+        TermPositions postings = smi.getPositions();
+        assert postings != null;
+        int base = smi.base;
+        int[] docMap = smi.getDocMap();
+        byte[] norms = norms(smi);
+        postings.seek(smi.termEnum);
+        while (postings.next()) {
+          int doc = postings.doc();
+          int norm = norms == null ? 0 : norms[doc] & 0xFF;
+          if (docMap != null)
+            doc = docMap[doc];                      // map around deletions
+          doc += base;                              // convert to merged space
+
+          if (doc < 0 || (df > 0 && doc <= lastDoc))
+            throw new CorruptIndexException("docs out of order (" + doc +
+                " <= " + lastDoc + " )");
+
+          df++;
+
+          if ((df % skipInterval) == 0) {
+            skipListWriter.setSkipData(lastDoc, false, lastPayloadLength, 1, (byte) blockMaxNorm);
+            skipListWriter.bufferSkip(df);
+            blockMaxNorm = 0;
+          }
 
-        int docCode = (doc - lastDoc);   
-        lastDoc = doc;
-        freqOutput.writeVInt(docCode);    // write doc & freq=1
+          if (norm > blockMaxNorm) {
+            blockMaxNorm = norm;
+            if (norm > maxNorm)
+              maxNorm = norm;
+          }
+
+          int docCode = (doc - lastDoc);   
+          lastDoc = doc;
+          freqOutput.writeVInt(docCode);    // write doc & freq=1
+        }
       }
+      return df;
+    }
+
+    /** Returns the norms the merged segment gets for the term of a
+     *  segment, by its document numbers there, or null if the merged
+     *  field omits norms or impacts are not recorded. */
+    private byte[] norms(SegmentMergeInfo smi) throws IOException {
+      if (!recordImpacts)
+        return null;
+      FieldInfo fi = fieldInfos.fieldInfo(smi.term.field);
+      return fi.omitNorms ? null : smi.reader.norms(fi.name);
     }
-    return df;
   }
-  
+
   private void mergeNorms() throws IOException {
     byte[] normBuffer = null;
     IndexOutput output = null;
@@ -799,7 +1193,7 @@ final class SegmentMerger {
      * that the time in between calls to merge.checkAborted
      * is up to ~ 1 second.
      */
-    public void work(double units) throws MergePolicy.MergeAbortedException {
+    public synchronized void work(double units) throws MergePolicy.MergeAbortedException {
       workCount += units;
       if (workCount >= 10000.0) {
         merge.checkAborted(dir);
@@ -48,12 +48,19 @@ class SegmentReader extends DirectoryIndexReader {
 
   FieldInfos fieldInfos;
   private FieldsReader fieldsReader;
+  CloseableThreadLocal fieldsReaderLocal = new CloseableThreadLocal();
 
   TermInfosReader tis;
   TermVectorsReader termVectorsReaderOrig = null;
   CloseableThreadLocal termVectorsLocal = new CloseableThreadLocal();
 
-  BitVector deletedDocs = null;
+  // Copied before the first delete while shared with a reopened
+  // clone (deletedDocsShared), otherwise deletes set single bits in
+  // place; searching threads check deletions without locking and
+  // may see a doc deleted late.  Set to a new instance when first
+  // created and dropped by undeleteAll.
+  volatile BitVector deletedDocs = null;
+  private boolean deletedDocsShared = false;
   private boolean deletedDocsDirty = false;
   private boolean normsDirty = false;
   private boolean undeleteAll = false;
@@ -322,22 +329,6 @@ class SegmentReader extends DirectoryIndexReader {
         cfsDir = cfsReader;
       }
 
-      final Directory storeDir;
-
-      if (doOpenStores) {
-        if (si.getDocStoreOffset() != -1) {
-          if (si.getDocStoreIsCompoundFile()) {
-            storeCFSReader = new CompoundFileReader(directory(), si.getDocStoreSegment() + "." + IndexFileNames.COMPOUND_FILE_STORE_EXTENSION, readBufferSize);
-            storeDir = storeCFSReader;
-          } else {
-            storeDir = directory();
-          }
-        } else {
-          storeDir = cfsDir;
-        }
-      } else
-        storeDir = null;
-
       fieldInfos = new FieldInfos(cfsDir, segment + ".fnm");
 
       boolean anyProx = false;
@@ -346,22 +337,8 @@ class SegmentReader extends DirectoryIndexReader {
         if (!fieldInfos.fieldInfo(i).omitTf)
           anyProx = true;
 
-      final String fieldsSegment;
-
-      if (si.getDocStoreOffset() != -1)
-        fieldsSegment = si.getDocStoreSegment();
-      else
-        fieldsSegment = segment;
-
-      if (doOpenStores) {
-        fieldsReader = new FieldsReader(storeDir, fieldsSegment, fieldInfos, readBufferSize,
-                                        si.getDocStoreOffset(), si.docCount);
-
-        // Verify two sources of "maxDoc" agree:
-        if (si.getDocStoreOffset() == -1 && fieldsReader.size() != si.docCount) {
-          throw new CorruptIndexException("doc counts differ for segment " + si.name + ": fieldsReader shows " + fieldsReader.size() + " but segmentInfo shows " + si.docCount);
-        }
-      }
+      if (doOpenStores)
+        openDocStores(si);
 
       tis = new TermInfosReader(cfsDir, segment, fieldInfos, readBufferSize);
       
@@ -374,14 +351,6 @@ class SegmentReader extends DirectoryIndexReader {
         proxStream = cfsDir.openInput(segment + ".prx", readBufferSize);
       openNorms(cfsDir, readBufferSize);
 
-      if (doOpenStores && fieldInfos.hasVectors()) { // open term vector files only as needed
-        final String vectorsSegment;
-        if (si.getDocStoreOffset() != -1)
-          vectorsSegment = si.getDocStoreSegment();
-        else
-          vectorsSegment = segment;
-        termVectorsReaderOrig = new TermVectorsReader(storeDir, vectorsSegment, fieldInfos, readBufferSize, si.getDocStoreOffset(), si.docCount);
-      }
       success = true;
     } finally {
 
@@ -396,6 +365,48 @@ class SegmentReader extends DirectoryIndexReader {
     }
   }
   
+  /**
+   * Opens the stored fields and term vectors files, unless
+   * they are open already.  IndexWriter opens its pooled
+   * readers without them (applying deletes does not need
+   * them) and calls this before a merge or a near real-time
+   * reader needs them.
+   */
+  synchronized void openDocStores(SegmentInfo si) throws IOException {
+    assert si.name.equals(segment);
+    // a reopened reader shares the stores of the reader it was reopened from
+    assert referencedSegmentReader == null;
+
+    if (fieldsReader != null)
+      return;
+
+    final Directory storeDir;
+    final String storesSegment;
+    if (si.getDocStoreOffset() != -1) {
+      storesSegment = si.getDocStoreSegment();
+      if (si.getDocStoreIsCompoundFile()) {
+        storeCFSReader = new CompoundFileReader(directory(), storesSegment + "." + IndexFileNames.COMPOUND_FILE_STORE_EXTENSION, readBufferSize);
+        storeDir = storeCFSReader;
+      } else {
+        storeDir = directory();
+      }
+    } else {
+      storesSegment = segment;
+      storeDir = cfsReader != null ? (Directory) cfsReader : directory();
+    }
+
+    fieldsReader = new FieldsReader(storeDir, storesSegment, fieldInfos, readBufferSize,
+                                    si.getDocStoreOffset(), si.docCount);
+
+    // Verify two sources of "maxDoc" agree:
+    if (si.getDocStoreOffset() == -1 && fieldsReader.size() != si.docCount) {
+      throw new CorruptIndexException("doc counts differ for segment " + si.name + ": fieldsReader shows " + fieldsReader.size() + " but segmentInfo shows " + si.docCount);
+    }
+
+    if (fieldInfos.hasVectors()) // open term vector files only as needed
+      termVectorsReaderOrig = new TermVectorsReader(storeDir, storesSegment, fieldInfos, readBufferSize, si.getDocStoreOffset(), si.docCount);
+  }
+
   private void loadDeletedDocs() throws IOException {
     // NOTE: the bitvector is stored using the regular directory, not cfs
     if (hasDeletions(si)) {
@@ -436,6 +447,26 @@ class SegmentReader extends DirectoryIndexReader {
   }
   
   synchronized SegmentReader reopenSegment(SegmentInfo si) throws CorruptIndexException, IOException {
+    return reopenSegment(si, false, readOnly);
+  }
+
+  /**
+   * Like {@link #reopenSegment(SegmentInfo)}, but optionally
+   * returns a new reader even if nothing changed, and may
+   * open a read-only reader on a writable one.  The new
+   * reader shares everything but the stored fields reader
+   * with this one; deleted docs are copied on write.
+   */
+  synchronized SegmentReader reopenSegment(SegmentInfo si, boolean doClone, boolean openReadOnly) throws CorruptIndexException, IOException {
+    return reopenSegment(si, doClone, openReadOnly, readBufferSize);
+  }
+
+  /**
+   * Like {@link #reopenSegment(SegmentInfo, boolean, boolean)},
+   * but the new reader reads with buffers of readBufferSize
+   * bytes, including the postings streams it shares.
+   */
+  synchronized SegmentReader reopenSegment(SegmentInfo si, boolean doClone, boolean openReadOnly, int readBufferSize) throws CorruptIndexException, IOException {
     boolean deletionsUpToDate = (this.si.hasDeletions() == si.hasDeletions()) 
                                   && (!si.hasDeletions() || this.si.getDelFileName().equals(si.getDelFileName()));
     boolean normsUpToDate = true;
@@ -451,21 +482,21 @@ class SegmentReader extends DirectoryIndexReader {
       }
     }
 
-    if (normsUpToDate && deletionsUpToDate) {
+    if (normsUpToDate && deletionsUpToDate && !doClone) {
       return this;
     }    
     
 
       // clone reader
     SegmentReader clone;
-    if (readOnly) 
+    if (openReadOnly) 
       clone = new ReadOnlySegmentReader();
     else
       clone = new SegmentReader();
 
     boolean success = false;
     try {
-      clone.readOnly = readOnly;
+      clone.readOnly = openReadOnly;
       clone.directory = directory;
       clone.si = si;
       clone.segment = segment;
@@ -511,6 +542,11 @@ class SegmentReader extends DirectoryIndexReader {
         clone.loadDeletedDocs();
       } else {
         clone.deletedDocs = this.deletedDocs;
+        if (clone.deletedDocs != null) {
+          // copy before writing
+          clone.deletedDocsShared = true;
+          deletedDocsShared = true;
+        }
       }
   
       clone.norms = new HashMap();
@@ -591,6 +627,8 @@ class SegmentReader extends DirectoryIndexReader {
       deletedDocs.write(directory(), si.getDelFileName());
       
       si.setDelCount(si.getDelCount()+pendingDeleteCount);
+      // the reader may stay open and commit again (IndexWriter pools it)
+      pendingDeleteCount = 0;
     }
     if (undeleteAll && si.hasDeletions()) {
       si.clearDelGen();
@@ -611,14 +649,42 @@ class SegmentReader extends DirectoryIndexReader {
     undeleteAll = false;
   }
 
+  // Clones one of the shared postings streams.  A reader
+  // reopened with a larger read buffer than the stream was
+  // opened with (a merge's view of a pooled reader) reads
+  // its clones with that larger buffer
+  IndexInput cloneStream(IndexInput stream) {
+    IndexInput clone = (IndexInput) stream.clone();
+    if (clone instanceof BufferedIndexInput) {
+      BufferedIndexInput bufferedClone = (BufferedIndexInput) clone;
+      if (bufferedClone.getBufferSize() < readBufferSize)
+        bufferedClone.setBufferSize(readBufferSize);
+    }
+    return clone;
+  }
+
   FieldsReader getFieldsReader() {
     return fieldsReader;
   }
 
+  /**
+   * Create a clone from the initial FieldsReader and store it in the ThreadLocal.
+   * @return FieldsReader
+   */
+  private FieldsReader getFieldsReaderLocal() {
+    FieldsReader reader = (FieldsReader) fieldsReaderLocal.get();
+    if (reader == null) {
+      reader = (FieldsReader) fieldsReader.clone();
+      fieldsReaderLocal.set(reader);
+    }
+    return reader;
+  }
+
   protected void doClose() throws IOException {
     boolean hasReferencedReader = (referencedSegmentReader != null);
 
     termVectorsLocal.close();
+    fieldsReaderLocal.close();
 
     if (hasReferencedReader) {
       referencedSegmentReader.decRefReaderNotNorms();
@@ -685,16 +751,26 @@ class SegmentReader extends DirectoryIndexReader {
   }
 
   protected void doDelete(int docNum) {
-    if (deletedDocs == null)
-      deletedDocs = new BitVector(maxDoc());
+    BitVector docs = deletedDocs;
+    if (docs == null) {
+      docs = new BitVector(maxDoc());
+    } else if (deletedDocsShared) {
+      // another reader (see reopenSegment) still uses these bits
+      docs = (BitVector) docs.clone();
+      deletedDocsShared = false;
+    }
     deletedDocsDirty = true;
     undeleteAll = false;
-    if (!deletedDocs.getAndSet(docNum))
+    // setting a single bit in place is safe for concurrent readers:
+    // they see the doc either as deleted or not
+    if (!docs.getAndSet(docNum))
       pendingDeleteCount++;
+    deletedDocs = docs;
   }
 
   protected void doUndeleteAll() {
       deletedDocs = null;
+      deletedDocsShared = false;
       deletedDocsDirty = false;
       undeleteAll = true;
   }
@@ -721,16 +797,18 @@ class SegmentReader extends DirectoryIndexReader {
    * @throws CorruptIndexException if the index is corrupt
    * @throws IOException if there is a low-level IO error
    */
-  public synchronized Document document(int n, FieldSelector fieldSelector) throws CorruptIndexException, IOException {
+  public Document document(int n, FieldSelector fieldSelector) throws CorruptIndexException, IOException {
     ensureOpen();
     if (isDeleted(n))
       throw new IllegalArgumentException
               ("attempt to access a deleted document");
-    return fieldsReader.doc(n, fieldSelector);
+    return getFieldsReaderLocal().doc(n, fieldSelector);
   }
 
-  public synchronized boolean isDeleted(int n) {
-    return (deletedDocs != null && deletedDocs.get(n));
+  // Not synchronized: deletedDocs is volatile
+  public boolean isDeleted(int n) {
+    final BitVector docs = deletedDocs;
+    return docs != null && docs.get(n);
   }
 
   public TermDocs termDocs() throws IOException {
@@ -755,8 +833,9 @@ class SegmentReader extends DirectoryIndexReader {
   public int numDocs() {
     // Don't call ensureOpen() here (it could affect performance)
     int n = maxDoc();
-    if (deletedDocs != null)
-      n -= deletedDocs.count();
+    final BitVector docs = deletedDocs;
+    if (docs != null)
+      n -= docs.count();
     return n;
   }
 
@@ -866,6 +945,14 @@ class SegmentReader extends DirectoryIndexReader {
     return bytes;
   }
 
+  /** Returns true if the norms of a field may differ from those the
+   *  postings recorded when the segment was written, as {@link
+   *  #setNorm} changed them. */
+  synchronized boolean normsChanged(String field) throws IOException {
+    Norm norm = (Norm) norms.get(field);
+    return norm != null && (norm.dirty || si.hasSeparateNorms(norm.number));
+  }
+
   protected void doSetNorm(int doc, String field, byte value)
           throws IOException {
     Norm norm = (Norm) norms.get(field);
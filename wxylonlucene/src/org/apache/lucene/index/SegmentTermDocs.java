@@ -21,7 +21,7 @@ import java.io.IOException;
 import org.apache.lucene.util.BitVector;
 import org.apache.lucene.store.IndexInput;
 
-class SegmentTermDocs implements TermDocs {
+class SegmentTermDocs implements ImpactTermDocs {
   protected SegmentReader parent;
   protected IndexInput freqStream;
   protected int count;
@@ -32,7 +32,14 @@ class SegmentTermDocs implements TermDocs {
 
   private int skipInterval;
   private int maxSkipLevels;
+  private boolean hasImpacts;
   private DefaultSkipListReader skipListReader;
+  private String field;
+  private int maxFreq;
+  private byte maxNorm;
+  private int normsRecorded;                     // 0: not checked yet, 1: yes, -1: no
+  private byte blockMaxNorm;
+  private int blockEnd = -1;
   
   private long freqBasePointer;
   private long proxBasePointer;
@@ -45,10 +52,11 @@ class SegmentTermDocs implements TermDocs {
   
   protected SegmentTermDocs(SegmentReader parent) {
     this.parent = parent;
-    this.freqStream = (IndexInput) parent.freqStream.clone();
+    this.freqStream = parent.cloneStream(parent.freqStream);
     this.deletedDocs = parent.deletedDocs;
     this.skipInterval = parent.tis.getSkipInterval();
     this.maxSkipLevels = parent.tis.getMaxSkipLevels();
+    this.hasImpacts = parent.tis.hasImpacts();
   }
 
   public void seek(Term term) throws IOException {
@@ -78,10 +86,17 @@ class SegmentTermDocs implements TermDocs {
     FieldInfo fi = parent.fieldInfos.fieldInfo(term.field);
     currentFieldOmitTf = (fi != null) ? fi.omitTf : false;
     currentFieldStoresPayloads = (fi != null) ? fi.storePayloads : false;
+    field = term.field;
+    normsRecorded = 0;
+    blockEnd = -1;
     if (ti == null) {
       df = 0;
+      maxFreq = 0;
+      maxNorm = 0;
     } else {
       df = ti.docFreq;
+      maxFreq = ti.maxFreq;
+      maxNorm = ti.maxNorm;
       doc = 0;
       freqBasePointer = ti.freqPointer;
       proxBasePointer = ti.proxPointer;
@@ -100,6 +115,20 @@ class SegmentTermDocs implements TermDocs {
   public final int doc() { return doc; }
   public final int freq() { return freq; }
 
+  public int maxFreq() { return maxFreq; }
+
+  public byte maxNorm() throws IOException {
+    return normsRecorded() ? maxNorm : 0;
+  }
+
+  /** Returns false if the norms recorded with the postings may be
+   *  lower than the current ones. */
+  private boolean normsRecorded() throws IOException {
+    if (normsRecorded == 0)
+      normsRecorded = parent.normsChanged(field) ? -1 : 1;
+    return normsRecorded > 0;
+  }
+
   protected void skippingDoc() throws IOException {
   }
 
@@ -160,16 +189,22 @@ class SegmentTermDocs implements TermDocs {
   private final int readNoTf(final int[] docs, final int[] freqs, final int length) throws IOException {
     int i = 0;
     while (i < length && count < df) {
-      // manually inlined call to next() for speed
-      doc += freqStream.readVInt();       
-      count++;
-
-      if (deletedDocs == null || !deletedDocs.get(doc)) {
-        docs[i] = doc;
-        // Hardware freq to 1 when term freqs were not
-        // stored in the index
-        freqs[i] = 1;
-        ++i;
+      // Without freqs the postings are just doc deltas, so
+      // decode as many as fit in one go, then turn them
+      // into docs in place, dropping deleted ones
+      final int n = Math.min(length - i, df - count);
+      freqStream.readVInts(docs, i, n);
+      count += n;
+      final int end = i + n;
+      for (int j = i; j < end; j++) {
+        doc += docs[j];
+        if (deletedDocs == null || !deletedDocs.get(doc)) {
+          docs[i] = doc;
+          // Hardware freq to 1 when term freqs were not
+          // stored in the index
+          freqs[i] = 1;
+          ++i;
+        }
       }
     }
     return i;
@@ -179,16 +214,52 @@ class SegmentTermDocs implements TermDocs {
   /** Overridden by SegmentTermPositions to skip in prox stream. */
   protected void skipProx(long proxPointer, int payloadLength) throws IOException {}
 
+  private void initSkipListReader() {
+    if (skipListReader == null)
+      skipListReader = new DefaultSkipListReader((IndexInput) freqStream.clone(), maxSkipLevels, skipInterval, hasImpacts); // lazily clone
+
+    if (!haveSkipped) {                          // lazily initialize skip stream
+      skipListReader.init(skipPointer, freqBasePointer, proxBasePointer, df, currentFieldStoresPayloads);
+      haveSkipped = true;
+    }
+  }
+
+  public int blockMaxFreq(int target) throws IOException {
+    blockMaxNorm = 0;
+    if (df < skipInterval || !hasImpacts) {       // no skip data to look at
+      blockEnd = Integer.MAX_VALUE;
+      return 0;
+    }
+
+    // Only moves the skip list; skipTo() seeks the freq
+    // stream to it later, as its target is at least this one
+    initSkipListReader();
+    skipListReader.skipTo(target);
+    blockEnd = skipListReader.getNextSkipDoc();
+    if (target <= skipListReader.getDoc()) {
+      // the skip list is already beyond target
+      blockEnd = target;
+      return 0;
+    }
+    if (blockEnd == Integer.MAX_VALUE)             // after the last skip entry
+      return 0;
+    if (normsRecorded())
+      blockMaxNorm = skipListReader.getMaxNorm();
+    return skipListReader.getMaxFreq();
+  }
+
+  public byte blockMaxNorm() {
+    return blockMaxNorm;
+  }
+
+  public int blockEnd() {
+    return blockEnd;
+  }
+
   /** Optimized implementation. */
   public boolean skipTo(int target) throws IOException {
     if (df >= skipInterval) {                      // optimized case
-      if (skipListReader == null)
-        skipListReader = new DefaultSkipListReader((IndexInput) freqStream.clone(), maxSkipLevels, skipInterval); // lazily clone
-
-      if (!haveSkipped) {                          // lazily initialize skip stream
-        skipListReader.init(skipPointer, freqBasePointer, proxBasePointer, df, currentFieldStoresPayloads);
-        haveSkipped = true;
-      }
+      initSkipListReader();
 
       int newCount = skipListReader.skipTo(target); 
       if (newCount > count) {
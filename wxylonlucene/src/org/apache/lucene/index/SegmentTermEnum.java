@@ -32,7 +32,7 @@ final class SegmentTermEnum extends TermEnum implements Cloneable {
 
   private TermInfo termInfo = new TermInfo();
 
-  private int format;
+  int format;
   private boolean isIndex = false;
   long indexPointer = 0;
   int indexInterval;
@@ -142,6 +142,13 @@ final class SegmentTermEnum extends TermEnum implements Cloneable {
     else{
       if (termInfo.docFreq >= skipInterval) 
         termInfo.skipOffset = input.readVInt();
+      if (format <= TermInfosWriter.FORMAT_IMPACTS && termInfo.docFreq >= skipInterval) {
+        termInfo.maxFreq = input.readVInt();
+        termInfo.maxNorm = input.readByte();
+      } else {
+        termInfo.maxFreq = 0;
+        termInfo.maxNorm = 0;
+      }
     }
     
     if (isIndex)
@@ -146,7 +146,7 @@ extends SegmentTermDocs implements TermPositions {
   private void lazySkip() throws IOException {
     if (proxStream == null) {
       // clone lazily
-      proxStream = (IndexInput)parent.proxStream.clone();
+      proxStream = parent.cloneStream(parent.proxStream);
     }
     
     // we might have to skip the current payload
@@ -27,6 +27,14 @@ final class TermInfo {
   long proxPointer = 0;
   int skipOffset;
 
+  /** The largest frequency of the term in any document, or 0 if
+   *  not recorded. */
+  int maxFreq;
+
+  /** The largest norm, compared as unsigned byte, of the field of
+   *  the term in any document containing it, or 0 if not recorded. */
+  byte maxNorm;
+
   TermInfo() {}
 
   TermInfo(int df, long fp, long pp) {
@@ -40,14 +48,19 @@ final class TermInfo {
     freqPointer = ti.freqPointer;
     proxPointer = ti.proxPointer;
     skipOffset = ti.skipOffset;
+    maxFreq = ti.maxFreq;
+    maxNorm = ti.maxNorm;
   }
 
   final void set(int docFreq,
-                 long freqPointer, long proxPointer, int skipOffset) {
+                 long freqPointer, long proxPointer, int skipOffset,
+                 int maxFreq, byte maxNorm) {
     this.docFreq = docFreq;
     this.freqPointer = freqPointer;
     this.proxPointer = proxPointer;
     this.skipOffset = skipOffset;
+    this.maxFreq = maxFreq;
+    this.maxNorm = maxNorm;
   }
 
   final void set(TermInfo ti) {
@@ -55,5 +68,7 @@ final class TermInfo {
     freqPointer = ti.freqPointer;
     proxPointer = ti.proxPointer;
     skipOffset = ti.skipOffset;
+    maxFreq = ti.maxFreq;
+    maxNorm = ti.maxNorm;
   }
 }
@@ -102,6 +102,12 @@ final class TermInfosReader {
     return origEnum.maxSkipLevels;
   }
 
+  /** Returns true if the skip entries of the postings record the
+   *  largest term frequency and norm since the previous entry. */
+  boolean hasImpacts() {
+    return origEnum.format <= TermInfosWriter.FORMAT_IMPACTS;
+  }
+
   /**
    * <p>Sets the indexDivisor, which subsamples the number
    * of indexed terms loaded into memory.  This has a
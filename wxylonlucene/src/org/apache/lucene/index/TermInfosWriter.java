@@ -34,8 +34,14 @@ final class TermInfosWriter {
   // length-in-chars
   public static final int FORMAT_VERSION_UTF8_LENGTH_IN_BYTES = -4;
 
+  // Terms in at least skipInterval documents record their
+  // largest term frequency and norm, and each of their skip
+  // entries those of the documents since the previous entry.
+  // Only written if IndexWriter records impacts.
+  public static final int FORMAT_IMPACTS = -5;
+
   // NOTE: always change this if you switch to a new format!
-  public static final int FORMAT_CURRENT = FORMAT_VERSION_UTF8_LENGTH_IN_BYTES;
+  public static final int FORMAT_CURRENT = FORMAT_IMPACTS;
 
   private FieldInfos fieldInfos;
   private IndexOutput output;
@@ -70,6 +76,7 @@ final class TermInfosWriter {
 
   private long lastIndexPointer;
   private boolean isIndex;
+  private boolean recordImpacts;
   private byte[] lastTermBytes = new byte[10];
   private int lastTermBytesLength = 0;
   private int lastFieldNumber = -1;
@@ -78,25 +85,26 @@ final class TermInfosWriter {
   private UnicodeUtil.UTF8Result utf8Result = new UnicodeUtil.UTF8Result();
 
   TermInfosWriter(Directory directory, String segment, FieldInfos fis,
-                  int interval)
+                  int interval, boolean recordImpacts)
        throws IOException {
-    initialize(directory, segment, fis, interval, false);
-    other = new TermInfosWriter(directory, segment, fis, interval, true);
+    initialize(directory, segment, fis, interval, false, recordImpacts);
+    other = new TermInfosWriter(directory, segment, fis, interval, true, recordImpacts);
     other.other = this;
   }
 
   private TermInfosWriter(Directory directory, String segment, FieldInfos fis,
-                          int interval, boolean isIndex) throws IOException {
-    initialize(directory, segment, fis, interval, isIndex);
+                          int interval, boolean isIndex, boolean recordImpacts) throws IOException {
+    initialize(directory, segment, fis, interval, isIndex, recordImpacts);
   }
 
   private void initialize(Directory directory, String segment, FieldInfos fis,
-                          int interval, boolean isi) throws IOException {
+                          int interval, boolean isi, boolean recordImpacts) throws IOException {
     indexInterval = interval;
     fieldInfos = fis;
     isIndex = isi;
+    this.recordImpacts = recordImpacts;
     output = directory.createOutput(segment + (isIndex ? ".tii" : ".tis"));
-    output.writeInt(FORMAT_CURRENT);              // write format
+    output.writeInt(recordImpacts ? FORMAT_IMPACTS : FORMAT_VERSION_UTF8_LENGTH_IN_BYTES); // write format
     output.writeLong(0);                          // leave space for size
     output.writeInt(indexInterval);               // write indexInterval
     output.writeInt(skipInterval);                // write skipInterval
@@ -176,6 +184,10 @@ final class TermInfosWriter {
 
     if (ti.docFreq >= skipInterval) {
       output.writeVInt(ti.skipOffset);
+      if (recordImpacts) {
+        output.writeVInt(ti.maxFreq);
+        output.writeByte(ti.maxNorm);
+      }
     }
 
     if (isIndex) {
@@ -18,6 +18,7 @@ package org.apache.lucene.index;
  */
 
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.StringHelper;
 import org.apache.lucene.util.UnicodeUtil;
@@ -188,6 +189,38 @@ final class TermVectorsWriter {
     assert tvf.getFilePointer() == tvfPosition;
   }
   
+  /**
+   * Do a bulk copy of numDocs documents from a reader whose
+   * field numbers are not congruent with ours.  The field
+   * numbers in the tvd stream are rewritten through
+   * fieldNumberMap (the reader's number -> our number); the
+   * tvf pointer deltas and the tvf stream are copied as they
+   * are.
+   */
+  final void addRemappedRawDocuments(TermVectorsReader reader, int[] fieldNumberMap, int[] tvdLengths, int[] tvfLengths, int numDocs) throws IOException {
+    final IndexInput tvdStream = reader.getTvdStream();
+    long tvfPosition = tvf.getFilePointer();
+    long tvfStart = tvfPosition;
+    for(int i=0;i<numDocs;i++) {
+      tvx.writeLong(tvd.getFilePointer());
+      tvx.writeLong(tvfPosition);
+      tvfPosition += tvfLengths[i];
+      if (tvdLengths[i] == 0) {
+        // The reader has no term vectors at all
+        tvd.writeVInt(0);
+        continue;
+      }
+      final long tvdEnd = tvdStream.getFilePointer() + tvdLengths[i];
+      final int numFields = tvdStream.readVInt();
+      tvd.writeVInt(numFields);
+      for(int j=0;j<numFields;j++)
+        tvd.writeVInt(fieldNumberMap[tvdStream.readVInt()]);
+      tvd.copyBytes(tvdStream, tvdEnd - tvdStream.getFilePointer());
+    }
+    tvf.copyBytes(reader.getTvfStream(), tvfPosition-tvfStart);
+    assert tvf.getFilePointer() == tvfPosition;
+  }
+
   /** Close all streams. */
   final void close() throws IOException {
     // make an effort to close all streams we can but remember and re-throw
@@ -0,0 +1,640 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges segments of approximately equal size, subject to
+ * an allowed number of segments per tier.  This is similar
+ * to {@link LogByteSizeMergePolicy}, except this merge
+ * policy is able to merge non-adjacent segments, and
+ * separates how many segments are merged at once ({@link
+ * #setMaxMergeAtOnce}) from how many segments are allowed
+ * per tier ({@link #setSegmentsPerTier}).  It also does not
+ * over-merge (ie, cascade merges).
+ *
+ * <p>The size of a segment is its byte size, pro-rated by
+ * its percentage of non-deleted documents.  Whenever the
+ * index has more segments than its budget allows, the
+ * candidate merges are scored and the best one is run.  A
+ * merge scores better when its segments are close in size
+ * (low skew), when it is small, and when it reclaims many
+ * deleted documents ({@link #setReclaimDeletesWeight}), so
+ * that heavily updated old segments are eventually merged
+ * away without an {@link IndexWriter#optimize()}.  A merge
+ * never produces a segment larger than about {@link
+ * #setMaxMergedSegmentMB}, and segments of at least half
+ * that size are left alone until they have many deletes.
+ *
+ * <p><b>NOTE</b>: because the merged segments may not be
+ * adjacent, documents' relative order is not preserved
+ * across merges.
+ */
+public class TieredMergePolicy extends MergePolicy {
+
+  /** Default maximum number of segments merged at once
+   *  during normal merging.  @see #setMaxMergeAtOnce */
+  public static final int DEFAULT_MAX_MERGE_AT_ONCE = 10;
+
+  /** Default maximum number of segments merged at once by
+   *  {@link IndexWriter#optimize()} and {@link
+   *  IndexWriter#expungeDeletes()}.  @see
+   *  #setMaxMergeAtOnceExplicit */
+  public static final int DEFAULT_MAX_MERGE_AT_ONCE_EXPLICIT = 30;
+
+  /** Default number of segments allowed per tier.  @see
+   *  #setSegmentsPerTier */
+  public static final double DEFAULT_SEGMENTS_PER_TIER = 10.0;
+
+  /** Default maximum size of a merged segment.  @see
+   *  #setMaxMergedSegmentMB */
+  public static final double DEFAULT_MAX_MERGED_SEGMENT_MB = 5*1024;
+
+  /** Default size below which segments are rounded up.
+   *  @see #setFloorSegmentMB */
+  public static final double DEFAULT_FLOOR_SEGMENT_MB = 2.0;
+
+  /** Default weight of reclaimed deletes in the merge
+   *  score.  @see #setReclaimDeletesWeight */
+  public static final double DEFAULT_RECLAIM_DELETES_WEIGHT = 2.0;
+
+  /** Default percentage of deleted documents a segment may
+   *  have before {@link IndexWriter#expungeDeletes()} merges
+   *  it.  @see #setExpungeDeletesPctAllowed */
+  public static final double DEFAULT_EXPUNGE_DELETES_PCT_ALLOWED = 10.0;
+
+  private int maxMergeAtOnce = DEFAULT_MAX_MERGE_AT_ONCE;
+  private long maxMergedSegmentBytes = (long) (DEFAULT_MAX_MERGED_SEGMENT_MB*1024*1024);
+  private int maxMergeAtOnceExplicit = DEFAULT_MAX_MERGE_AT_ONCE_EXPLICIT;
+
+  private long floorSegmentBytes = (long) (DEFAULT_FLOOR_SEGMENT_MB*1024*1024);
+  private double segsPerTier = DEFAULT_SEGMENTS_PER_TIER;
+  private double expungeDeletesPctAllowed = DEFAULT_EXPUNGE_DELETES_PCT_ALLOWED;
+  private double reclaimDeletesWeight = DEFAULT_RECLAIM_DELETES_WEIGHT;
+  private boolean useCompoundFile = true;
+  private boolean useCompoundDocStore = true;
+
+  /** Maximum number of segments to be merged at a time
+   *  during "normal" merging.  For explicit merging (eg,
+   *  optimize or expungeDeletes was called), see {@link
+   *  #setMaxMergeAtOnceExplicit}.  Default is 10. */
+  public void setMaxMergeAtOnce(int v) {
+    if (v < 2)
+      throw new IllegalArgumentException("maxMergeAtOnce must be > 1 (got " + v + ")");
+    maxMergeAtOnce = v;
+  }
+
+  /** @see #setMaxMergeAtOnce */
+  public int getMaxMergeAtOnce() {
+    return maxMergeAtOnce;
+  }
+
+  /** Maximum number of segments to be merged at a time,
+   *  during optimize or expungeDeletes.  Default is 30. */
+  public void setMaxMergeAtOnceExplicit(int v) {
+    if (v < 2)
+      throw new IllegalArgumentException("maxMergeAtOnceExplicit must be > 1 (got " + v + ")");
+    maxMergeAtOnceExplicit = v;
+  }
+
+  /** @see #setMaxMergeAtOnceExplicit */
+  public int getMaxMergeAtOnceExplicit() {
+    return maxMergeAtOnceExplicit;
+  }
+
+  /** Maximum sized segment to produce during normal
+   *  merging.  This setting is approximate: the estimate of
+   *  the merged segment size is made by summing sizes of
+   *  to-be-merged segments (compensating for percent
+   *  deleted docs).  Default is 5 GB. */
+  public void setMaxMergedSegmentMB(double v) {
+    if (v < 0.0)
+      throw new IllegalArgumentException("maxMergedSegmentMB must be >= 0 (got " + v + ")");
+    maxMergedSegmentBytes = (long) (v*1024*1024);
+  }
+
+  /** @see #setMaxMergedSegmentMB */
+  public double getMaxMergedSegmentMB() {
+    return ((double) maxMergedSegmentBytes)/1024/1024;
+  }
+
+  /** Controls how aggressively merges that reclaim more
+   *  deletions are favored.  Higher values favor selecting
+   *  merges that reclaim deletions.  A value of 0.0 means
+   *  deletions don't impact merge selection.  Default is
+   *  2.0. */
+  public void setReclaimDeletesWeight(double v) {
+    if (v < 0.0)
+      throw new IllegalArgumentException("reclaimDeletesWeight must be >= 0.0 (got " + v + ")");
+    reclaimDeletesWeight = v;
+  }
+
+  /** @see #setReclaimDeletesWeight */
+  public double getReclaimDeletesWeight() {
+    return reclaimDeletesWeight;
+  }
+
+  /** Segments smaller than this are "rounded up" to this
+   *  size, ie treated as equal (floor) size for merge
+   *  selection.  This is to prevent frequent flushing of
+   *  tiny segments from allowing a long tail in the index.
+   *  Default is 2 MB. */
+  public void setFloorSegmentMB(double v) {
+    if (v <= 0.0)
+      throw new IllegalArgumentException("floorSegmentMB must be > 0.0 (got " + v + ")");
+    floorSegmentBytes = (long) (v*1024*1024);
+  }
+
+  /** @see #setFloorSegmentMB */
+  public double getFloorSegmentMB() {
+    return ((double) floorSegmentBytes)/1024/1024;
+  }
+
+  /** When expungeDeletes is called, we only merge away a
+   *  segment if its delete percentage is over this
+   *  threshold.  Default is 10%. */
+  public void setExpungeDeletesPctAllowed(double v) {
+    if (v < 0.0 || v > 100.0)
+      throw new IllegalArgumentException("expungeDeletesPctAllowed must be between 0.0 and 100.0 inclusive (got " + v + ")");
+    expungeDeletesPctAllowed = v;
+  }
+
+  /** @see #setExpungeDeletesPctAllowed */
+  public double getExpungeDeletesPctAllowed() {
+    return expungeDeletesPctAllowed;
+  }
+
+  /** Sets the allowed number of segments per tier.  Smaller
+   *  values mean more merging but fewer segments.  This
+   *  should be >= {@link #setMaxMergeAtOnce}, otherwise
+   *  you'll force too much merging to occur.  Default is
+   *  10.0. */
+  public void setSegmentsPerTier(double v) {
+    if (v < 2.0)
+      throw new IllegalArgumentException("segmentsPerTier must be >= 2.0 (got " + v + ")");
+    segsPerTier = v;
+  }
+
+  /** @see #setSegmentsPerTier */
+  public double getSegmentsPerTier() {
+    return segsPerTier;
+  }
+
+  /** Sets whether compound file format should be used for
+   *  newly flushed and newly merged segments.  Default is
+   *  true. */
+  public void setUseCompoundFile(boolean useCompoundFile) {
+    this.useCompoundFile = useCompoundFile;
+  }
+
+  /** @see #setUseCompoundFile */
+  public boolean getUseCompoundFile() {
+    return useCompoundFile;
+  }
+
+  /** Sets whether compound file format should be used for
+   *  newly flushed and newly merged doc store segment files
+   *  (term vectors and stored fields).  Default is true. */
+  public void setUseCompoundDocStore(boolean useCompoundDocStore) {
+    this.useCompoundDocStore = useCompoundDocStore;
+  }
+
+  /** @see #setUseCompoundDocStore */
+  public boolean getUseCompoundDocStore() {
+    return useCompoundDocStore;
+  }
+
+  // Javadoc inherited
+  public boolean useCompoundFile(SegmentInfos infos, SegmentInfo info) {
+    return useCompoundFile;
+  }
+
+  // Javadoc inherited
+  public boolean useCompoundDocStore(SegmentInfos infos) {
+    return useCompoundDocStore;
+  }
+
+  public void close() {
+  }
+
+  /** Sorts segments by their pro-rated size, largest
+   *  first.  Sizes are computed up front because {@link
+   *  SegmentInfo#sizeInBytes} may throw IOException. */
+  private static class SegmentByteSizeDescending implements Comparator {
+    private final Map sizes;
+
+    SegmentByteSizeDescending(Map sizes) {
+      this.sizes = sizes;
+    }
+
+    public int compare(Object o1, Object o2) {
+      final long sz1 = ((Long) sizes.get(o1)).longValue();
+      final long sz2 = ((Long) sizes.get(o2)).longValue();
+      if (sz1 > sz2)
+        return -1;
+      else if (sz2 > sz1)
+        return 1;
+      else
+        return ((SegmentInfo) o1).name.compareTo(((SegmentInfo) o2).name);
+    }
+  }
+
+  private Map sizes(Collection infos) throws IOException {
+    final Map sizes = new HashMap();
+    final Iterator it = infos.iterator();
+    while (it.hasNext()) {
+      final SegmentInfo info = (SegmentInfo) it.next();
+      sizes.put(info, Long.valueOf(size(info)));
+    }
+    return sizes;
+  }
+
+  private static long size(Map sizes, Object info) {
+    return ((Long) sizes.get(info)).longValue();
+  }
+
+  public MergeSpecification findMerges(SegmentInfos infos, IndexWriter writer) throws IOException {
+    message(writer, "findMerges: " + infos.size() + " segments");
+    if (infos.size() == 0)
+      return null;
+
+    final Collection merging = writer.getMergingSegments();
+    final Collection toBeMerged = new HashSet();
+
+    final Map sizes = sizes(infos);
+    final List infosSorted = new ArrayList(infos);
+    Collections.sort(infosSorted, new SegmentByteSizeDescending(sizes));
+
+    // Compute total index bytes & print details about the index
+    long totIndexBytes = 0;
+    long minSegmentBytes = Long.MAX_VALUE;
+    for(int i=0;i<infosSorted.size();i++) {
+      final SegmentInfo info = (SegmentInfo) infosSorted.get(i);
+      final long segBytes = size(sizes, info);
+      if (writer.getInfoStream() != null) {
+        String extra = merging.contains(info) ? " [merging]" : "";
+        if (segBytes >= maxMergedSegmentBytes/2.0)
+          extra += " [skip: too large]";
+        else if (segBytes < floorSegmentBytes)
+          extra += " [floored]";
+        message(writer, "  seg=" + info.segString(writer.getDirectory()) + " size=" + mbString(segBytes) + " MB" + extra);
+      }
+
+      minSegmentBytes = Math.min(segBytes, minSegmentBytes);
+      // Accum total byte size
+      totIndexBytes += segBytes;
+    }
+
+    // If we have too-large segments, grace them out
+    // of the maxSegmentCount:
+    int tooBigCount = 0;
+    while (tooBigCount < infosSorted.size() && size(sizes, infosSorted.get(tooBigCount)) >= maxMergedSegmentBytes/2.0) {
+      totIndexBytes -= size(sizes, infosSorted.get(tooBigCount));
+      tooBigCount++;
+    }
+
+    minSegmentBytes = floorSize(minSegmentBytes);
+
+    // Compute max allowed segs in the index
+    long levelSize = minSegmentBytes;
+    long bytesLeft = totIndexBytes;
+    double allowedSegCount = 0;
+    while(true) {
+      final double segCountLevel = bytesLeft / (double) levelSize;
+      if (segCountLevel < segsPerTier) {
+        allowedSegCount += Math.ceil(segCountLevel);
+        break;
+      }
+      allowedSegCount += segsPerTier;
+      bytesLeft -= segsPerTier * levelSize;
+      levelSize *= maxMergeAtOnce;
+    }
+    final int allowedSegCountInt = (int) allowedSegCount;
+
+    MergeSpecification spec = null;
+
+    // Cycle to possibly select more than one merge:
+    while(true) {
+
+      long mergingBytes = 0;
+
+      // Gather eligible segments for merging, ie segments
+      // not already being merged and not already picked (by
+      // prior iteration of this loop) for merging:
+      final List eligible = new ArrayList();
+      for(int idx=tooBigCount;idx<infosSorted.size();idx++) {
+        final SegmentInfo info = (SegmentInfo) infosSorted.get(idx);
+        if (merging.contains(info))
+          mergingBytes += info.sizeInBytes();
+        else if (!toBeMerged.contains(info))
+          eligible.add(info);
+      }
+
+      final boolean maxMergeIsRunning = mergingBytes >= maxMergedSegmentBytes;
+
+      message(writer, "  allowedSegmentCount=" + allowedSegCountInt + " vs count=" + infosSorted.size() + " (eligible count=" + eligible.size() + ") tooBigCount=" + tooBigCount);
+
+      if (eligible.size() == 0)
+        return spec;
+
+      if (eligible.size() < allowedSegCountInt)
+        return spec;
+
+      // OK we are over budget -- find best merge!
+      double bestScore = 0.0;
+      List best = null;
+      boolean bestTooLarge = false;
+      long bestMergeBytes = 0;
+
+      // Consider all merge starts:
+      for(int startIdx=0;startIdx<=eligible.size()-maxMergeAtOnce;startIdx++) {
+
+        long totAfterMergeBytes = 0;
+
+        final List candidate = new ArrayList();
+        boolean hitTooLarge = false;
+        for(int idx=startIdx;idx<eligible.size() && candidate.size() < maxMergeAtOnce;idx++) {
+          final SegmentInfo info = (SegmentInfo) eligible.get(idx);
+          final long segBytes = size(sizes, info);
+
+          if (totAfterMergeBytes + segBytes > maxMergedSegmentBytes) {
+            hitTooLarge = true;
+            // NOTE: we continue, so that we can try
+            // "packing" smaller segments into this merge
+            // to see if we can get closer to the max
+            // size; this in general is not perfect since
+            // this is really "bin packing" and we'd have
+            // to try different permutations.
+            continue;
+          }
+          candidate.add(info);
+          totAfterMergeBytes += segBytes;
+        }
+
+        final double score = score(candidate, hitTooLarge, sizes);
+        message(writer, "  maybe=" + segString(writer, candidate) + " score=" + score + " tooLarge=" + hitTooLarge + " size=" + mbString(totAfterMergeBytes) + " MB");
+
+        // If we are already running a max sized merge
+        // (maxMergeIsRunning), don't allow another max
+        // sized merge to kick off:
+        if ((best == null || score < bestScore) && (!hitTooLarge || !maxMergeIsRunning)) {
+          best = candidate;
+          bestScore = score;
+          bestTooLarge = hitTooLarge;
+          bestMergeBytes = totAfterMergeBytes;
+        }
+      }
+
+      if (best == null)
+        return spec;
+
+      if (spec == null)
+        spec = new MergeSpecification();
+      final OneMerge merge = new OneMerge(inIndexOrder(infos, best), useCompoundFile);
+      spec.add(merge);
+      toBeMerged.addAll(best);
+
+      message(writer, "  add merge=" + merge.segString(writer.getDirectory()) + " size=" + mbString(bestMergeBytes) + " MB score=" + bestScore + (bestTooLarge ? " [max merge]" : ""));
+    }
+  }
+
+  /** Expert: scores one merge; lower scores are better.
+   *  The score is the skew of the merge (size of the
+   *  largest segment relative to the whole merge), times a
+   *  small bias towards smaller merges, times the fraction
+   *  of documents that survive the merge raised to {@link
+   *  #getReclaimDeletesWeight}. */
+  protected double score(List candidate, boolean hitTooLarge, Map sizes) throws IOException {
+    long totBeforeMergeBytes = 0;
+    long totAfterMergeBytes = 0;
+    long totAfterMergeBytesFloored = 0;
+    for(int i=0;i<candidate.size();i++) {
+      final SegmentInfo info = (SegmentInfo) candidate.get(i);
+      final long segBytes = size(sizes, info);
+      totAfterMergeBytes += segBytes;
+      totAfterMergeBytesFloored += floorSize(segBytes);
+      totBeforeMergeBytes += info.sizeInBytes();
+    }
+
+    // Measure "skew" of the merge, which can range
+    // from 1.0/numSegsBeingMerged (good) to 1.0
+    // (poor):
+    final double skew;
+    if (hitTooLarge)
+      // Pretend the merge has perfect skew; skew doesn't
+      // matter in this case because this merge will not
+      // "cascade" and so it cannot lead to N^2 merge cost
+      // over time:
+      skew = 1.0/maxMergeAtOnce;
+    else
+      skew = ((double) floorSize(size(sizes, candidate.get(0))))/totAfterMergeBytesFloored;
+
+    // Strongly favor merges with less skew (smaller
+    // score is better):
+    double mergeScore = skew;
+
+    // Gently favor smaller merges over bigger ones.  We
+    // don't want to make this exponent too large else we
+    // can end up doing poor merges of small segments in
+    // order to avoid the large merges:
+    mergeScore *= Math.pow(totAfterMergeBytes, 0.05);
+
+    // Strongly favor merges that reclaim deletes:
+    if (totBeforeMergeBytes > 0) {
+      final double nonDelRatio = ((double) totAfterMergeBytes)/totBeforeMergeBytes;
+      mergeScore *= Math.pow(nonDelRatio, reclaimDeletesWeight);
+    }
+
+    return mergeScore;
+  }
+
+  public MergeSpecification findMergesForOptimize(SegmentInfos infos, IndexWriter writer, int maxSegmentCount, Set segmentsToOptimize) throws IOException {
+    message(writer, "findMergesForOptimize maxSegmentCount=" + maxSegmentCount + " infos=" + segString(writer, infos) + " segmentsToOptimize=" + segmentsToOptimize);
+
+    final Collection merging = writer.getMergingSegments();
+    final List eligible = new ArrayList();
+    boolean optimizeMergeRunning = false;
+    for(int i=0;i<infos.size();i++) {
+      final SegmentInfo info = infos.info(i);
+      if (segmentsToOptimize.contains(info)) {
+        if (!merging.contains(info))
+          eligible.add(info);
+        else
+          optimizeMergeRunning = true;
+      }
+    }
+
+    if (eligible.size() == 0)
+      return null;
+
+    if ((maxSegmentCount > 1 && eligible.size() <= maxSegmentCount) ||
+        (maxSegmentCount == 1 && eligible.size() == 1 && isOptimized(writer, (SegmentInfo) eligible.get(0)))) {
+      message(writer, "already optimized");
+      return null;
+    }
+
+    final Map sizes = sizes(eligible);
+    Collections.sort(eligible, new SegmentByteSizeDescending(sizes));
+
+    message(writer, "eligible=" + segString(writer, eligible));
+    message(writer, "optimizeMergeRunning=" + optimizeMergeRunning);
+
+    int end = eligible.size();
+
+    MergeSpecification spec = null;
+
+    // Do full merges, first, backwards:
+    while(end >= maxMergeAtOnceExplicit + maxSegmentCount - 1) {
+      if (spec == null)
+        spec = new MergeSpecification();
+      final OneMerge merge = new OneMerge(inIndexOrder(infos, eligible.subList(end-maxMergeAtOnceExplicit, end)), useCompoundFile);
+      message(writer, "add merge=" + merge.segString(writer.getDirectory()));
+      spec.add(merge);
+      end -= maxMergeAtOnceExplicit;
+    }
+
+    if (spec == null && !optimizeMergeRunning) {
+      // Do final merge
+      final int numToMerge = end - maxSegmentCount + 1;
+      final OneMerge merge = new OneMerge(inIndexOrder(infos, eligible.subList(end-numToMerge, end)), useCompoundFile);
+      message(writer, "add final merge=" + merge.segString(writer.getDirectory()));
+      spec = new MergeSpecification();
+      spec.add(merge);
+    }
+
+    return spec;
+  }
+
+  public MergeSpecification findMergesToExpungeDeletes(SegmentInfos infos, IndexWriter writer) throws IOException {
+    message(writer, "findMergesToExpungeDeletes infos=" + segString(writer, infos) + " expungeDeletesPctAllowed=" + expungeDeletesPctAllowed);
+
+    final Collection merging = writer.getMergingSegments();
+    final List eligible = new ArrayList();
+    for(int i=0;i<infos.size();i++) {
+      final SegmentInfo info = infos.info(i);
+      if (info.docCount == 0)
+        continue;
+      final double pctDeletes = 100.*((double) info.getDelCount())/info.docCount;
+      if (pctDeletes > expungeDeletesPctAllowed && !merging.contains(info))
+        eligible.add(info);
+    }
+
+    if (eligible.size() == 0)
+      return null;
+
+    final Map sizes = sizes(eligible);
+    Collections.sort(eligible, new SegmentByteSizeDescending(sizes));
+
+    message(writer, "eligible=" + segString(writer, eligible));
+
+    int start = 0;
+    MergeSpecification spec = null;
+
+    while(start < eligible.size()) {
+      final int end = Math.min(start + maxMergeAtOnceExplicit, eligible.size());
+      if (spec == null)
+        spec = new MergeSpecification();
+
+      final OneMerge merge = new OneMerge(inIndexOrder(infos, eligible.subList(start, end)), useCompoundFile);
+      message(writer, "add merge=" + merge.segString(writer.getDirectory()));
+      spec.add(merge);
+      start = end;
+    }
+
+    return spec;
+  }
+
+  /** Returns the byte size of the segment, pro-rated by its
+   *  percentage of non-deleted documents. */
+  protected long size(SegmentInfo info) throws IOException {
+    final long byteSize = info.sizeInBytes();
+    final int delCount = info.getDelCount();
+    final double delRatio = (info.docCount <= 0 ? 0.0 : ((double) delCount / (double) info.docCount));
+    assert delRatio <= 1.0;
+    return (long) (byteSize * (1.0-delRatio));
+  }
+
+  private long floorSize(long bytes) {
+    return Math.max(floorSegmentBytes, bytes);
+  }
+
+  private boolean isOptimized(IndexWriter writer, SegmentInfo info) throws IOException {
+    return !info.hasDeletions() &&
+      !info.hasSeparateNorms() &&
+      info.dir == writer.getDirectory() &&
+      info.getUseCompoundFile() == useCompoundFile;
+  }
+
+  /** Returns the chosen segments in the order they appear in
+   *  the index, so that runs of adjacent segments keep their
+   *  relative document order and may share doc stores. */
+  private static SegmentInfos inIndexOrder(SegmentInfos infos, Collection chosen) {
+    final Set chosenSet = new HashSet(chosen);
+    final SegmentInfos merge = new SegmentInfos();
+    for(int i=0;i<infos.size();i++)
+      if (chosenSet.contains(infos.info(i)))
+        merge.add(infos.info(i));
+    return merge;
+  }
+
+  private static String segString(IndexWriter writer, List infos) {
+    final StringBuffer b = new StringBuffer();
+    for(int i=0;i<infos.size();i++) {
+      if (i > 0)
+        b.append(' ');
+      b.append(((SegmentInfo) infos.get(i)).segString(writer.getDirectory()));
+    }
+    return b.toString();
+  }
+
+  private static String mbString(long bytes) {
+    final long mb100 = bytes*100/1024/1024;
+    return (mb100/100) + "." + (mb100%100 < 10 ? "0" : "") + (mb100%100);
+  }
+
+  private static void message(IndexWriter writer, String message) {
+    if (writer.getInfoStream() != null)
+      writer.message("TMP: " + message);
+  }
+
+  public String toString() {
+    StringBuffer sb = new StringBuffer("[TieredMergePolicy: ");
+    sb.append("maxMergeAtOnce=").append(maxMergeAtOnce).append(", ");
+    sb.append("maxMergeAtOnceExplicit=").append(maxMergeAtOnceExplicit).append(", ");
+    sb.append("maxMergedSegmentMB=").append(getMaxMergedSegmentMB()).append(", ");
+    sb.append("floorSegmentMB=").append(getFloorSegmentMB()).append(", ");
+    sb.append("expungeDeletesPctAllowed=").append(expungeDeletesPctAllowed).append(", ");
+    sb.append("segmentsPerTier=").append(segsPerTier).append(", ");
+    sb.append("reclaimDeletesWeight=").append(reclaimDeletesWeight).append(", ");
+    sb.append("useCompoundFile=").append(useCompoundFile).append(", ");
+    sb.append("useCompoundDocStore=").append(useCompoundDocStore);
+    sb.append("]");
+    return sb.toString();
+  }
+}
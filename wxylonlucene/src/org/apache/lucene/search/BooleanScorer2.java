@@ -299,7 +299,21 @@ class BooleanScorer2 extends Scorer {
    * <br>When this method is used the {@link #explain(int)} method should not be used.
    */
   public void score(HitCollector hc) throws IOException {
-    if (allowDocsOutOfOrder && requiredScorers.size() == 0
+    // IndexSearcher passes a TopDocCollector in a DocBaseHitCollector
+    HitCollector target = hc instanceof DocBaseHitCollector
+            ? ((DocBaseHitCollector) hc).collector : hc;
+    if (target instanceof TopDocCollector
+            && ((TopDocCollector) target).getSkipNonCompetitive()
+            && requiredScorers.size() == 0 && prohibitedScorers.size() == 0
+            && minNrShouldMatch <= 1 && optionalScorers.size() > 1
+            && allTermScorers(optionalScorers)) {
+      // a pure disjunction of terms, skip the hits that cannot compete
+      coordinator.init();
+      TermScorer[] scorers = (TermScorer[]) optionalScorers.toArray(
+              new TermScorer[optionalScorers.size()]);
+      new MaxScoreDisjunction(scorers, coordinator.coordFactors)
+              .score(hc, (TopDocCollector) target);
+    } else if (allowDocsOutOfOrder && requiredScorers.size() == 0
             && prohibitedScorers.size() < 32) {
       // fall back to BooleanScorer, scores documents somewhat out of order
       BooleanScorer bs = new BooleanScorer(getSimilarity(), minNrShouldMatch);
@@ -322,6 +336,13 @@ class BooleanScorer2 extends Scorer {
     }
   }
 
+  private static boolean allTermScorers(List scorers) {
+    for (int i = 0; i < scorers.size(); i++)
+      if (!(scorers.get(i) instanceof TermScorer))
+        return false;
+    return true;
+  }
+
   /** Expert: Collects matching documents in a range.
    * <br>Note that {@link #next()} must be called once before this method is
    * called for the first time.
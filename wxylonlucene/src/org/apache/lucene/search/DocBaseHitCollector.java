@@ -0,0 +1,48 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.index.IndexReader;
+
+/**
+ * Passes the hits of each sub reader on to a plain {@link
+ * HitCollector}, with their document numbers in the whole index.
+ * {@link IndexSearcher} wraps every collector that is not a {@link
+ * MultiReaderHitCollector} in one.
+ */
+final class DocBaseHitCollector extends MultiReaderHitCollector {
+
+  /** The collector the hits are passed on to. */
+  final HitCollector collector;
+
+  private int docBase;
+
+  DocBaseHitCollector(HitCollector collector) {
+    this.collector = collector;
+  }
+
+  // javadoc inherited
+  public void setNextReader(IndexReader reader, int docBase) {
+    this.docBase = docBase;
+  }
+
+  // javadoc inherited
+  public void collect(int doc, float score) {
+    collector.collect(doc + docBase, score);
+  }
+}
@@ -25,6 +25,12 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.store.Directory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Implements search over a single IndexReader.
@@ -38,11 +44,34 @@ import java.io.IOException;
  * <p>
  * Note that you can only access Hits from an IndexSearcher as long as it is not
  * yet closed, otherwise an IOException will be thrown.
+ * 
+ * <p>
+ * Searches run over the sequential sub readers of the reader (see
+ * {@link IndexReader#getSequentialSubReaders()}), one segment at a time, so
+ * that per-reader caches like the {@link FieldCache} or those of
+ * {@link CachingWrapperFilter} are filled per segment and reused after the
+ * reader is reopened.
+ * 
+ * <p>
+ * If created with an {@link ExecutorService}, the top hits of
+ * {@link #search(Weight, Filter, int)} and
+ * {@link #search(Weight, Filter, int, Sort)} are collected for all segments
+ * concurrently, so a single query can use more than one CPU.
  */
 public class IndexSearcher extends Searcher {
 	IndexReader reader;
 	private boolean closeReader;
 
+	// runs the per-segment searches concurrently, or null
+	private final ExecutorService executor;
+
+	private boolean skipNonCompetitive;
+
+	// the leaf readers searched, in document order, and the document number
+	// of the first document of each in reader
+	IndexReader[] subReaders;
+	int[] docStarts;
+
 	/**
 	 * Creates a searcher searching the index in the named directory.
 	 * 
@@ -52,7 +81,7 @@ public class IndexSearcher extends Searcher {
 	 *             if there is a low-level IO error
 	 */
 	public IndexSearcher(String path) throws CorruptIndexException, IOException {
-		this(IndexReader.open(path), true);
+		this(IndexReader.open(path), true, null);
 	}
 
 	/**
@@ -65,17 +94,74 @@ public class IndexSearcher extends Searcher {
 	 */
 	public IndexSearcher(Directory directory) throws CorruptIndexException,
 			IOException {
-		this(IndexReader.open(directory), true);
+		this(IndexReader.open(directory), true, null);
 	}
 
 	/** Creates a searcher searching the provided index. */
 	public IndexSearcher(IndexReader r) {
-		this(r, false);
+		this(r, false, null);
 	}
 
-	private IndexSearcher(IndexReader r, boolean closeReader) {
+	/**
+	 * Creates a searcher searching the provided index that collects the top
+	 * hits of each segment on its own thread of the given executor and merges
+	 * them. The executor is typically a fixed size pool shared by all
+	 * searchers; it is not shut down by {@link #close()}.
+	 * 
+	 * <p>
+	 * <b>NOTE:</b> the {@link Weight}s and {@link Filter}s used are then called
+	 * by several threads at once. Searches with a {@link HitCollector} still
+	 * run on the calling thread, one segment after the other, as collectors
+	 * are in general not thread safe.
+	 */
+	public IndexSearcher(IndexReader r, ExecutorService executor) {
+		this(r, false, executor);
+	}
+
+	private IndexSearcher(IndexReader r, boolean closeReader,
+			ExecutorService executor) {
 		reader = r;
 		this.closeReader = closeReader;
+		this.executor = executor;
+
+		List subReadersList = new ArrayList();
+		gatherSubReaders(subReadersList, reader);
+		subReaders = (IndexReader[]) subReadersList
+				.toArray(new IndexReader[subReadersList.size()]);
+		docStarts = new int[subReaders.length];
+		int maxDoc = 0;
+		for (int i = 0; i < subReaders.length; i++) {
+			docStarts[i] = maxDoc;
+			maxDoc += subReaders[i].maxDoc();
+		}
+	}
+
+	private static void gatherSubReaders(List allSubReaders, IndexReader r) {
+		IndexReader[] subReaders = r.getSequentialSubReaders();
+		if (subReaders == null) {
+			// Add the reader itself, and do not recurse
+			allSubReaders.add(r);
+		} else {
+			for (int i = 0; i < subReaders.length; i++)
+				gatherSubReaders(allSubReaders, subReaders[i]);
+		}
+	}
+
+	/**
+	 * Lets the top hits searches skip documents that cannot make it into the
+	 * top hits, see {@link TopDocCollector#setSkipNonCompetitive(boolean)}.
+	 * The hits are the same, but {@link TopDocs#totalHits} is then only a
+	 * lower bound of the number of matches, so {@link Hits} should not be used
+	 * with a searcher doing this. Scores may differ in the last bit, which
+	 * can reorder hits with (nearly) equal scores. Off by default.
+	 */
+	public void setSkipNonCompetitive(boolean skipNonCompetitive) {
+		this.skipNonCompetitive = skipNonCompetitive;
+	}
+
+	/** @see #setSkipNonCompetitive(boolean) */
+	public boolean getSkipNonCompetitive() {
+		return skipNonCompetitive;
 	}
 
 	/** Return the {@link IndexReader} this searches. */
@@ -122,25 +208,162 @@ public class IndexSearcher extends Searcher {
 		if (nDocs <= 0) // null might be returned from hq.top() below.
 			throw new IllegalArgumentException("nDocs must be > 0");
 
-		TopDocCollector collector = new TopDocCollector(nDocs);
-		search(weight, filter, collector);
-		return collector.topDocs();
+		if (executor == null || subReaders.length < 2) {
+			TopDocCollector collector = new TopDocCollector(nDocs);
+			collector.setSkipNonCompetitive(skipNonCompetitive);
+			search(weight, filter, collector);
+			return collector.topDocs();
+		}
+
+		TopDocCollector[] collectors = new TopDocCollector[subReaders.length];
+		MultiReaderHitCollector[] segmentCollectors = new MultiReaderHitCollector[subReaders.length];
+		for (int i = 0; i < subReaders.length; i++) {
+			collectors[i] = new TopDocCollector(nDocs);
+			collectors[i].setSkipNonCompetitive(skipNonCompetitive);
+			segmentCollectors[i] = new DocBaseHitCollector(collectors[i]);
+		}
+		searchConcurrently(weight, filter, segmentCollectors);
+
+		HitQueue hq = new HitQueue(nDocs);
+		int totalHits = 0;
+		for (int i = 0; i < collectors.length; i++) {
+			TopDocs docs = collectors[i].topDocs();
+			totalHits += docs.totalHits;
+			ScoreDoc[] scoreDocs = docs.scoreDocs;
+			for (int j = 0; j < scoreDocs.length; j++) { // merge scoreDocs
+				if (!hq.insert(scoreDocs[j]))
+					break; // no more scores > minScore
+			}
+		}
+
+		ScoreDoc[] scoreDocs = new ScoreDoc[hq.size()];
+		for (int i = hq.size() - 1; i >= 0; i--) // put docs in array
+			scoreDocs[i] = (ScoreDoc) hq.pop();
+
+		float maxScore = (totalHits == 0) ? Float.NEGATIVE_INFINITY
+				: scoreDocs[0].score;
+
+		return new TopDocs(totalHits, scoreDocs, maxScore);
 	}
 
 	// inherit javadoc
 	public TopFieldDocs search(Weight weight, Filter filter, final int nDocs,
 			Sort sort) throws IOException {
 
-		TopFieldDocCollector collector = new TopFieldDocCollector(reader, sort,
-				nDocs);
-		search(weight, filter, collector);
-		return (TopFieldDocs) collector.topDocs();
+		if (executor == null || subReaders.length < 2) {
+			MultiReaderTopFieldDocCollector collector = new MultiReaderTopFieldDocCollector(
+					reader, sort, nDocs);
+			search(weight, filter, collector);
+			return (TopFieldDocs) collector.topDocs();
+		}
+
+		// resolve AUTO fields once, so all segments sort by the same types
+		SortField[] fields = MultiReaderTopFieldDocCollector.resolveFields(
+				reader, sort.fields);
+		MultiReaderTopFieldDocCollector[] collectors = new MultiReaderTopFieldDocCollector[subReaders.length];
+		for (int i = 0; i < subReaders.length; i++)
+			collectors[i] = new MultiReaderTopFieldDocCollector(fields, nDocs);
+		searchConcurrently(weight, filter, collectors);
+
+		FieldDocSortedHitQueue hq = new FieldDocSortedHitQueue(fields, nDocs);
+		int totalHits = 0;
+		float maxScore = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < collectors.length; i++) {
+			TopFieldDocs docs = (TopFieldDocs) collectors[i].topDocs();
+			totalHits += docs.totalHits;
+			maxScore = Math.max(maxScore, docs.getMaxScore());
+			ScoreDoc[] scoreDocs = docs.scoreDocs;
+			for (int j = 0; j < scoreDocs.length; j++) { // merge scoreDocs
+				if (!hq.insert(scoreDocs[j]))
+					break; // no more docs sorting before the last one
+			}
+		}
+
+		ScoreDoc[] scoreDocs = new ScoreDoc[hq.size()];
+		for (int i = hq.size() - 1; i >= 0; i--) // put docs in array
+			scoreDocs[i] = (ScoreDoc) hq.pop();
+
+		return new TopFieldDocs(totalHits, scoreDocs, fields, maxScore);
+	}
+
+	/*
+	 * Searches each sub reader into its own collector on the executor and
+	 * waits until all are done. Rethrows the first exception hit by any of
+	 * the searches.
+	 */
+	private void searchConcurrently(final Weight weight, final Filter filter,
+			final MultiReaderHitCollector[] collectors) throws IOException {
+
+		Future[] futures = new Future[subReaders.length];
+		for (int i = 0; i < subReaders.length; i++) {
+			final IndexReader subReader = subReaders[i];
+			final int docStart = docStarts[i];
+			final MultiReaderHitCollector collector = collectors[i];
+			futures[i] = executor.submit(new Callable() {
+				public Object call() throws IOException {
+					collector.setNextReader(subReader, docStart);
+					doSearch(subReader, weight, filter, collector);
+					return null;
+				}
+			});
+		}
+
+		Throwable exc = null;
+		for (int i = 0; i < futures.length; i++) {
+			try {
+				futures[i].get();
+			} catch (ExecutionException ee) {
+				if (exc == null)
+					exc = ee.getCause();
+			} catch (InterruptedException ie) {
+				// Do not interrupt running searches: an interrupt closes the
+				// channels of NIOFSDirectory, which all searches share
+				for (int j = i; j < futures.length; j++)
+					futures[j].cancel(false);
+				Thread.currentThread().interrupt();
+				IOException ioe = new IOException(
+						"interrupted while waiting for segment searches");
+				ioe.initCause(ie);
+				throw ioe;
+			}
+		}
+
+		if (exc instanceof IOException)
+			throw (IOException) exc;
+		if (exc instanceof RuntimeException)
+			throw (RuntimeException) exc;
+		if (exc instanceof Error)
+			throw (Error) exc;
+		if (exc != null) {
+			IOException ioe = new IOException(exc.toString());
+			ioe.initCause(exc);
+			throw ioe;
+		}
 	}
 
 	// inherit javadoc
 	public void search(Weight weight, Filter filter, final HitCollector results)
 			throws IOException {
 
+		final MultiReaderHitCollector collector;
+		if (results instanceof MultiReaderHitCollector)
+			collector = (MultiReaderHitCollector) results;
+		else
+			collector = new DocBaseHitCollector(results);
+
+		for (int i = 0; i < subReaders.length; i++) { // search each subreader
+			collector.setNextReader(subReaders[i], docStarts[i]);
+			doSearch(subReaders[i], weight, filter, collector);
+		}
+	}
+
+	/*
+	 * Scores the documents of one sub reader; the collector receives
+	 * document numbers relative to it.
+	 */
+	private void doSearch(IndexReader reader, Weight weight, Filter filter,
+			final HitCollector results) throws IOException {
+
 		Scorer scorer = weight.scorer(reader);
 		if (scorer == null)
 			return;
@@ -150,8 +373,10 @@ public class IndexSearcher extends Searcher {
 			return;
 		}
 
-		DocIdSetIterator filterDocIdIterator = filter.getDocIdSet(reader)
-				.iterator(); // CHECKME: use ConjunctionScorer here?
+		DocIdSet filterDocIdSet = filter.getDocIdSet(reader);
+		if (filterDocIdSet == null)
+			return;
+		DocIdSetIterator filterDocIdIterator = filterDocIdSet.iterator(); // CHECKME: use ConjunctionScorer here?
 
 		boolean more = filterDocIdIterator.next()
 				&& scorer.skipTo(filterDocIdIterator.doc());
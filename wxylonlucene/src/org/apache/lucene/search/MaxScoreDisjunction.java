@@ -0,0 +1,209 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+/**
+ * Collects the top hits of a disjunction of terms into a {@link
+ * TopDocCollector}, skipping documents that cannot score high enough
+ * to make it into them (the "MaxScore" algorithm of Turtle and Flood).
+ *
+ * <p>The terms are ordered by the upper bound of their scores, see
+ * {@link TermScorer#maxScore()}.  Once the collector is full, the terms
+ * with the lowest bounds whose bounds together do not exceed the {@link
+ * TopDocCollector#minCompetitiveScore() minimum competitive score} are
+ * non-essential: a document matching only those cannot be collected.
+ * Only the documents of the other, essential terms are visited, and
+ * the non-essential terms are skipped to each of them, highest bound
+ * first, until the score so far plus the bounds of the terms left
+ * cannot exceed the minimum competitive score.
+ *
+ * <p>Where the index records the largest term frequency and norm of each
+ * block of postings between two skip points, see {@link
+ * org.apache.lucene.index.ImpactTermDocs}, the terms are bounded by
+ * their blocks around the candidate instead.  When these bounds add up
+ * to no more than the minimum competitive score, the essential terms
+ * skip to the end of the first of these blocks, without reading the
+ * postings in between.
+ *
+ * <p>The scores are those of {@link BooleanScorer2}, the sum of the term
+ * scores times the coordination factor.  The term scores are added up in
+ * another order though, so a score may differ from that of {@link
+ * DisjunctionSumScorer} in the last bit, and hits scoring (nearly) the
+ * same may come out in another order.
+ */
+final class MaxScoreDisjunction {
+
+  /** Bounds are raised by this factor to make up for the rounding of
+   *  float sums added up in a different order. */
+  private static final float SLACK = 1.0001f;
+
+  private static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+  private final TermScorer[] scorers;     // in increasing order of maxScores
+  private final float[] coordFactors;
+  private final float maxCoord;
+
+  /** upTo[i] bounds the score of a document matching no
+   *  scorers beyond scorers[i]. */
+  private final float[] upTo;
+
+  /** The same for the current candidate, from the bounds of the
+   *  blocks of postings around it, without coordination. */
+  private final float[] nonEssentialUpTo;
+
+  /**
+   * @param scorers the optional scorers of the disjunction
+   * @param coordFactors the coordination factors by number of
+   *        matching scorers
+   */
+  MaxScoreDisjunction(TermScorer[] scorers, float[] coordFactors) throws IOException {
+    int n = scorers.length;
+    float[] maxScores = new float[n];
+    for (int i = 0; i < n; i++)
+      maxScores[i] = scorers[i].maxScore();
+
+    // insertion sort, there are few scorers
+    this.scorers = scorers.clone();
+    for (int i = 1; i < n; i++) {
+      TermScorer scorer = this.scorers[i];
+      float maxScore = maxScores[i];
+      int j = i;
+      for (; j > 0 && maxScores[j-1] > maxScore; j--) {
+        this.scorers[j] = this.scorers[j-1];
+        maxScores[j] = maxScores[j-1];
+      }
+      this.scorers[j] = scorer;
+      maxScores[j] = maxScore;
+    }
+
+    float maxCoord = 0.0f;
+    for (int i = 1; i < coordFactors.length; i++)
+      maxCoord = Math.max(maxCoord, coordFactors[i]);
+    this.maxCoord = maxCoord;
+    this.coordFactors = coordFactors;
+
+    upTo = new float[n];
+    nonEssentialUpTo = new float[n];
+    float sum = 0.0f;
+    for (int i = 0; i < n; i++) {
+      sum += maxScores[i];
+      upTo[i] = sum * maxCoord * SLACK;
+    }
+  }
+
+  /** Collects all documents that may make it into the top hits of the
+   *  collector.
+   * @param results receives the hits; it is the collector itself, or
+   *        passes the hits on to it
+   * @param collector the collector the hits end up in
+   */
+  void score(HitCollector results, TopDocCollector collector) throws IOException {
+    final int n = scorers.length;
+    final int[] docs = new int[n];              // current doc of each scorer
+    for (int i = 0; i < n; i++)
+      docs[i] = scorers[i].next() ? scorers[i].doc() : NO_MORE_DOCS;
+
+    // bounds of the scorers on the blocks of postings around the candidate
+    final float[] blockMaxScores = new float[n];
+
+    float minScore = collector.minCompetitiveScore();
+    int firstEssential = firstEssential(0, minScore);
+
+    while (firstEssential < n) {
+      int doc = NO_MORE_DOCS;
+      for (int i = firstEssential; i < n; i++)
+        if (docs[i] < doc)
+          doc = docs[i];
+      if (doc == NO_MORE_DOCS)
+        break;
+
+      if (minScore != Float.NEGATIVE_INFINITY) {
+        // bound the documents from doc up to the end of the first
+        // block of postings ending, skip them all if none can compete
+        int end = NO_MORE_DOCS;
+        float bound = 0.0f;
+        for (int i = 0; i < n; i++) {
+          if (docs[i] == NO_MORE_DOCS) {
+            blockMaxScores[i] = 0.0f;
+            continue;
+          }
+          blockMaxScores[i] = scorers[i].blockMaxScore(Math.max(doc, docs[i]));
+          end = Math.min(end, scorers[i].blockEnd());
+          bound += blockMaxScores[i];
+        }
+        if (bound * maxCoord * SLACK <= minScore) {
+          if (end == NO_MORE_DOCS)
+            break;
+          for (int i = firstEssential; i < n; i++)
+            if (docs[i] <= end)
+              docs[i] = scorers[i].skipTo(end + 1) ? scorers[i].doc() : NO_MORE_DOCS;
+          continue;
+        }
+      }
+
+      float score = 0.0f;
+      int matchers = 0;
+      for (int i = firstEssential; i < n; i++) {
+        if (docs[i] == doc) {
+          score += scorers[i].score();
+          matchers++;
+          docs[i] = scorers[i].next() ? scorers[i].doc() : NO_MORE_DOCS;
+        }
+      }
+
+      // what the non essential scorers up to i may add to the score
+      float rest = 0.0f;
+      for (int i = 0; i < firstEssential; i++) {
+        if (docs[i] <= doc)
+          rest += blockMaxScores[i];
+        nonEssentialUpTo[i] = rest;
+      }
+
+      boolean competitive = true;
+      for (int i = firstEssential - 1; i >= 0; i--) {
+        if ((score + nonEssentialUpTo[i]) * maxCoord * SLACK <= minScore) {
+          competitive = false;
+          break;
+        }
+        if (docs[i] < doc)
+          docs[i] = scorers[i].skipTo(doc) ? scorers[i].doc() : NO_MORE_DOCS;
+        if (docs[i] == doc) {
+          score += scorers[i].score();
+          matchers++;
+        }
+      }
+
+      if (competitive) {
+        results.collect(doc, score * coordFactors[matchers]);
+        float newMinScore = collector.minCompetitiveScore();
+        if (newMinScore > minScore) {
+          minScore = newMinScore;
+          firstEssential = firstEssential(firstEssential, minScore);
+        }
+      }
+    }
+  }
+
+  private int firstEssential(int from, float minScore) {
+    while (from < upTo.length && upTo[from] <= minScore)
+      from++;
+    return from;
+  }
+}
@@ -0,0 +1,49 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+
+/**
+ * Expert: a {@link HitCollector} that is told about each of
+ * the sub readers ({@link IndexReader#getSequentialSubReaders})
+ * a search visits.  {@link IndexSearcher} scores one sub
+ * reader, usually one segment, at a time: it first calls
+ * {@link #setNextReader} and then {@link #collect} with
+ * document numbers relative to that reader.  Collectors can
+ * so keep per-reader data, like {@link FieldCache} arrays,
+ * for the segment being searched, and must add the docBase
+ * to get the document number in the whole index.
+ *
+ * <p>Collectors that are not a MultiReaderHitCollector
+ * receive document numbers of the whole index, as before.
+ */
+public abstract class MultiReaderHitCollector extends HitCollector {
+
+  /**
+   * Called before collecting from each sub reader.  All
+   * following calls to {@link #collect} are relative to this
+   * reader until the next call.
+   * @param reader the next reader to be searched
+   * @param docBase the document number of the reader's first
+   *        document in the whole index
+   */
+  public abstract void setNextReader(IndexReader reader, int docBase) throws IOException;
+}
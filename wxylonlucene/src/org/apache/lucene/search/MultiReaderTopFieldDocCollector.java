@@ -0,0 +1,172 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+
+/**
+ * A {@link HitCollector} that collects the top-sorting documents one
+ * segment at a time, returning them as a {@link TopFieldDocs}.  This is
+ * used by {@link IndexSearcher} to implement {@link TopFieldDocs}-based
+ * search.
+ *
+ * <p>Unlike {@link TopFieldDocCollector}, which sorts by {@link FieldCache}
+ * values of the whole index, each segment is sorted in a {@link
+ * FieldSortedHitQueue} of its own, with comparators (and cache entries)
+ * for just that segment.  So after {@link IndexReader#reopen} only new
+ * segments need to load their sort values.  When the search moves on to
+ * the next segment, the segment's top hits are merged, by their sort
+ * values, into the overall result.
+ *
+ * <p>{@link SortField#AUTO} fields are resolved once, against the whole
+ * index, so that all segments sort the field by the same type.
+ */
+public class MultiReaderTopFieldDocCollector extends MultiReaderHitCollector {
+
+  private final SortField[] fields;
+  private final int numHits;
+  private final FieldDocSortedHitQueue mergeQueue;
+
+  private FieldSortedHitQueue segmentQueue;
+  private int docBase;
+  private FieldDoc reusableFD;
+
+  private int totalHits;
+  private float maxScore = Float.NEGATIVE_INFINITY;
+
+  /** Construct to collect a given number of hits.
+   * @param reader the index to be searched; only used to resolve
+   *        {@link SortField#AUTO} fields
+   * @param sort the sort criteria
+   * @param numHits the maximum number of hits to collect
+   */
+  public MultiReaderTopFieldDocCollector(IndexReader reader, Sort sort, int numHits)
+    throws IOException {
+    this(resolveFields(reader, sort.fields), numHits);
+  }
+
+  /** Construct to collect a given number of hits, sorted by fields
+   *  that contain no AUTO field. */
+  MultiReaderTopFieldDocCollector(SortField[] fields, int numHits) {
+    this.numHits = numHits;
+    this.fields = fields;
+    mergeQueue = new FieldDocSortedHitQueue(fields, numHits);
+  }
+
+  // javadoc inherited
+  public void setNextReader(IndexReader reader, int docBase) throws IOException {
+    mergeSegment();
+    segmentQueue = new FieldSortedHitQueue(reader, fields, numHits);
+    this.docBase = docBase;
+  }
+
+  // javadoc inherited
+  public void collect(int doc, float score) {
+    if (score > 0.0f) {
+      totalHits++;
+      if (reusableFD == null)
+        reusableFD = new FieldDoc(doc, score);
+      else {
+        reusableFD.score = score;
+        reusableFD.doc = doc;
+      }
+      reusableFD = (FieldDoc) segmentQueue.insertWithOverflow(reusableFD);
+    }
+  }
+
+  /** Moves the top hits of the current segment to the merge queue. */
+  private void mergeSegment() {
+    if (segmentQueue == null)
+      return;
+    maxScore = Math.max(maxScore, segmentQueue.getMaxScore());
+    while (segmentQueue.size() > 0) {
+      FieldDoc fd = segmentQueue.fillFields((FieldDoc) segmentQueue.pop());
+      fd.doc += docBase;
+      for (int i = 0; i < fields.length; i++)
+        if (fields[i].getType() == SortField.DOC)
+          fd.fields[i] = Integer.valueOf(fd.doc);
+      mergeQueue.insert(fd);
+    }
+    segmentQueue = null;
+  }
+
+  /** The total number of documents that matched this query. */
+  public int getTotalHits() { return totalHits; }
+
+  /** The top-sorting hits. */
+  public TopDocs topDocs() {
+    mergeSegment();
+    ScoreDoc[] scoreDocs = new ScoreDoc[mergeQueue.size()];
+    for (int i = mergeQueue.size()-1; i >= 0; i--)      // put docs in array
+      scoreDocs[i] = (FieldDoc) mergeQueue.pop();
+
+    return new TopFieldDocs(totalHits, scoreDocs, fields, maxScore);
+  }
+
+  /** Returns the sort fields with each AUTO field replaced by a
+   *  field of the type its terms in reader have. */
+  static SortField[] resolveFields(IndexReader reader, SortField[] fields)
+    throws IOException {
+    SortField[] resolved = new SortField[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      SortField field = fields[i];
+      if (field.getType() == SortField.AUTO) {
+        int type = detectFieldType(reader, field.getField());
+        if (type == SortField.STRING)
+          field = new SortField(field.getField(), field.getLocale(), field.getReverse());
+        else
+          field = new SortField(field.getField(), type, field.getReverse());
+      }
+      resolved[i] = field;
+    }
+    return resolved;
+  }
+
+  /** Same rules as {@link FieldCache#getAuto}, but looks only at the
+   *  first term rather than loading the field's values. */
+  private static int detectFieldType(IndexReader reader, String fieldname)
+    throws IOException {
+    final String field = fieldname.intern();
+    TermEnum enumerator = reader.terms(new Term(field));
+    try {
+      Term term = enumerator.term();
+      if (term == null)
+        throw new RuntimeException("no terms in field " + field + " - cannot determine sort type");
+      if (term.field() != field)
+        throw new RuntimeException("field \"" + field + "\" does not appear to be indexed");
+      String termtext = term.text().trim();
+      try {
+        Integer.parseInt(termtext);
+        return SortField.INT;
+      } catch (NumberFormatException nfe1) {
+        try {
+          Float.parseFloat(termtext);
+          return SortField.FLOAT;
+        } catch (NumberFormatException nfe2) {
+          return SortField.STRING;
+        }
+      }
+    } finally {
+      enumerator.close();
+    }
+  }
+}
@@ -18,6 +18,14 @@ package org.apache.lucene.search;
  */
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.lucene.index.Term;
 import org.apache.lucene.util.PriorityQueue;
@@ -26,17 +34,54 @@ import org.apache.lucene.util.PriorityQueue;
  *
  * <p>Applications usually need only call the inherited {@link #search(Query)}
  * or {@link #search(Query,Filter)} methods.
+ *
+ * <p>The <code>Searchables</code> are searched as tasks of an {@link
+ * ExecutorService}, by default a pool of {@link #DEFAULT_MAX_THREADS}
+ * threads shared by all ParallelMultiSearchers, so no thread is started
+ * per query.  Because of that, ParallelMultiSearchers sharing a pool
+ * must not search each other: nested searches could wait forever for
+ * threads held by their callers.
+ *
+ * <p>{@link #search(Query,Filter,int,long)} and {@link
+ * #search(Query,Filter,int,Sort,long)} take a time limit.  The hits of
+ * the <code>Searchables</code> that did not answer in time are left out,
+ * and the returned {@link TopDocs} name them in {@link
+ * TopDocs#getTimedOutSearchables()}.
  */
 public class ParallelMultiSearcher extends MultiSearcher {
 
+  /** The number of threads of the pool used by ParallelMultiSearchers
+   *  created without an executor of their own. */
+  public static final int DEFAULT_MAX_THREADS = 16;
+
+  private static final ExecutorService DEFAULT_POOL = Executors
+      .newFixedThreadPool(DEFAULT_MAX_THREADS, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "ParallelMultiSearcher thread");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+
   private Searchable[] searchables;
   private int[] starts;
+  private final ExecutorService executor;
 	
-  /** Creates a searcher which searches <i>searchables</i>. */
+  /** Creates a searcher which searches <i>searchables</i> on the
+   *  shared default pool. */
   public ParallelMultiSearcher(Searchable[] searchables) throws IOException {
+    this(searchables, DEFAULT_POOL);
+  }
+
+  /** Creates a searcher which searches <i>searchables</i> as tasks
+   *  of the given executor.  The executor is not shut down by
+   *  {@link #close()}. */
+  public ParallelMultiSearcher(Searchable[] searchables, ExecutorService executor)
+    throws IOException {
     super(searchables);
     this.searchables=searchables;
     this.starts=getStarts();
+    this.executor=executor;
   }
 
   /**
@@ -47,44 +92,66 @@ public class ParallelMultiSearcher extends MultiSearcher {
   }
 
   /**
-   * A search implementation which spans a new thread for each
-   * Searchable, waits for each search to complete and merge
+   * A search implementation which searches each Searchable on
+   * the executor, waits for each search to complete and merges
    * the results back together.
    */
   public TopDocs search(Weight weight, Filter filter, int nDocs)
     throws IOException {
+    return search(weight, filter, nDocs, 0);
+  }
+
+  /**
+   * A search implementation allowing sorting which searches each
+   * Searchable on the executor, waits for each search to complete
+   * and merges the results back together.
+   */
+  public TopFieldDocs search(Weight weight, Filter filter, int nDocs, Sort sort)
+    throws IOException {
+    return search(weight, filter, nDocs, sort, 0);
+  }
+
+  /** Finds the top <code>n</code> hits for <code>query</code>, applying
+   * <code>filter</code> if non-null, but waits at most <code>timeout</code>
+   * milliseconds for the Searchables.
+   *
+   * @param timeout the time limit in milliseconds; 0 waits until all
+   *        searches are done
+   * @return the merged hits of the Searchables that answered in time
+   * @see TopDocs#getTimedOutSearchables()
+   */
+  public TopDocs search(Query query, Filter filter, int n, long timeout)
+    throws IOException {
+    return search(createWeight(query), filter, n, timeout);
+  }
+
+  /** Search implementation with arbitrary sorting that waits at most
+   * <code>timeout</code> milliseconds for the Searchables.
+   *
+   * @param timeout the time limit in milliseconds; 0 waits until all
+   *        searches are done
+   * @return the merged hits of the Searchables that answered in time
+   * @see TopDocs#getTimedOutSearchables()
+   */
+  public TopFieldDocs search(Query query, Filter filter, int n, Sort sort, long timeout)
+    throws IOException {
+    return search(createWeight(query), filter, n, sort, timeout);
+  }
+
+  /** Expert: low-level implementation of {@link
+   * #search(Query,Filter,int,long)}. */
+  public TopDocs search(Weight weight, Filter filter, int nDocs, long timeout)
+    throws IOException {
+    TopDocs[] results = new TopDocs[searchables.length];
+    int[] timedOut = waitFor(submit(weight, filter, nDocs, null), results, timeout);
+
     HitQueue hq = new HitQueue(nDocs);
     int totalHits = 0;
-    MultiSearcherThread[] msta =
-      new MultiSearcherThread[searchables.length];
-    for (int i = 0; i < searchables.length; i++) { // search each searcher
-      // Assume not too many searchables and cost of creating a thread is by far inferior to a search
-      msta[i] =
-        new MultiSearcherThread(
-                                searchables[i],
-                                weight,
-                                filter,
-                                nDocs,
-                                hq,
-                                i,
-                                starts,
-                                "MultiSearcher thread #" + (i + 1));
-      msta[i].start();
-    }
-
-    for (int i = 0; i < searchables.length; i++) {
-      try {
-        msta[i].join();
-      } catch (InterruptedException ie) {
-        ; // TODO: what should we do with this???
-      }
-      IOException ioe = msta[i].getIOException();
-      if (ioe == null) {
-        totalHits += msta[i].hits();
-      } else {
-        // if one search produced an IOException, rethrow it
-        throw ioe;
-      }
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] == null)                     // timed out
+        continue;
+      totalHits += results[i].totalHits;
+      merge(hq, results[i].scoreDocs, starts[i]);
     }
 
     ScoreDoc[] scoreDocs = new ScoreDoc[hq.size()];
@@ -92,60 +159,131 @@ public class ParallelMultiSearcher extends MultiSearcher {
       scoreDocs[i] = (ScoreDoc) hq.pop();
 
     float maxScore = (totalHits==0) ? Float.NEGATIVE_INFINITY : scoreDocs[0].score;
-    
-    return new TopDocs(totalHits, scoreDocs, maxScore);
+
+    TopDocs topDocs = new TopDocs(totalHits, scoreDocs, maxScore);
+    topDocs.setTimedOutSearchables(timedOut);
+    return topDocs;
   }
 
-  /**
-   * A search implementation allowing sorting which spans a new thread for each
-   * Searchable, waits for each search to complete and merges
-   * the results back together.
-   */
-  public TopFieldDocs search(Weight weight, Filter filter, int nDocs, Sort sort)
+  /** Expert: low-level implementation of {@link
+   * #search(Query,Filter,int,Sort,long)}. */
+  public TopFieldDocs search(Weight weight, Filter filter, int nDocs, Sort sort, long timeout)
     throws IOException {
-    // don't specify the fields - we'll wait to do this until we get results
-    FieldDocSortedHitQueue hq = new FieldDocSortedHitQueue (null, nDocs);
-    int totalHits = 0;
-    MultiSearcherThread[] msta = new MultiSearcherThread[searchables.length];
-    for (int i = 0; i < searchables.length; i++) { // search each searcher
-      // Assume not too many searchables and cost of creating a thread is by far inferior to a search
-      msta[i] =
-        new MultiSearcherThread(
-                                searchables[i],
-                                weight,
-                                filter,
-                                nDocs,
-                                hq,
-                                sort,
-                                i,
-                                starts,
-                                "MultiSearcher thread #" + (i + 1));
-      msta[i].start();
+    TopDocs[] results = new TopDocs[searchables.length];
+    int[] timedOut = waitFor(submit(weight, filter, nDocs, sort), results, timeout);
+
+    // the fields a Searchable returns have the actual type of each
+    // field, in case the original list contained AUTO
+    SortField[] fields = sort.fields;
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] != null) {
+        fields = ((TopFieldDocs) results[i]).fields;
+        break;
+      }
     }
 
+    FieldDocSortedHitQueue hq = new FieldDocSortedHitQueue (fields, nDocs);
+    int totalHits = 0;
     float maxScore=Float.NEGATIVE_INFINITY;
-    
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] == null)                     // timed out
+        continue;
+      totalHits += results[i].totalHits;
+      maxScore=Math.max(maxScore, results[i].getMaxScore());
+      merge(hq, results[i].scoreDocs, starts[i]);
+    }
+
+    ScoreDoc[] scoreDocs = new ScoreDoc[hq.size()];
+    for (int i = hq.size() - 1; i >= 0; i--) // put docs in array
+      scoreDocs[i] = (ScoreDoc) hq.pop();
+
+    TopFieldDocs topDocs = new TopFieldDocs(totalHits, scoreDocs, fields, maxScore);
+    topDocs.setTimedOutSearchables(timedOut);
+    return topDocs;
+  }
+
+  /** Starts the search of each Searchable on the executor. */
+  private Future[] submit(final Weight weight, final Filter filter,
+                          final int nDocs, final Sort sort) {
+    Future[] futures = new Future[searchables.length];
     for (int i = 0; i < searchables.length; i++) {
+      final Searchable searchable = searchables[i];
+      futures[i] = executor.submit(new Callable() {
+          public Object call() throws IOException {
+            return (sort == null) ? searchable.search (weight, filter, nDocs)
+              : searchable.search (weight, filter, nDocs, sort);
+          }
+        });
+    }
+    return futures;
+  }
+
+  /** Waits until all searches are done or, if timeout is not 0, at
+   *  most timeout milliseconds, and stores the hits of each search in
+   *  results.  Returns the indexes of the searches that did not finish
+   *  in time, or null if all did. */
+  private int[] waitFor(Future[] futures, TopDocs[] results, long timeout)
+    throws IOException {
+    final long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+    int[] timedOut = new int[futures.length];
+    int numTimedOut = 0;
+    for (int i = 0; i < futures.length; i++) {
       try {
-        msta[i].join();
+        if (deadline == 0)
+          results[i] = (TopDocs) futures[i].get();
+        else {
+          long remaining = Math.max(0, deadline - System.currentTimeMillis());
+          results[i] = (TopDocs) futures[i].get(remaining, TimeUnit.MILLISECONDS);
+        }
+      } catch (TimeoutException te) {
+        // Do not interrupt a running search: an interrupt closes the
+        // channels of NIOFSDirectory, which the index shares with all
+        // other searches.  It finishes in the background, unseen.
+        futures[i].cancel(false);
+        timedOut[numTimedOut++] = i;
+      } catch (ExecutionException ee) {
+        cancel(futures);
+        // if one search produced an exception, rethrow it
+        Throwable t = ee.getCause();
+        if (t instanceof IOException)
+          throw (IOException) t;
+        if (t instanceof RuntimeException)
+          throw (RuntimeException) t;
+        if (t instanceof Error)
+          throw (Error) t;
+        IOException ioe = new IOException(t.toString());
+        ioe.initCause(t);
+        throw ioe;
       } catch (InterruptedException ie) {
-        ; // TODO: what should we do with this???
-      }
-      IOException ioe = msta[i].getIOException();
-      if (ioe == null) {
-        totalHits += msta[i].hits();
-        maxScore=Math.max(maxScore, msta[i].getMaxScore());
-      } else {
-        // if one search produced an IOException, rethrow it
+        cancel(futures);
+        Thread.currentThread().interrupt();
+        IOException ioe = new IOException("interrupted while waiting for searchables");
+        ioe.initCause(ie);
         throw ioe;
       }
     }
+    if (numTimedOut == 0)
+      return null;
+    int[] result = new int[numTimedOut];
+    System.arraycopy(timedOut, 0, result, 0, numTimedOut);
+    return result;
+  }
 
-    ScoreDoc[] scoreDocs = new ScoreDoc[hq.size()];
-    for (int i = hq.size() - 1; i >= 0; i--) // put docs in array
-      scoreDocs[i] = (ScoreDoc) hq.pop();
+  /** Drops the searches that did not start yet. */
+  private static void cancel(Future[] futures) {
+    for (int i = 0; i < futures.length; i++)
+      futures[i].cancel(false);
+  }
 
-    return new TopFieldDocs(totalHits, scoreDocs, hq.getFields(), maxScore);
+  /** Merges the sorted hits of the Searchable starting at
+   *  document start into hq. */
+  private static void merge(PriorityQueue hq, ScoreDoc[] scoreDocs, int start) {
+    for (int j = 0; j < scoreDocs.length; j++) { // merge scoreDocs into hq
+      ScoreDoc scoreDoc = scoreDocs[j];
+      scoreDoc.doc += start; // convert doc
+      if (!hq.insert(scoreDoc))
+        break;                                    // no more scores > minScore
+    }
   }
 
   /** Lower-level search API.
@@ -188,104 +326,3 @@ public class ParallelMultiSearcher extends MultiSearcher {
   }
 
 }
-
-/**
- * A thread subclass for searching a single searchable 
- */
-class MultiSearcherThread extends Thread {
-
-  private Searchable searchable;
-  private Weight weight;
-  private Filter filter;
-  private int nDocs;
-  private TopDocs docs;
-  private int i;
-  private PriorityQueue hq;
-  private int[] starts;
-  private IOException ioe;
-  private Sort sort;
-
-  public MultiSearcherThread(
-                             Searchable searchable,
-                             Weight weight,
-                             Filter filter,
-                             int nDocs,
-                             HitQueue hq,
-                             int i,
-                             int[] starts,
-                             String name) {
-    super(name);
-    this.searchable = searchable;
-    this.weight = weight;
-    this.filter = filter;
-    this.nDocs = nDocs;
-    this.hq = hq;
-    this.i = i;
-    this.starts = starts;
-  }
-
-  public MultiSearcherThread(
-                             Searchable searchable,
-                             Weight weight,
-                             Filter filter,
-                             int nDocs,
-                             FieldDocSortedHitQueue hq,
-                             Sort sort,
-                             int i,
-                             int[] starts,
-                             String name) {
-    super(name);
-    this.searchable = searchable;
-    this.weight = weight;
-    this.filter = filter;
-    this.nDocs = nDocs;
-    this.hq = hq;
-    this.i = i;
-    this.starts = starts;
-    this.sort = sort;
-  }
-
-  public void run() {
-    try {
-      docs = (sort == null) ? searchable.search (weight, filter, nDocs)
-        : searchable.search (weight, filter, nDocs, sort);
-    }
-    // Store the IOException for later use by the caller of this thread
-    catch (IOException ioe) {
-      this.ioe = ioe;
-    }
-    if (ioe == null) {
-      // if we are sorting by fields, we need to tell the field sorted hit queue
-      // the actual type of fields, in case the original list contained AUTO.
-      // if the searchable returns null for fields, we'll have problems.
-      if (sort != null) {
-        ((FieldDocSortedHitQueue)hq).setFields (((TopFieldDocs)docs).fields);
-      }
-      ScoreDoc[] scoreDocs = docs.scoreDocs;
-      for (int j = 0;
-           j < scoreDocs.length;
-           j++) { // merge scoreDocs into hq
-        ScoreDoc scoreDoc = scoreDocs[j];
-        scoreDoc.doc += starts[i]; // convert doc 
-        //it would be so nice if we had a thread-safe insert 
-        synchronized (hq) {
-          if (!hq.insert(scoreDoc))
-            break;
-        } // no more scores > minScore
-      }
-    }
-  }
-
-  public int hits() {
-    return docs.totalHits;
-  }
-
-  public float getMaxScore() {
-      return docs.getMaxScore();
-  }
-  
-  public IOException getIOException() {
-    return ioe;
-  }
-
-}
@@ -58,7 +58,7 @@ public class TermQuery extends Query {
 				return null;
 
 			return new TermScorer(this, termDocs, similarity, reader.norms(term
-					.field()));
+					.field()), reader, term);
 		}
 
 		public Explanation explain(IndexReader reader, int doc)
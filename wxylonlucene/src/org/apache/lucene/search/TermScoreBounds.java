@@ -0,0 +1,161 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+
+/**
+ * The largest frequency and the largest norm of a term over the
+ * documents of one reader, from which {@link TermScorer#maxScore()}
+ * bounds the score of any document containing the term.
+ *
+ * <p>Terms whose bounds the index does not record, see {@link
+ * org.apache.lucene.index.ImpactTermDocs}, have them found by reading
+ * their postings once; these are then cached per reader, for up to
+ * {@link #MAX_TERMS_PER_READER} terms per reader.  Terms whose largest
+ * frequency is recorded but not their largest norm, as the norms were
+ * changed since, are bounded by the largest norm of their field,
+ * cached per reader and field.  The caches of a reader are dropped
+ * once {@link IndexReader#setNorm} changes its norms, see {@link
+ * IndexReader#getNormsVersion()}, or {@link IndexReader#undeleteAll}
+ * brings back documents the bounds did not cover, see {@link
+ * IndexReader#getUndeleteVersion()}.
+ */
+final class TermScoreBounds {
+
+  /** The number of terms whose bounds are kept per reader. */
+  static final int MAX_TERMS_PER_READER = 10000;
+
+  private static final Map readerCache = new WeakHashMap();
+
+  /** The largest frequency of the term in any live document. */
+  final int maxFreq;
+
+  /** The largest norm, compared as unsigned byte, of the field of the
+   *  term in any live document containing it. */
+  final byte maxNorm;
+
+  private TermScoreBounds(int maxFreq, byte maxNorm) {
+    this.maxFreq = maxFreq;
+    this.maxNorm = maxNorm;
+  }
+
+  /** The bounds cached for one reader, as long as its norms are the
+   *  same and no deleted documents were brought back. */
+  private static final class ReaderCache {
+    final long normsVersion;
+    final long undeleteVersion;
+    final Map terms = new LinkedHashMap(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry eldest) {
+        return size() > MAX_TERMS_PER_READER;
+      }
+    };
+    final Map maxNorms = new HashMap();           // field -> Byte
+
+    ReaderCache(long normsVersion, long undeleteVersion) {
+      this.normsVersion = normsVersion;
+      this.undeleteVersion = undeleteVersion;
+    }
+  }
+
+  // must be called holding the readerCache lock
+  private static ReaderCache cache(IndexReader reader) {
+    ReaderCache cache = (ReaderCache) readerCache.get(reader);
+    long normsVersion = reader.getNormsVersion();
+    long undeleteVersion = reader.getUndeleteVersion();
+    if (cache == null || cache.normsVersion != normsVersion
+        || cache.undeleteVersion != undeleteVersion) {
+      cache = new ReaderCache(normsVersion, undeleteVersion);
+      readerCache.put(reader, cache);
+    }
+    return cache;
+  }
+
+  /** Returns the bounds of a term in a reader, reading its postings if
+   *  they are not cached yet. */
+  static TermScoreBounds get(IndexReader reader, Term term) throws IOException {
+    ReaderCache cache;
+    synchronized (readerCache) {
+      cache = cache(reader);
+      TermScoreBounds bounds = (TermScoreBounds) cache.terms.get(term);
+      if (bounds != null)
+        return bounds;
+    }
+
+    // two threads may read the same postings; both get the same result
+    TermScoreBounds bounds = read(reader, term);
+    synchronized (readerCache) {
+      cache.terms.put(term, bounds);
+    }
+    return bounds;
+  }
+
+  /** Returns the largest norm, compared as unsigned byte, of a field
+   *  in any document of a reader. */
+  static byte maxNorm(IndexReader reader, String field) throws IOException {
+    ReaderCache cache;
+    synchronized (readerCache) {
+      cache = cache(reader);
+      Byte maxNorm = (Byte) cache.maxNorms.get(field);
+      if (maxNorm != null)
+        return maxNorm.byteValue();
+    }
+
+    byte[] norms = reader.norms(field);
+    int maxNorm = 0;
+    if (norms != null)
+      for (int i = 0; i < norms.length; i++)
+        if ((norms[i] & 0xFF) > maxNorm)
+          maxNorm = norms[i] & 0xFF;
+    synchronized (readerCache) {
+      cache.maxNorms.put(field, Byte.valueOf((byte) maxNorm));
+    }
+    return (byte) maxNorm;
+  }
+
+  private static TermScoreBounds read(IndexReader reader, Term term) throws IOException {
+    byte[] norms = reader.norms(term.field());
+    int maxFreq = 0;
+    int maxNorm = 0;
+    int[] docs = new int[32];
+    int[] freqs = new int[32];
+    TermDocs termDocs = reader.termDocs(term);
+    try {
+      int count;
+      while ((count = termDocs.read(docs, freqs)) != 0) {
+        for (int i = 0; i < count; i++) {
+          if (freqs[i] > maxFreq)
+            maxFreq = freqs[i];
+          if (norms != null && (norms[docs[i]] & 0xFF) > maxNorm)
+            maxNorm = norms[docs[i]] & 0xFF;
+        }
+      }
+    } finally {
+      termDocs.close();
+    }
+    return new TermScoreBounds(maxFreq, (byte) maxNorm);
+  }
+}
@@ -19,6 +19,9 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.ImpactTermDocs;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 
 /** Expert: A <code>Scorer</code> for documents matching a <code>Term</code>.
@@ -30,6 +33,17 @@ final class TermScorer extends Scorer {
   private float weightValue;
   private int doc;
 
+  private final IndexReader reader;             // for maxScore(), or null
+  private final Term term;
+
+  private boolean haveMaxScore;
+  private float maxScore;
+  private byte maxNorm;                         // bounds the norms of the docs
+
+  private int blockTarget = -1;                 // of the last blockMaxScore()
+  private int blockEnd = -1;
+  private float blockMaxScore;
+
   private final int[] docs = new int[32];         // buffered doc numbers
   private final int[] freqs = new int[32];        // buffered term freqs
   private int pointer;
@@ -46,10 +60,26 @@ final class TermScorer extends Scorer {
    */
   TermScorer(Weight weight, TermDocs td, Similarity similarity,
              byte[] norms) {
+    this(weight, td, similarity, norms, null, null);
+  }
+
+  /** Construct a <code>TermScorer</code> that can bound its scores.
+   * @param weight The weight of the <code>Term</code> in the query.
+   * @param td An iterator over the documents matching the <code>Term</code>.
+   * @param similarity The </code>Similarity</code> implementation to be used for score computations.
+   * @param norms The field norms of the document fields for the <code>Term</code>.
+   * @param reader The reader <code>td</code> iterates over.
+   * @param term The <code>Term</code> <code>td</code> iterates over.
+   * @see #maxScore()
+   */
+  TermScorer(Weight weight, TermDocs td, Similarity similarity,
+             byte[] norms, IndexReader reader, Term term) {
     super(similarity);
     this.weight = weight;
     this.termDocs = td;
     this.norms = norms;
+    this.reader = reader;
+    this.term = term;
     this.weightValue = weight.getValue();
 
     for (int i = 0; i < SCORE_CACHE_SIZE; i++)
@@ -126,6 +156,82 @@ final class TermScorer extends Scorer {
     return raw * Similarity.decodeNorm(norms[doc]); // normalize for field
   }
 
+  /** Returns an upper bound of the score of any document matched by
+   * this scorer, or <code>Float.POSITIVE_INFINITY</code> when none is
+   * known.  The bound is computed from the largest term frequency and
+   * the largest norm of the term in the reader, as recorded in the
+   * index, see {@link ImpactTermDocs}, or else found by {@link
+   * TermScoreBounds}.  It assumes that {@link Similarity#tf(float)} does
+   * not decrease with the frequency, as is the case for {@link
+   * DefaultSimilarity}.
+   */
+  float maxScore() throws IOException {
+    if (!haveMaxScore) {
+      if (reader == null || norms == null) {
+        maxScore = Float.POSITIVE_INFINITY;
+      } else {
+        int maxFreq = 0;
+        if (termDocs instanceof ImpactTermDocs) {
+          ImpactTermDocs impacts = (ImpactTermDocs) termDocs;
+          maxFreq = impacts.maxFreq();
+          maxNorm = impacts.maxNorm();
+        }
+        if (maxFreq == 0) {                     // not recorded in the index
+          TermScoreBounds bounds = TermScoreBounds.get(reader, term);
+          maxFreq = bounds.maxFreq;
+          maxNorm = bounds.maxNorm;
+        } else if (maxNorm == 0) {
+          maxNorm = TermScoreBounds.maxNorm(reader, term.field());
+        }
+        maxScore = bound(maxFreq, maxNorm);
+      }
+      haveMaxScore = true;
+    }
+    return maxScore;
+  }
+
+  /** Returns an upper bound of the scores of the documents matched by
+   * this scorer from <code>target</code> up to and including {@link
+   * #blockEnd()}.  It is at most {@link #maxScore()}, and lower where the
+   * index records the largest term frequency and norm of the postings
+   * around <code>target</code>, see {@link
+   * ImpactTermDocs#blockMaxFreq(int)}.  <code>target</code> must not be
+   * greater than that of any later call of {@link #skipTo(int)}.
+   */
+  float blockMaxScore(int target) throws IOException {
+    if (target >= blockTarget && target <= blockEnd)
+      return blockMaxScore;
+
+    float max = maxScore();
+    int freq = 0;
+    byte norm = 0;
+    if (max != Float.POSITIVE_INFINITY && termDocs instanceof ImpactTermDocs) {
+      ImpactTermDocs impacts = (ImpactTermDocs) termDocs;
+      freq = impacts.blockMaxFreq(target);
+      norm = impacts.blockMaxNorm();
+      blockEnd = impacts.blockEnd();
+    } else {
+      blockEnd = Integer.MAX_VALUE;
+    }
+    blockTarget = target;
+    if (freq > 0)
+      blockMaxScore = Math.min(max, bound(freq, norm != 0 ? norm : maxNorm));
+    else
+      blockMaxScore = max;
+    return blockMaxScore;
+  }
+
+  /** Returns the last document the last {@link #blockMaxScore(int)}
+   * applies to. */
+  int blockEnd() {
+    return blockEnd;
+  }
+
+  private float bound(int freq, byte norm) {
+    float max = getSimilarity().tf(freq) * weightValue * Similarity.decodeNorm(norm);
+    return max > 0.0f ? max : 0.0f;             // all scores <= 0 for negative weights
+  }
+
   /** Skips to the first match beyond the current whose document number is
    * greater than or equal to a given target. 
    * <br>The implementation uses {@link TermDocs#skipTo(int)}.
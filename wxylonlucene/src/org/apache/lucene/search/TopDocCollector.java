@@ -36,6 +36,11 @@ public class TopDocCollector extends HitCollector {
   
   /** The priority queue which holds the top-scoring documents. */
   protected PriorityQueue hq;
+
+  private boolean skipNonCompetitive;
+
+  // true once a hit was pushed out of (or kept out of) hq
+  private boolean queueFull;
     
   /** Construct to collect a given number of hits.
    * @param numHits the maximum number of hits to collect
@@ -74,9 +79,43 @@ public class TopDocCollector extends HitCollector {
         return;
       }
       reusableSD = (ScoreDoc) hq.insertWithOverflow(reusableSD);
+      if (reusableSD != null)
+        queueFull = true;
     }
   }
 
+  /** Lets scorers that support it skip the documents that cannot
+   * score high enough to be collected into the top hits, see {@link
+   * #minCompetitiveScore()}.  Currently {@link BooleanQuery}s made of
+   * only optional {@link TermQuery} clauses do.  The hits returned are
+   * the same, but {@link #getTotalHits()} then only counts the documents
+   * that were collected, so it is a lower bound of the number of
+   * matches.  Their scores are summed in another order and may differ
+   * in the last bit, so hits with (nearly) equal scores may be ordered
+   * differently.  Off by default.
+   */
+  public void setSkipNonCompetitive(boolean skipNonCompetitive) {
+    this.skipNonCompetitive = skipNonCompetitive;
+  }
+
+  /** @see #setSkipNonCompetitive(boolean) */
+  public boolean getSkipNonCompetitive() {
+    return skipNonCompetitive;
+  }
+
+  /** Returns the score a document must exceed to make it into the top
+   * hits, or <code>Float.NEGATIVE_INFINITY</code> while any score will
+   * do.  As documents are collected in increasing order, one scoring
+   * exactly this much loses the tie to the hits already collected.
+   * Collectors not ordering by score always return
+   * <code>Float.NEGATIVE_INFINITY</code>.
+   */
+  public float minCompetitiveScore() {
+    if (!queueFull || !(hq instanceof HitQueue))
+      return Float.NEGATIVE_INFINITY;
+    return ((ScoreDoc) hq.top()).score;
+  }
+
   /** The total number of documents that matched this query. */
   public int getTotalHits() { return totalHits; }
 
@@ -38,6 +38,31 @@ public class TopDocs implements java.io.Serializable {
   public void setMaxScore(float maxScore) {
       this.maxScore=maxScore;
   }
+
+  /** Expert: Indexes of the sub-searchers left out because they did not
+   * answer in time, or null if no hits are missing. */
+  private int[] timedOutSearchables;
+
+  /** Expert: Returns the indexes, in {@link MultiSearcher#getSearchables()},
+   * of the sub-searchers whose hits are missing because they did not answer
+   * in time, or null if the hits are complete.
+   * @see ParallelMultiSearcher#search(Query,Filter,int,long) */
+  public int[] getTimedOutSearchables() {
+      return timedOutSearchables;
+  }
+
+  /** Expert: Sets the indexes of the sub-searchers that did not answer in
+   * time. */
+  public void setTimedOutSearchables(int[] timedOutSearchables) {
+      this.timedOutSearchables=timedOutSearchables;
+  }
+
+  /** Returns true if the hits of some sub-searchers are missing because they
+   * did not answer in time.
+   * @see #getTimedOutSearchables() */
+  public boolean isPartial() {
+      return timedOutSearchables != null;
+  }
   
   /** Expert: Constructs a TopDocs.*/
   public TopDocs(int totalHits, ScoreDoc[] scoreDocs, float maxScore) {
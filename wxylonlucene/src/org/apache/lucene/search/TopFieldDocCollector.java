@@ -22,8 +22,10 @@ import java.io.IOException;
 import org.apache.lucene.index.IndexReader;
 
 /** A {@link HitCollector} implementation that collects the top-sorting
- * documents, returning them as a {@link TopFieldDocs}.  This is used by {@link
- * IndexSearcher} to implement {@link TopFieldDocs}-based search.
+ * documents, returning them as a {@link TopFieldDocs}.  It sorts by
+ * {@link FieldCache} values of the whole index; {@link IndexSearcher}
+ * uses {@link MultiReaderTopFieldDocCollector} instead, which only
+ * loads them per segment.
  *
  * <p>This may be extended, overriding the collect method to, e.g.,
  * conditionally invoke <code>super()</code> in order to filter which
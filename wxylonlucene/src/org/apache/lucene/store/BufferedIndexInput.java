@@ -19,13 +19,27 @@ package org.apache.lucene.store;
 
 import java.io.IOException;
 
-/** Base implementation class for buffered {@link IndexInput}. */
+/** Base implementation class for buffered {@link IndexInput}.
+ *
+ * <p>If a maximum buffer size larger than the buffer size is
+ * set (see {@link #setMaxBufferSize}), the input reads ahead
+ * adaptively: every refill that continues exactly where the
+ * previous one stopped reads twice as much, up to the
+ * maximum, while the first refill after a seek reads just
+ * the buffer size again.  Sequential scans (merges, {@link
+ * org.apache.lucene.index.CheckIndex}, stored field scans)
+ * thus need few large {@link #readInternal} calls, while
+ * random access does not read more than it did before.
+ */
 public abstract class BufferedIndexInput extends IndexInput {
 
   /** Default buffer size */
   public static final int BUFFER_SIZE = 1024;
 
   private int bufferSize = BUFFER_SIZE;
+  private int maxBufferSize = 0;          // <= bufferSize: no read-ahead
+  private int readAheadSize;              // size of the last adaptive refill
+  private long lastRefillEnd = -1;        // file position after the last refill
 
   protected byte[] buffer;
 
@@ -39,6 +53,61 @@ public abstract class BufferedIndexInput extends IndexInput {
     return buffer[bufferPosition++];
   }
 
+  public int readVInt() throws IOException {
+    if (bufferLength - bufferPosition >= 5)
+      return decodeVInt();
+    return super.readVInt();
+  }
+
+  public void readVInts(int[] dst, int offset, int count) throws IOException {
+    final int end = offset + count;
+    while (offset < end) {
+      // decode straight from the buffer as long as a whole
+      // vInt is guaranteed to be in it
+      final int limit = bufferLength - 5;
+      while (offset < end && bufferPosition <= limit)
+        dst[offset++] = decodeVInt();
+      if (offset < end)
+        dst[offset++] = super.readVInt();   // may straddle a refill
+    }
+  }
+
+  public long readVLong() throws IOException {
+    if (bufferLength - bufferPosition >= 9) {
+      byte b = buffer[bufferPosition++];
+      long i = b & 0x7F;
+      for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+        if (shift > 56)
+          throw new IOException("Invalid vLong detected (too many bits)");
+        b = buffer[bufferPosition++];
+        i |= (b & 0x7FL) << shift;
+      }
+      return i;
+    }
+    return super.readVLong();
+  }
+
+  // Caller must ensure at least 5 bytes are left in the buffer
+  private int decodeVInt() throws IOException {
+    byte b = buffer[bufferPosition++];
+    if (b >= 0) return b;
+    int i = b & 0x7F;
+    b = buffer[bufferPosition++];
+    i |= (b & 0x7F) << 7;
+    if (b >= 0) return i;
+    b = buffer[bufferPosition++];
+    i |= (b & 0x7F) << 14;
+    if (b >= 0) return i;
+    b = buffer[bufferPosition++];
+    i |= (b & 0x7F) << 21;
+    if (b >= 0) return i;
+    b = buffer[bufferPosition++];
+    // only the low 4 bits of the fifth byte may be set
+    i |= (b & 0x0F) << 28;
+    if ((b & 0xF0) == 0) return i;
+    throw new IOException("Invalid vInt detected (too many bits)");
+  }
+
   public BufferedIndexInput() {}
 
   /** Inits BufferedIndexInput with a specific bufferSize */
@@ -49,7 +118,7 @@ public abstract class BufferedIndexInput extends IndexInput {
 
   /** Change the buffer size used by this IndexInput */
   public void setBufferSize(int newSize) {
-    assert buffer == null || bufferSize == buffer.length: "buffer=" + buffer + " bufferSize=" + bufferSize + " buffer.length=" + (buffer != null ? buffer.length : 0);
+    assert buffer == null || bufferSize <= buffer.length: "buffer=" + buffer + " bufferSize=" + bufferSize + " buffer.length=" + (buffer != null ? buffer.length : 0);
     if (newSize != bufferSize) {
       checkBufferSize(newSize);
       bufferSize = newSize;
@@ -83,6 +152,19 @@ public abstract class BufferedIndexInput extends IndexInput {
     return bufferSize;
   }
 
+  /** Sets the size up to which sequential reads grow the
+   *  buffer.  Values not larger than the buffer size turn
+   *  read-ahead off. */
+  public void setMaxBufferSize(int maxBufferSize) {
+    this.maxBufferSize = maxBufferSize;
+    lastRefillEnd = -1;
+  }
+
+  /** Returns the maximum read-ahead buffer size.  @see #setMaxBufferSize */
+  public int getMaxBufferSize() {
+    return maxBufferSize;
+  }
+
   private void checkBufferSize(int bufferSize) {
     if (bufferSize <= 0)
       throw new IllegalArgumentException("bufferSize must be greater than 0 (got " + bufferSize + ")");
@@ -143,7 +225,13 @@ public abstract class BufferedIndexInput extends IndexInput {
 
   private void refill() throws IOException {
     long start = bufferStart + bufferPosition;
-    long end = start + bufferSize;
+    int size = bufferSize;
+    if (maxBufferSize > bufferSize) {
+      if (start == lastRefillEnd && readAheadSize > 0)
+        size = readAheadSize >= (maxBufferSize >> 1) ? maxBufferSize : readAheadSize << 1;
+      readAheadSize = size;
+    }
+    long end = start + size;
     if (end > length())				  // don't read past EOF
       end = length();
     int newLength = (int)(end - start);
@@ -151,10 +239,13 @@ public abstract class BufferedIndexInput extends IndexInput {
       throw new IOException("read past EOF");
 
     if (buffer == null) {
-      newBuffer(new byte[bufferSize]);  // allocate buffer lazily
+      newBuffer(new byte[size]);  // allocate buffer lazily
       seekInternal(bufferStart);
-    }
+    } else if (buffer.length < newLength)
+      newBuffer(new byte[size]);  // grow for read-ahead
     readInternal(buffer, 0, newLength);
+    lastRefillEnd = end;
+
     bufferLength = newLength;
     bufferStart = start;
     bufferPosition = 0;
@@ -195,6 +286,8 @@ public abstract class BufferedIndexInput extends IndexInput {
     clone.bufferLength = 0;
     clone.bufferPosition = 0;
     clone.bufferStart = getFilePointer();
+    clone.readAheadSize = 0;
+    clone.lastRefillEnd = -1;
 
     return clone;
   }
@@ -21,12 +21,22 @@ import java.io.IOException;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
-/** Writes bytes through to a primary IndexOutput, computing
- *  checksum as it goes. Note that you cannot use seek(). */
+/** Reads bytes through to a primary IndexInput, computing
+ *  checksum as it goes. Note that you cannot use seek().
+ *
+ *  Single bytes, as read by readInt, readVInt, readString
+ *  etc., are collected and added to the checksum a block at
+ *  a time instead of one by one. */
 public class ChecksumIndexInput extends IndexInput {
   IndexInput main;
   Checksum digest;
 
+  static final int PENDING_SIZE = 1024;
+
+  // bytes read but not yet added to digest
+  private final byte[] pending = new byte[PENDING_SIZE];
+  private int pendingUpto;
+
   public ChecksumIndexInput(IndexInput main) {
     this.main = main;
     digest = new CRC32();
@@ -34,21 +44,54 @@ public class ChecksumIndexInput extends IndexInput {
 
   public byte readByte() throws IOException {
     final byte b = main.readByte();
-    digest.update(b);
+    if (pendingUpto == pending.length)
+      updateDigest();
+    pending[pendingUpto++] = b;
     return b;
   }
 
   public void readBytes(byte[] b, int offset, int len)
     throws IOException {
     main.readBytes(b, offset, len);
+    updateDigest();
     digest.update(b, offset, len);
   }
 
-  
+  private void updateDigest() {
+    if (pendingUpto > 0) {
+      digest.update(pending, 0, pendingUpto);
+      pendingUpto = 0;
+    }
+  }
+
   public long getChecksum() {
+    updateDigest();
     return digest.getValue();
   }
 
+  /** Size of the reads {@link #checksum} does. */
+  public static final int CHECKSUM_BUFFER_SIZE = 64*1024;
+
+  /** Returns the CRC32 of the whole file, reading it once
+   *  from start to end in large blocks. */
+  public static long checksum(Directory dir, String name) throws IOException {
+    final IndexInput in = dir.openInput(name, CHECKSUM_BUFFER_SIZE);
+    try {
+      final Checksum digest = new CRC32();
+      final byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+      long left = in.length();
+      while (left > 0) {
+        final int chunk = left > buffer.length ? buffer.length : (int) left;
+        in.readBytes(buffer, 0, chunk);
+        digest.update(buffer, 0, chunk);
+        left -= chunk;
+      }
+      return digest.getValue();
+    } finally {
+      in.close();
+    }
+  }
+
   public void close() throws IOException {
     main.close();
   }
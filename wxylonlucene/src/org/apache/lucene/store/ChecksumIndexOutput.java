@@ -22,27 +22,46 @@ import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
 /** Writes bytes through to a primary IndexOutput, computing
- *  checksum.  Note that you cannot use seek().*/
+ *  checksum.  Note that you cannot use seek().
+ *
+ *  Single bytes, as written by writeInt, writeVInt,
+ *  writeString etc., are collected and added to the
+ *  checksum a block at a time instead of one by one. */
 public class ChecksumIndexOutput extends IndexOutput {
   IndexOutput main;
   Checksum digest;
 
+  // bytes written but not yet added to digest
+  private final byte[] pending = new byte[ChecksumIndexInput.PENDING_SIZE];
+  private int pendingUpto;
+
   public ChecksumIndexOutput(IndexOutput main) {
     this.main = main;
     digest = new CRC32();
   }
 
   public void writeByte(byte b) throws IOException {
-    digest.update(b);
+    if (pendingUpto == pending.length)
+      updateDigest();
+    pending[pendingUpto++] = b;
     main.writeByte(b);
   }
 
   public void writeBytes(byte[] b, int offset, int length) throws IOException {
+    updateDigest();
     digest.update(b, offset, length);
     main.writeBytes(b, offset, length);
   }
 
+  private void updateDigest() {
+    if (pendingUpto > 0) {
+      digest.update(pending, 0, pendingUpto);
+      pendingUpto = 0;
+    }
+  }
+
   public long getChecksum() {
+    updateDigest();
     return digest.getValue();
   }
 
@@ -0,0 +1,113 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases the native memory behind a direct or mapped
+ * {@link ByteBuffer} without waiting for it to be garbage
+ * collected.  The JRE has no public API for this, so we
+ * reach for the hidden cleaner via reflection and report
+ * through {@link #UNMAP_SUPPORTED} whether that works on
+ * the running JVM.
+ *
+ * <p><b>NOTE:</b> any access to a buffer (or to one of its
+ * duplicates or slices) after it was cleaned may crash the
+ * JVM, so callers must make sure it is no longer in use.
+ */
+final class DirectBufferCleaner {
+
+  private static final Class[] NO_PARAM_TYPES = new Class[0];
+  private static final Object[] NO_PARAMS = new Object[0];
+
+  // Java 9 and later: sun.misc.Unsafe.invokeCleaner(ByteBuffer)
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+
+  /** true if {@link #clean} can actually release memory on this JVM. */
+  static final boolean UNMAP_SUPPORTED;
+
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    try {
+      final Class unsafeClass = Class.forName("sun.misc.Unsafe");
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", new Class[] { ByteBuffer.class });
+      final Field f = unsafeClass.getDeclaredField("theUnsafe");
+      f.setAccessible(true);
+      unsafe = f.get(null);
+    } catch (Throwable t) {
+      unsafe = null;
+      invokeCleaner = null;
+    }
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+
+    boolean v = INVOKE_CLEANER != null;
+    if (!v) {
+      // Java 1.4 - 8: ((sun.nio.ch.DirectBuffer) buffer).cleaner().clean()
+      try {
+        Class.forName("sun.misc.Cleaner");
+        Class.forName("java.nio.DirectByteBuffer").getMethod("cleaner", NO_PARAM_TYPES);
+        v = true;
+      } catch (Throwable t) {
+        v = false;
+      }
+    }
+    UNMAP_SUPPORTED = v;
+  }
+
+  private DirectBufferCleaner() {}
+
+  /**
+   * Frees the memory of the given direct buffer, which must
+   * be the buffer returned by {@link ByteBuffer#allocateDirect}
+   * or {@link java.nio.channels.FileChannel#map} (not a
+   * duplicate or slice of it).  Does nothing if
+   * {@link #UNMAP_SUPPORTED} is false or the buffer is not
+   * direct, leaving the memory to the garbage collector.
+   */
+  static void clean(final ByteBuffer buffer) throws IOException {
+    if (!UNMAP_SUPPORTED || buffer == null || !buffer.isDirect())
+      return;
+    try {
+      if (INVOKE_CLEANER != null) {
+        INVOKE_CLEANER.invoke(UNSAFE, new Object[] { buffer });
+      } else {
+        final Method getCleanerMethod = buffer.getClass().getMethod("cleaner", NO_PARAM_TYPES);
+        getCleanerMethod.setAccessible(true);
+        final Object cleaner = getCleanerMethod.invoke(buffer, NO_PARAMS);
+        if (cleaner != null)
+          cleaner.getClass().getMethod("clean", NO_PARAM_TYPES).invoke(cleaner, NO_PARAMS);
+      }
+    } catch (InvocationTargetException e) {
+      final IOException ioe = new IOException("unable to release direct buffer");
+      ioe.initCause(e.getCause());
+      throw ioe;
+    } catch (Exception e) {
+      final IOException ioe = new IOException("unable to release direct buffer");
+      ioe.initCause(e);
+      throw ioe;
+    }
+  }
+}
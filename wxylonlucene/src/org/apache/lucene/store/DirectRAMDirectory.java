@@ -0,0 +1,310 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A memory-resident {@link Directory} like {@link
+ * RAMDirectory}, except that file contents live outside of
+ * the Java heap, so that large RAM-loaded indexes do not
+ * inflate the heap and garbage collection pauses.
+ *
+ * <p>Memory is allocated from the OS in slabs of {@link
+ * #getSlabSize} bytes with {@link ByteBuffer#allocateDirect}
+ * and handed out to files in blocks of {@link
+ * #getBlockSize} bytes.  Blocks of deleted files are
+ * recycled once the output and every input opened on the
+ * file are closed.  Clones of an input do not keep the
+ * file alive: they must not be used once their input was
+ * closed, and throw {@link AlreadyClosedException} rather
+ * than read recycled blocks when they cross to another
+ * block after the file was deleted.  All slabs are
+ * returned to the OS on {@link #close} (see
+ * {@link #isReleaseSupported}).  The Java heap only holds
+ * the file map and one small buffer object per block.
+ *
+ * <p>Direct memory is limited by the JVM's
+ * <code>-XX:MaxDirectMemorySize</code> option, which must be
+ * large enough to hold the whole index.
+ *
+ * <p><b>NOTE:</b> this directory must not be closed while
+ * inputs opened from it, or their clones, are still in use.
+ */
+public class DirectRAMDirectory extends Directory {
+
+  /** Default size of a block handed out to a file. */
+  public static final int DEFAULT_BLOCK_SIZE = 8192;
+
+  /** Default size of a slab allocated from the OS. */
+  public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+  private final int blockSize;
+  private final int slabSize;
+
+  Map fileMap = new ConcurrentHashMap();
+
+  // All guarded by this
+  private final List slabs = new ArrayList();
+  private final List freeBlocks = new ArrayList();
+  private ByteBuffer currentSlab;
+  private long sizeInBytes;
+
+  /** Constructs an empty {@link Directory} with the
+   *  default block and slab sizes. */
+  public DirectRAMDirectory() {
+    this(DEFAULT_BLOCK_SIZE, DEFAULT_SLAB_SIZE);
+  }
+
+  /**
+   * Constructs an empty {@link Directory}.
+   * @param blockSize unit of allocation for a file
+   * @param slabSize unit of allocation from the OS; must be
+   *        a multiple of blockSize
+   */
+  public DirectRAMDirectory(int blockSize, int slabSize) {
+    if (blockSize <= 0)
+      throw new IllegalArgumentException("blockSize must be greater than 0 (got " + blockSize + ")");
+    if (slabSize < blockSize || slabSize % blockSize != 0)
+      throw new IllegalArgumentException("slabSize must be a multiple of blockSize (got " + slabSize + ")");
+    this.blockSize = blockSize;
+    this.slabSize = slabSize;
+    setLockFactory(new SingleInstanceLockFactory());
+  }
+
+  /**
+   * Creates a new <code>DirectRAMDirectory</code> instance
+   * from a different <code>Directory</code> implementation.
+   * This can be used to load a disk-based index into
+   * memory.
+   *
+   * @param dir a <code>Directory</code> value
+   * @exception IOException if an error occurs
+   */
+  public DirectRAMDirectory(Directory dir) throws IOException {
+    this(dir, false);
+  }
+
+  /**
+   * Creates a new <code>DirectRAMDirectory</code> instance
+   * from the {@link FSDirectory}.
+   *
+   * @param dir a <code>File</code> specifying the index directory
+   */
+  public DirectRAMDirectory(File dir) throws IOException {
+    this(FSDirectory.getDirectory(dir), true);
+  }
+
+  /**
+   * Creates a new <code>DirectRAMDirectory</code> instance
+   * from the {@link FSDirectory}.
+   *
+   * @param dir a <code>String</code> specifying the full index directory path
+   */
+  public DirectRAMDirectory(String dir) throws IOException {
+    this(FSDirectory.getDirectory(dir), true);
+  }
+
+  private DirectRAMDirectory(Directory dir, boolean closeDir) throws IOException {
+    this();
+    Directory.copy(dir, this, closeDir);
+  }
+
+  /** Returns the size of the blocks files are made of. */
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /** Returns the size of the slabs allocated from the OS. */
+  public int getSlabSize() {
+    return slabSize;
+  }
+
+  /** Returns true if {@link #close} and deleted files
+   *  release direct memory immediately on this JVM,
+   *  instead of when the garbage collector gets to it. */
+  public static boolean isReleaseSupported() {
+    return DirectBufferCleaner.UNMAP_SUPPORTED;
+  }
+
+  public final String[] list() {
+    ensureOpen();
+    Set fileNames = fileMap.keySet();
+    List names = new ArrayList(fileNames.size());
+    Iterator it = fileNames.iterator();
+    while (it.hasNext())
+      names.add(it.next());
+    return (String[]) names.toArray(new String[names.size()]);
+  }
+
+  public final boolean fileExists(String name) {
+    ensureOpen();
+    return fileMap.containsKey(name);
+  }
+
+  public final long fileModified(String name) throws IOException {
+    ensureOpen();
+    return getFile(name).getLastModified();
+  }
+
+  public void touchFile(String name) throws IOException {
+    ensureOpen();
+    DirectRAMFile file = getFile(name);
+    long ts2, ts1 = System.currentTimeMillis();
+    do {
+      try {
+        Thread.sleep(0, 1);
+      } catch (InterruptedException e) {
+      }
+      ts2 = System.currentTimeMillis();
+    } while (ts1 == ts2);
+    file.setLastModified(ts2);
+  }
+
+  public final long fileLength(String name) throws IOException {
+    ensureOpen();
+    return getFile(name).getLength();
+  }
+
+  /** Return total size in bytes of all blocks currently
+   *  held by files, including deleted files that are still
+   *  open. */
+  public synchronized final long sizeInBytes() {
+    ensureOpen();
+    return sizeInBytes;
+  }
+
+  /** Return total size in bytes of direct memory allocated
+   *  from the OS. */
+  public synchronized final long allocatedBytes() {
+    ensureOpen();
+    return ((long) slabs.size()) * slabSize;
+  }
+
+  /** Removes an existing file in the directory.  Its blocks
+   *  are recycled once its output and all inputs opened on
+   *  it are closed, whether or not their clones are. */
+  public synchronized void deleteFile(String name) throws IOException {
+    ensureOpen();
+    DirectRAMFile file = (DirectRAMFile) fileMap.remove(name);
+    if (file == null)
+      throw new FileNotFoundException(name);
+    file.delete();
+  }
+
+  /** @deprecated */
+  @Deprecated
+  public synchronized final void renameFile(String from, String to) throws IOException {
+    ensureOpen();
+    DirectRAMFile fromFile = (DirectRAMFile) fileMap.get(from);
+    if (fromFile == null)
+      throw new FileNotFoundException(from);
+    DirectRAMFile toFile = (DirectRAMFile) fileMap.put(to, fromFile);
+    if (toFile != null)
+      toFile.delete();
+    fileMap.remove(from);
+  }
+
+  public IndexOutput createOutput(String name) throws IOException {
+    ensureOpen();
+    DirectRAMFile file = new DirectRAMFile(this);
+    synchronized (this) {
+      file.incRef();
+      DirectRAMFile existing = (DirectRAMFile) fileMap.put(name, file);
+      if (existing != null)
+        existing.delete();
+    }
+    return new DirectRAMOutputStream(file);
+  }
+
+  public IndexInput openInput(String name) throws IOException {
+    ensureOpen();
+    DirectRAMFile file;
+    synchronized (this) {
+      // hold the lock so the file cannot be released before we incRef
+      file = getFile(name);
+      file.incRef();
+    }
+    return new DirectRAMInputStream(file);
+  }
+
+  /** Closes the store and returns all direct memory to the
+   *  OS. */
+  public synchronized void close() throws IOException {
+    if (!isOpen)
+      return;
+    isOpen = false;
+    fileMap = null;
+    freeBlocks.clear();
+    currentSlab = null;
+    sizeInBytes = 0;
+    try {
+      for (int i = 0; i < slabs.size(); i++)
+        DirectBufferCleaner.clean((ByteBuffer) slabs.get(i));
+    } finally {
+      slabs.clear();
+    }
+  }
+
+  private DirectRAMFile getFile(String name) throws FileNotFoundException {
+    DirectRAMFile file = (DirectRAMFile) fileMap.get(name);
+    if (file == null)
+      throw new FileNotFoundException(name);
+    return file;
+  }
+
+  /** Hands out a zeroed-position block of {@link #getBlockSize} bytes. */
+  synchronized ByteBuffer allocateBlock() {
+    ensureOpen();
+    final ByteBuffer block;
+    final int numFree = freeBlocks.size();
+    if (numFree > 0) {
+      block = (ByteBuffer) freeBlocks.remove(numFree-1);
+      block.clear();
+    } else {
+      if (currentSlab == null || !currentSlab.hasRemaining()) {
+        currentSlab = ByteBuffer.allocateDirect(slabSize);
+        slabs.add(currentSlab);
+      }
+      currentSlab.limit(currentSlab.position() + blockSize);
+      block = currentSlab.slice();
+      currentSlab.position(currentSlab.limit());
+      currentSlab.limit(currentSlab.capacity());
+    }
+    sizeInBytes += blockSize;
+    return block;
+  }
+
+  /** Takes back the blocks of a file that was deleted and closed. */
+  synchronized void releaseBlocks(ByteBuffer[] blocks, int count) {
+    if (!isOpen)
+      return;
+    for (int i = 0; i < count; i++)
+      freeBlocks.add(blocks[i]);
+    sizeInBytes -= ((long) count) * blockSize;
+  }
+}
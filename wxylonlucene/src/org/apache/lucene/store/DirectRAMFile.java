@@ -0,0 +1,142 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * A file in a {@link DirectRAMDirectory}: a list of fixed
+ * size blocks of direct memory handed out by the directory.
+ * Blocks are published to readers the same way as in
+ * {@link RAMFile}.  The open output and all inputs opened
+ * by the directory, but not their clones, hold a reference,
+ * so that a deleted file only gives its blocks back to the
+ * directory once the last of them is closed.
+ */
+class DirectRAMFile {
+
+  private final DirectRAMDirectory directory;
+  final int blockSize;
+
+  private volatile ByteBuffer[] buffers = new ByteBuffer[4];
+  private volatile int numBuffers;
+
+  volatile long length;
+
+  private volatile long lastModified = System.currentTimeMillis();
+
+  // Guarded by directory; released is also read without
+  // the lock by clones of inputs, see isReleased
+  private int refCount;
+  private boolean deleted;
+  private volatile boolean released;
+
+  DirectRAMFile(DirectRAMDirectory directory) {
+    this.directory = directory;
+    this.blockSize = directory.getBlockSize();
+  }
+
+  long getLength() {
+    return length;
+  }
+
+  void setLength(long length) {
+    this.length = length;
+  }
+
+  long getLastModified() {
+    return lastModified;
+  }
+
+  void setLastModified(long lastModified) {
+    this.lastModified = lastModified;
+  }
+
+  final ByteBuffer addBuffer() {
+    synchronized (directory) {
+      final ByteBuffer buffer = directory.allocateBlock();
+      final int count = numBuffers;
+      ByteBuffer[] current = buffers;
+      if (count == current.length) {
+        ByteBuffer[] grown = new ByteBuffer[count + (count >> 1) + 1];
+        System.arraycopy(current, 0, grown, 0, count);
+        grown[count] = buffer;
+        buffers = grown;
+      } else
+        current[count] = buffer;
+      numBuffers = count+1;
+      return buffer;
+    }
+  }
+
+  // Lock-free: callers must only ask for index < numBuffers()
+  final ByteBuffer getBuffer(int index) {
+    final int count = numBuffers;
+    assert index < count: "index=" + index + " numBuffers=" + count;
+    return buffers[index];
+  }
+
+  final int numBuffers() {
+    return numBuffers;
+  }
+
+  /** Bytes of direct memory held by this file. */
+  long sizeInBytes() {
+    return ((long) numBuffers) * blockSize;
+  }
+
+  void incRef() {
+    synchronized (directory) {
+      assert !released;
+      refCount++;
+    }
+  }
+
+  void decRef() {
+    synchronized (directory) {
+      assert refCount > 0;
+      if (--refCount == 0 && deleted)
+        release();
+    }
+  }
+
+  /** True once the blocks went back to the directory. */
+  boolean isReleased() {
+    return released;
+  }
+
+  /** Called once the file is no longer reachable by name. */
+  void delete() {
+    synchronized (directory) {
+      deleted = true;
+      if (refCount == 0)
+        release();
+    }
+  }
+
+  private void release() {
+    if (!released) {
+      released = true;
+      final int count = numBuffers;
+      final ByteBuffer[] blocks = buffers;
+      numBuffers = 0;
+      buffers = new ByteBuffer[0];
+      directory.releaseBlocks(blocks, count);
+    }
+  }
+}
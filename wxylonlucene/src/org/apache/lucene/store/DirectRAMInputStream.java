@@ -0,0 +1,142 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link IndexInput} reading a {@link DirectRAMFile}.
+ * Each instance reads through its own duplicate of the
+ * current block, so clones never share position state.
+ *
+ * <p>Only the input opened by the directory holds a
+ * reference on the file; clones are often never closed.
+ * Once the file was deleted and that input closed, its
+ * blocks are recycled and clones throw {@link
+ * AlreadyClosedException} when they move to another block.
+ */
+class DirectRAMInputStream extends IndexInput implements Cloneable {
+
+  private final DirectRAMFile file;
+  private final long length;
+  private final int blockSize;
+
+  private ByteBuffer currentBuffer;
+  private int currentBufferIndex;
+  private long bufferStart;
+
+  private boolean closed;
+  private boolean isClone;
+
+  DirectRAMInputStream(DirectRAMFile f) throws IOException {
+    file = f;
+    length = file.length;
+    blockSize = file.blockSize;
+    if (length/blockSize >= Integer.MAX_VALUE) {
+      throw new IOException("Too large DirectRAMFile! "+length);
+    }
+
+    // make sure that we switch to the
+    // first needed buffer lazily
+    currentBufferIndex = -1;
+    currentBuffer = null;
+  }
+
+  public void close() {
+    // only the original holds a reference on the file
+    if (!isClone && !closed) {
+      closed = true;
+      file.decRef();
+    }
+  }
+
+  public long length() {
+    return length;
+  }
+
+  public byte readByte() throws IOException {
+    if (currentBuffer == null || !currentBuffer.hasRemaining()) {
+      currentBufferIndex++;
+      switchCurrentBuffer(true);
+    }
+    return currentBuffer.get();
+  }
+
+  public void readBytes(byte[] b, int offset, int len) throws IOException {
+    while (len > 0) {
+      if (currentBuffer == null || !currentBuffer.hasRemaining()) {
+        currentBufferIndex++;
+        switchCurrentBuffer(true);
+      }
+
+      int remainInBuffer = currentBuffer.remaining();
+      int bytesToCopy = len < remainInBuffer ? len : remainInBuffer;
+      currentBuffer.get(b, offset, bytesToCopy);
+      offset += bytesToCopy;
+      len -= bytesToCopy;
+    }
+  }
+
+  private final void switchCurrentBuffer(boolean enforceEOF) throws IOException {
+    if (file.isReleased())
+      throw new AlreadyClosedException("this file was deleted and its input closed");
+    bufferStart = (long) blockSize * (long) currentBufferIndex;
+    if (bufferStart >= length || currentBufferIndex >= file.numBuffers()) {
+      // end of file reached, no more buffers left
+      if (enforceEOF)
+        throw new IOException("Read past EOF");
+      else {
+        // Force EOF if a read takes place at this position
+        currentBuffer = EMPTY;
+      }
+    } else {
+      currentBuffer = file.getBuffer(currentBufferIndex).duplicate();
+      long buflen = length - bufferStart;
+      currentBuffer.position(0);
+      currentBuffer.limit(buflen > blockSize ? blockSize : (int) buflen);
+    }
+  }
+
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+  public long getFilePointer() {
+    return currentBufferIndex < 0 ? 0 : bufferStart + currentBuffer.position();
+  }
+
+  public void seek(long pos) throws IOException {
+    if (currentBuffer==null || pos < bufferStart || pos >= bufferStart + currentBuffer.limit()) {
+      currentBufferIndex = (int) (pos / blockSize);
+      switchCurrentBuffer(false);
+    }
+    if (currentBuffer != EMPTY)
+      currentBuffer.position((int) (pos % blockSize));
+    else
+      bufferStart = pos;
+  }
+
+  public Object clone() {
+    if (file.isReleased())
+      throw new AlreadyClosedException("this file was deleted and its input closed");
+    DirectRAMInputStream clone = (DirectRAMInputStream) super.clone();
+    clone.isClone = true;
+    if (currentBuffer != null && currentBuffer != EMPTY)
+      clone.currentBuffer = currentBuffer.duplicate();
+    return clone;
+  }
+}
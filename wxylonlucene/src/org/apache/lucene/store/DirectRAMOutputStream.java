@@ -0,0 +1,124 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link IndexOutput} writing a {@link DirectRAMFile}.
+ */
+class DirectRAMOutputStream extends IndexOutput {
+
+  private final DirectRAMFile file;
+  private final int blockSize;
+
+  private ByteBuffer currentBuffer;
+  private int currentBufferIndex;
+  private long bufferStart;
+
+  private boolean closed;
+
+  DirectRAMOutputStream(DirectRAMFile f) {
+    file = f;
+    blockSize = file.blockSize;
+
+    // make sure that we switch to the
+    // first needed buffer lazily
+    currentBufferIndex = -1;
+    currentBuffer = null;
+  }
+
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      flush();
+      file.decRef();
+    }
+  }
+
+  public void seek(long pos) throws IOException {
+    // set the file length in case we seek back
+    // and flush() has not been called yet
+    setFileLength();
+    if (currentBuffer == null || pos < bufferStart || pos >= bufferStart + blockSize) {
+      currentBufferIndex = (int) (pos / blockSize);
+      switchCurrentBuffer();
+    }
+    currentBuffer.position((int) (pos % blockSize));
+  }
+
+  public long length() {
+    return file.length;
+  }
+
+  public void writeByte(byte b) throws IOException {
+    if (currentBuffer == null || !currentBuffer.hasRemaining()) {
+      currentBufferIndex++;
+      switchCurrentBuffer();
+    }
+    currentBuffer.put(b);
+  }
+
+  public void writeBytes(byte[] b, int offset, int len) throws IOException {
+    assert b != null;
+    while (len > 0) {
+      if (currentBuffer == null || !currentBuffer.hasRemaining()) {
+        currentBufferIndex++;
+        switchCurrentBuffer();
+      }
+
+      int remainInBuffer = currentBuffer.remaining();
+      int bytesToCopy = len < remainInBuffer ? len : remainInBuffer;
+      currentBuffer.put(b, offset, bytesToCopy);
+      offset += bytesToCopy;
+      len -= bytesToCopy;
+    }
+  }
+
+  private final void switchCurrentBuffer() throws IOException {
+    // a seek may jump past the last block; fill the gap
+    while (currentBufferIndex >= file.numBuffers())
+      file.addBuffer();
+    currentBuffer = file.getBuffer(currentBufferIndex).duplicate();
+    currentBuffer.clear();
+    bufferStart = (long) blockSize * (long) currentBufferIndex;
+  }
+
+  private void setFileLength() {
+    if (currentBuffer != null) {
+      long pointer = bufferStart + currentBuffer.position();
+      if (pointer > file.length)
+        file.setLength(pointer);
+    }
+  }
+
+  public void flush() throws IOException {
+    file.setLastModified(System.currentTimeMillis());
+    setFileLength();
+  }
+
+  public long getFilePointer() {
+    return currentBufferIndex < 0 ? 0 : bufferStart + currentBuffer.position();
+  }
+
+  /** Returns byte usage of all blocks. */
+  public long sizeInBytes() {
+    return file.sizeInBytes();
+  }
+}
@@ -1,6 +1,11 @@
 package org.apache.lucene.store;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
 
 /** 这个类就是关于目录操作的
  *	管理锁工厂及其锁实例；
@@ -46,6 +51,13 @@ public abstract class Directory {
 	public void sync(String name) throws IOException {
 	}
 
+	//一次同步多个文件（提交时IndexWriter使用该方法），默认逐个调用sync(String)；子类可以并行或批量地同步
+	public void sync(Collection names) throws IOException {
+		Iterator it = names.iterator();
+		while (it.hasNext())
+			sync((String) it.next());
+	}
+
 	//获取已经存在的一个文件的IndexInput流操作该文件。
 	public abstract IndexInput openInput(String name) throws IOException;
 
@@ -54,6 +66,35 @@ public abstract class Directory {
 		return openInput(name);
 	}
 
+	//顺序读取时缓冲区默认可增长到的大小（见BufferedIndexInput.setMaxBufferSize）
+	public static final int DEFAULT_READ_AHEAD_SIZE = 64 * 1024;
+
+	//按文件扩展名配置的预读大小，扩展名 -> Integer；随机访问的文件（.tis、.fdx、.tvx）默认不预读
+	private final Map readAheadSizes = new HashMap();
+	{
+		readAheadSizes.put("tis", Integer.valueOf(0));
+		readAheadSizes.put("fdx", Integer.valueOf(0));
+		readAheadSizes.put("tvx", Integer.valueOf(0));
+	}
+
+	//设置指定扩展名（不含"."，例如"frq"；segments_N等无扩展名的文件用""）的文件顺序读取时缓冲区可增长到的大小，0表示关闭预读
+	public void setReadAheadSize(String extension, int maxBufferSize) {
+		synchronized (readAheadSizes) {
+			readAheadSizes.put(extension, Integer.valueOf(maxBufferSize));
+		}
+	}
+
+	//返回指定文件顺序读取时缓冲区可增长到的大小，打开BufferedIndexInput的子类应将其传给setMaxBufferSize
+	public int getReadAheadSize(String name) {
+		int dot = name.lastIndexOf('.');
+		String extension = dot == -1 ? "" : name.substring(dot + 1);
+		Integer size;
+		synchronized (readAheadSizes) {
+			size = (Integer) readAheadSizes.get(extension);
+		}
+		return size == null ? DEFAULT_READ_AHEAD_SIZE : size.intValue();
+	}
+
 	//创建一个指定名称的锁
 	public Lock makeLock(String name) {
 		return lockFactory.makeLock(name);
@@ -128,6 +169,25 @@ public abstract class Directory {
 			src.close();
 	}
 
+	//把本目录下的文件src拷贝到目录to中，命名为dest（to中已有的同名文件会被覆盖）；子类可以用更快的方式实现，例如同一文件系统上的硬链接
+	public void copy(Directory to, String src, String dest) throws IOException {
+		IndexOutput os = null;
+		IndexInput is = null;
+		try {
+			os = to.createOutput(dest);
+			is = openInput(src);
+			os.copyBytes(is, is.length());
+		} finally {
+			try {
+				if (os != null)
+					os.close();
+			} finally {
+				if (is != null)
+					is.close();
+			}
+		}
+	}
+
 	/**
 	 * @throws AlreadyClosedException
 	 *             if this Directory is closed
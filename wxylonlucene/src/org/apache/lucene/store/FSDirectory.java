@@ -5,10 +5,25 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import org.apache.lucene.index.IndexFileNameFilter;
 import org.apache.lucene.index.IndexWriter;
 
@@ -375,6 +390,20 @@ public class FSDirectory extends Directory {
 		}
 	}
 
+	//是否使用AsyncFSIndexOutput在后台线程中写文件
+	private volatile boolean asyncWrites = false;
+
+	/** 设置createOutput是否返回AsyncFSIndexOutput：写满的缓冲区交给后台线程写入磁盘，
+	 * 写索引的线程只在close()时等待这些写操作完成 */
+	public void setAsyncWrites(boolean asyncWrites) {
+		this.asyncWrites = asyncWrites;
+	}
+
+	/** @see #setAsyncWrites */
+	public boolean getAsyncWrites() {
+		return asyncWrites;
+	}
+
 	/** 创建一个名称为name的文件，返回一个输出流，以便对该文件进行写入操作 */
 	public IndexOutput createOutput(String name) throws IOException {
 		ensureOpen();
@@ -382,6 +411,8 @@ public class FSDirectory extends Directory {
 		if (file.exists() && !file.delete()) // delete existing, if any
 			throw new IOException("Cannot overwrite: " + file);
 
+		if (asyncWrites)
+			return new AsyncFSIndexOutput(file);
 		return new FSIndexOutput(file);
 	}
 
@@ -419,6 +450,69 @@ public class FSDirectory extends Directory {
 			throw exc;
 	}
 
+	/** 同时同步的文件数的上限 */
+	public static final int MAX_SYNC_THREADS = 4;
+
+	// 所有FSDirectory共用的同步线程池，让操作系统能够同时处理多个文件的fsync
+	private static final ExecutorService SYNC_POOL = Executors
+			.newFixedThreadPool(MAX_SYNC_THREADS, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Lucene FSDirectory Sync");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	/** 并行地同步多个文件，等待所有文件都同步完后返回；如有失败，抛出第一个异常 */
+	public void sync(Collection names) throws IOException {
+		ensureOpen();
+		if (names.size() <= 1) {
+			super.sync(names);
+			return;
+		}
+		List futures = new ArrayList(names.size());
+		Iterator it = names.iterator();
+		while (it.hasNext()) {
+			final String name = (String) it.next();
+			futures.add(SYNC_POOL.submit(new Callable() {
+				public Object call() throws IOException {
+					sync(name);
+					return null;
+				}
+			}));
+		}
+		IOException exc = null;
+		boolean interrupted = false;
+		for (int i = 0; i < futures.size(); i++) {
+			Future future = (Future) futures.get(i);
+			while (true) {
+				try {
+					future.get();
+				} catch (InterruptedException ie) {
+					// keep waiting: the caller must not go on before the
+					// files are durable
+					interrupted = true;
+					continue;
+				} catch (ExecutionException ee) {
+					if (exc == null) {
+						Throwable cause = ee.getCause();
+						if (cause instanceof IOException)
+							exc = (IOException) cause;
+						else {
+							exc = new IOException("sync failed: " + cause);
+							exc.initCause(cause);
+						}
+					}
+				}
+				break;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (exc != null)
+			throw exc;
+	}
+
 	// Inherit javadoc
 	public IndexInput openInput(String name) throws IOException {
 		ensureOpen();
@@ -428,7 +522,72 @@ public class FSDirectory extends Directory {
 	// Inherit javadoc
 	public IndexInput openInput(String name, int bufferSize) throws IOException {
 		ensureOpen();
-		return new FSIndexInput(new File(directory, name), bufferSize);
+		FSIndexInput in = new FSIndexInput(new File(directory, name), bufferSize);
+		in.setMaxBufferSize(getReadAheadSize(name));
+		return in;
+	}
+
+	// Java 7及以上的Files.createLink(Path, Path)和File.toPath()；用反射调用，这样在老的JDK上也能编译和运行，不支持时为null
+	private static final Method CREATE_LINK;
+	private static final Method TO_PATH;
+
+	static {
+		Method createLink = null;
+		Method toPath = null;
+		try {
+			final Class pathClass = Class.forName("java.nio.file.Path");
+			createLink = Class.forName("java.nio.file.Files").getMethod("createLink",
+					new Class[] { pathClass, pathClass });
+			toPath = File.class.getMethod("toPath", new Class[0]);
+		} catch (Throwable t) {
+			createLink = null;
+			toPath = null;
+		}
+		CREATE_LINK = createLink;
+		TO_PATH = toPath;
+	}
+
+	/** 拷贝到另一个FSDirectory时先尝试建立硬链接：索引文件写完后不再修改，createOutput也总是先删除已有的文件，
+	 * 所以两个目录共用同一份数据是安全的；不在同一个文件系统上等原因建不了链接时，用FileChannel.transferTo拷贝 */
+	public void copy(Directory to, String src, String dest) throws IOException {
+		ensureOpen();
+		if (!(to instanceof FSDirectory)) {
+			super.copy(to, src, dest);
+			return;
+		}
+		File source = new File(directory, src);
+		File target = new File(((FSDirectory) to).getFile(), dest);
+		if (target.exists() && !target.delete()) // delete existing, if any
+			throw new IOException("Cannot overwrite: " + target);
+
+		if (CREATE_LINK != null) {
+			try {
+				final Object[] noArgs = new Object[0];
+				CREATE_LINK.invoke(null, new Object[] {
+						TO_PATH.invoke(target, noArgs),
+						TO_PATH.invoke(source, noArgs) });
+				return;
+			} catch (Exception e) {
+				// 例如跨文件系统，或文件系统不支持硬链接：退回到拷贝
+			}
+		}
+
+		FileInputStream in = new FileInputStream(source);
+		try {
+			FileOutputStream out = new FileOutputStream(target);
+			try {
+				FileChannel inChannel = in.getChannel();
+				FileChannel outChannel = out.getChannel();
+				final long size = inChannel.size();
+				long pos = 0;
+				while (pos < size)
+					pos += inChannel.transferTo(pos, size - pos, outChannel);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
 	}
 
 	/**
@@ -625,4 +784,209 @@ public class FSDirectory extends Directory {
 			file.setLength(length);
 		}
 	}
+
+	/**
+	 * An {@link IndexOutput} that fills large pooled buffers and hands
+	 * each full buffer to a background writer thread, so that the
+	 * indexing thread keeps working while the disk is busy. Only
+	 * {@link #close} (and {@link #setLength}) wait for the pending writes;
+	 * at most {@link #MAX_PENDING} buffers per output are queued before
+	 * writes block. The first error of a background write is thrown by the
+	 * next write or by close.
+	 */
+	protected static class AsyncFSIndexOutput extends IndexOutput {
+
+		/** Size of the pooled write buffers. */
+		public static final int BUFFER_SIZE = 256 * 1024;
+
+		/** Maximum number of buffers of one output waiting to be written. */
+		public static final int MAX_PENDING = 4;
+
+		private static final int MAX_POOLED = 32;
+
+		// Free buffers shared by all async outputs; guarded by itself
+		private static final LinkedList POOL = new LinkedList();
+
+		// One thread is enough to keep a disk busy, and keeps writes of
+		// different files from competing for the head
+		private static final ExecutorService WRITER = Executors
+				.newSingleThreadExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "Lucene Async Writer");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+
+		private byte[] buffer;
+		private int bufferPosition;
+		private long bufferStart; // position in file of buffer
+		private long length; // of everything handed to the writer
+
+		// both guarded by this
+		private int pending;
+		private IOException error;
+
+		private boolean isOpen;
+
+		public AsyncFSIndexOutput(File path) throws IOException {
+			file = new RandomAccessFile(path, "rw");
+			channel = file.getChannel();
+			buffer = acquireBuffer();
+			isOpen = true;
+		}
+
+		private static byte[] acquireBuffer() {
+			synchronized (POOL) {
+				if (!POOL.isEmpty())
+					return (byte[]) POOL.removeFirst();
+			}
+			return new byte[BUFFER_SIZE];
+		}
+
+		private static void releaseBuffer(byte[] b) {
+			synchronized (POOL) {
+				if (POOL.size() < MAX_POOLED)
+					POOL.addFirst(b);
+			}
+		}
+
+		public void writeByte(byte b) throws IOException {
+			if (bufferPosition == BUFFER_SIZE)
+				submit();
+			buffer[bufferPosition++] = b;
+		}
+
+		public void writeBytes(byte[] b, int offset, int length)
+				throws IOException {
+			while (length > 0) {
+				if (bufferPosition == BUFFER_SIZE)
+					submit();
+				int chunk = BUFFER_SIZE - bufferPosition;
+				if (chunk > length)
+					chunk = length;
+				System.arraycopy(b, offset, buffer, bufferPosition, chunk);
+				bufferPosition += chunk;
+				offset += chunk;
+				length -= chunk;
+			}
+		}
+
+		/** Hands the current buffer to the writer thread and takes a fresh one. */
+		private void submit() throws IOException {
+			if (bufferPosition == 0)
+				return;
+			final byte[] b = buffer;
+			final int len = bufferPosition;
+			final long pos = bufferStart;
+			synchronized (this) {
+				waitForPending(MAX_PENDING - 1);
+				pending++;
+			}
+			buffer = acquireBuffer();
+			bufferStart += len;
+			bufferPosition = 0;
+			if (pos + len > length)
+				length = pos + len;
+			try {
+				WRITER.execute(new Runnable() {
+					public void run() {
+						write(b, len, pos);
+					}
+				});
+			} catch (RejectedExecutionException ree) {
+				// cannot happen with the unbounded queue; write inline
+				write(b, len, pos);
+			}
+		}
+
+		// Runs in the writer thread
+		private void write(byte[] b, int len, long pos) {
+			IOException exc = null;
+			try {
+				ByteBuffer bb = ByteBuffer.wrap(b, 0, len);
+				while (bb.hasRemaining())
+					pos += channel.write(bb, pos);
+			} catch (IOException ioe) {
+				exc = ioe;
+			} finally {
+				releaseBuffer(b);
+				synchronized (this) {
+					if (exc != null && error == null)
+						error = exc;
+					pending--;
+					notifyAll();
+				}
+			}
+		}
+
+		/** Waits until at most maxPending writes are queued, then throws the
+		 * first error of a background write, if any. */
+		private synchronized void waitForPending(int maxPending)
+				throws IOException {
+			boolean interrupted = false;
+			while (pending > maxPending) {
+				try {
+					wait();
+				} catch (InterruptedException ie) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			if (error != null) {
+				IOException ioe = new IOException("background write failed: "
+						+ error.getMessage());
+				ioe.initCause(error);
+				throw ioe;
+			}
+		}
+
+		/** Hands buffered bytes to the writer thread without waiting. */
+		public void flush() throws IOException {
+			submit();
+		}
+
+		public void close() throws IOException {
+			// only close the file if it has not been closed yet
+			if (isOpen) {
+				isOpen = false;
+				try {
+					submit();
+				} finally {
+					try {
+						waitForPending(0);
+					} finally {
+						releaseBuffer(buffer);
+						buffer = null;
+						file.close();
+					}
+				}
+			}
+		}
+
+		public long getFilePointer() {
+			return bufferStart + bufferPosition;
+		}
+
+		public void seek(long pos) throws IOException {
+			submit();
+			bufferStart = pos;
+		}
+
+		public long length() throws IOException {
+			final long pointer = bufferStart + bufferPosition;
+			return pointer > length ? pointer : length;
+		}
+
+		public void setLength(long length) throws IOException {
+			submit();
+			waitForPending(0);
+			file.setLength(length);
+			this.length = length;
+		}
+	}
 }
@@ -84,6 +84,28 @@ public abstract class IndexInput implements Cloneable {
     return i;
   }
 
+  /** Reads <code>count</code> ints stored in variable-length
+   * format into <code>dst</code>, starting at
+   * <code>offset</code>.  Equivalent to calling {@link
+   * #readVInt()} <code>count</code> times, but lets
+   * implementations decode a whole block straight from
+   * their buffer.
+   * @see IndexOutput#writeVInt(int)
+   */
+  public void readVInts(int[] dst, int offset, int count) throws IOException {
+    final int end = offset + count;
+    for (int i = offset; i < end; i++)
+      dst[i] = readVInt();
+  }
+
+  /** Reads <code>count</code> ints stored in variable-length
+   * format into the start of <code>dst</code>.
+   * @see #readVInts(int[],int,int)
+   */
+  public void readVInts(int[] dst, int count) throws IOException {
+    readVInts(dst, 0, count);
+  }
+
   /** Reads eight bytes and returns a long.
    * @see IndexOutput#writeLong(long)
    */
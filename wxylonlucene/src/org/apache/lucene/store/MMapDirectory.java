@@ -16,13 +16,19 @@ package org.apache.lucene.store;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
- 
+
 import java.io.IOException;
 import java.io.File;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.util.Constants;
 
 /** File-based {@link Directory} implementation that uses mmap for input.
  *
@@ -30,26 +36,209 @@ import java.nio.channels.FileChannel.MapMode;
  * org.apache.lucene.FSDirectory.class set to
  * org.apache.lucene.store.MMapDirectory.  This will cause {@link
  * FSDirectory#getDirectory(File,boolean)} to return instances of this class.
+ *
+ * <p>Files are mapped in chunks of at most {@link
+ * #getMaxChunkSize} bytes.  Smaller chunks waste less
+ * virtual address space, which matters on 32 bit JVMs.
+ *
+ * <p>By default, closing the input returned by {@link
+ * #openInput} (not its clones) unmaps the file right away
+ * instead of leaving that to the garbage collector, so that
+ * the disk space of segment files deleted after a merge is
+ * released promptly.  See {@link #setUseUnmap} for the
+ * caveats.
+ *
+ * <p>Each file extension can carry a read hint (see {@link
+ * #setReadHint}), the closest Java gets to
+ * <code>madvise</code>:
+ * <ul>
+ *  <li>{@link #READ_RANDOM}: the file is mapped and paged in
+ *      lazily on access.  This is the default.</li>
+ *  <li>{@link #READ_WILLNEED}: the file is mapped and all of
+ *      it is paged in at open ({@link MappedByteBuffer#load}).
+ *      Useful for small, hot files.</li>
+ *  <li>{@link #READ_SEQUENTIAL}: the file is not mapped but
+ *      read through a buffered {@link FSDirectory.FSIndexInput}
+ *      of {@link #getSequentialBufferSize} bytes, so that one
+ *      pass scans use the kernel's readahead and do not leave
+ *      mappings behind.</li>
+ * </ul>
+ * Files read once in full when a reader opens (field infos,
+ * deletions, norms, the terms index and the segments files)
+ * default to {@link #READ_SEQUENTIAL}.  Opens that ask for a
+ * buffer larger than {@link BufferedIndexInput#BUFFER_SIZE},
+ * as {@link org.apache.lucene.index.IndexWriter} does for
+ * the stored fields a merge copies, are treated as
+ * sequential too.  The postings a merge reads come from the
+ * writer's pooled readers, which opened them with the
+ * default buffer, so they stay mapped.
  */
 public class MMapDirectory extends FSDirectory {
 
+  /** Read hint: map the file and page it in on access. */
+  public static final int READ_RANDOM = 0;
+
+  /** Read hint: read the file sequentially through a buffer instead of mapping it. */
+  public static final int READ_SEQUENTIAL = 1;
+
+  /** Read hint: map the file and page all of it in at open. */
+  public static final int READ_WILLNEED = 2;
+
+  /** Default maximum chunk size: whole files up to 2 GB on 64 bit JVMs, 256 MB otherwise. */
+  public static final int DEFAULT_MAX_CHUNK_SIZE = Constants.JRE_IS_64BIT ? Integer.MAX_VALUE : 256 * 1024 * 1024;
+
+  /** Default buffer size of {@link #READ_SEQUENTIAL} inputs. */
+  public static final int DEFAULT_SEQUENTIAL_BUFFER_SIZE = 64 * 1024;
+
+  /** true if unmapping on close is supported by this JVM. */
+  public static final boolean UNMAP_SUPPORTED = DirectBufferCleaner.UNMAP_SUPPORTED;
+
+  private int maxChunkSize = DEFAULT_MAX_CHUNK_SIZE;
+  private int sequentialBufferSize = DEFAULT_SEQUENTIAL_BUFFER_SIZE;
+  private boolean useUnmap = UNMAP_SUPPORTED;
+
+  // extension -> Integer read hint; guarded by itself
+  private final Map readHints = new HashMap();
+  {
+    readHints.put("fnm", Integer.valueOf(READ_SEQUENTIAL));
+    readHints.put("del", Integer.valueOf(READ_SEQUENTIAL));
+    readHints.put("nrm", Integer.valueOf(READ_SEQUENTIAL));
+    readHints.put("tii", Integer.valueOf(READ_SEQUENTIAL));
+    readHints.put("gen", Integer.valueOf(READ_SEQUENTIAL));
+  }
+
+  /**
+   * Sets the maximum size of a single mapping.  Files larger
+   * than this are mapped in several chunks.  Only affects
+   * files opened afterwards.
+   */
+  public void setMaxChunkSize(int maxChunkSize) {
+    if (maxChunkSize <= 0)
+      throw new IllegalArgumentException("maxChunkSize must be greater than 0 (got " + maxChunkSize + ")");
+    this.maxChunkSize = maxChunkSize;
+  }
+
+  /** @see #setMaxChunkSize */
+  public int getMaxChunkSize() {
+    return maxChunkSize;
+  }
+
+  /**
+   * Sets the buffer size used for {@link #READ_SEQUENTIAL}
+   * inputs.  Only affects files opened afterwards.
+   */
+  public void setSequentialBufferSize(int sequentialBufferSize) {
+    if (sequentialBufferSize <= 0)
+      throw new IllegalArgumentException("sequentialBufferSize must be greater than 0 (got " + sequentialBufferSize + ")");
+    this.sequentialBufferSize = sequentialBufferSize;
+  }
+
+  /** @see #setSequentialBufferSize */
+  public int getSequentialBufferSize() {
+    return sequentialBufferSize;
+  }
+
+  /**
+   * Enables or disables unmapping of files when the input
+   * returned by {@link #openInput} is closed.
+   *
+   * <p><b>NOTE:</b> the JVM has no safe way to unmap, so
+   * this relies on an internal API (see {@link
+   * #UNMAP_SUPPORTED}).  Any access to a clone of a closed
+   * input may crash the JVM; Lucene itself never does that.
+   * @throws IllegalArgumentException if unmapping is not
+   * supported by this JVM
+   */
+  public void setUseUnmap(boolean useUnmap) {
+    if (useUnmap && !UNMAP_SUPPORTED)
+      throw new IllegalArgumentException("Unmap hack not supported on this platform!");
+    this.useUnmap = useUnmap;
+  }
+
+  /** @see #setUseUnmap */
+  public boolean getUseUnmap() {
+    return useUnmap;
+  }
+
+  /**
+   * Sets the read hint for files with the given extension
+   * (without the dot, eg "tis"); use the empty string for
+   * files without an extension, such as segments_N.
+   */
+  public void setReadHint(String extension, int hint) {
+    if (hint != READ_RANDOM && hint != READ_SEQUENTIAL && hint != READ_WILLNEED)
+      throw new IllegalArgumentException("unknown read hint " + hint);
+    synchronized (readHints) {
+      readHints.put(extension, Integer.valueOf(hint));
+    }
+  }
+
+  /** Returns the read hint applying to the given file name. */
+  public int getReadHint(String name) {
+    int dot = name.lastIndexOf('.');
+    String extension = dot == -1 ? "" : name.substring(dot+1);
+    Integer hint;
+    synchronized (readHints) {
+      hint = (Integer) readHints.get(extension);
+    }
+    if (hint != null)
+      return hint.intValue();
+    if (name.startsWith("segments"))
+      return READ_SEQUENTIAL;
+    return READ_RANDOM;
+  }
+
   private static class MMapIndexInput extends IndexInput {
 
     private ByteBuffer buffer;
     private final long length;
+    private boolean isClone = false;
+    private final boolean useUnmap;
 
-    private MMapIndexInput(RandomAccessFile raf) throws IOException {
+    private MMapIndexInput(RandomAccessFile raf, boolean useUnmap, boolean load) throws IOException {
         this.length = raf.length();
-        this.buffer = raf.getChannel().map(MapMode.READ_ONLY, 0, length);
+        this.useUnmap = useUnmap;
+        MappedByteBuffer mapped = raf.getChannel().map(MapMode.READ_ONLY, 0, length);
+        if (load)
+          mapped.load();
+        this.buffer = mapped;
     }
 
     public byte readByte() throws IOException {
-      return buffer.get();
+      try {
+        return buffer.get();
+      } catch (BufferUnderflowException e) {
+        throw new IOException("read past EOF");
+      }
     }
 
     public void readBytes(byte[] b, int offset, int len)
       throws IOException {
-      buffer.get(b, offset, len);
+      try {
+        buffer.get(b, offset, len);
+      } catch (BufferUnderflowException e) {
+        throw new IOException("read past EOF");
+      }
+    }
+
+    public int readVInt() throws IOException {
+      if (buffer.remaining() >= 5)
+        return decodeVInt(buffer);
+      return super.readVInt();
+    }
+
+    public void readVInts(int[] dst, int offset, int count) throws IOException {
+      final int end = offset + count;
+      while (offset < end && buffer.remaining() >= 5)
+        dst[offset++] = decodeVInt(buffer);
+      while (offset < end)
+        dst[offset++] = super.readVInt();
+    }
+
+    public long readVLong() throws IOException {
+      if (buffer.remaining() >= 9)
+        return decodeVLong(buffer);
+      return super.readVLong();
     }
 
     public long getFilePointer() {
@@ -66,11 +255,21 @@ public class MMapDirectory extends FSDirectory {
 
     public Object clone() {
       MMapIndexInput clone = (MMapIndexInput)super.clone();
+      clone.isClone = true;
       clone.buffer = buffer.duplicate();
       return clone;
     }
 
-    public void close() throws IOException {}
+    public void close() throws IOException {
+      if (isClone || buffer == null) return;
+      // unmap the buffer (if enabled) and at least unset it for GC
+      try {
+        if (useUnmap)
+          DirectBufferCleaner.clean(buffer);
+      } finally {
+        buffer = null;
+      }
+    }
   }
 
   private static class MultiMMapIndexInput extends IndexInput {
@@ -85,12 +284,15 @@ public class MMapDirectory extends FSDirectory {
   
     private ByteBuffer curBuf; // redundant for speed: buffers[curBufIndex]
     private int curAvail; // redundant for speed: (bufSizes[curBufIndex] - curBuf.position())
-  
+
+    private boolean isClone = false;
+    private final boolean useUnmap;
     
-    public MultiMMapIndexInput(RandomAccessFile raf, int maxBufSize)
+    public MultiMMapIndexInput(RandomAccessFile raf, int maxBufSize, boolean useUnmap, boolean load)
       throws IOException {
       this.length = raf.length();
       this.maxBufSize = maxBufSize;
+      this.useUnmap = useUnmap;
       
       if (maxBufSize <= 0)
         throw new IllegalArgumentException("Non positive maxBufSize: "
@@ -102,7 +304,7 @@ public class MMapDirectory extends FSDirectory {
            + raf.toString());
       
       int nrBuffers = (int) (length / maxBufSize);
-      if ((nrBuffers * maxBufSize) < length) nrBuffers++;
+      if (((long) nrBuffers * maxBufSize) < length) nrBuffers++;
       
       this.buffers = new ByteBuffer[nrBuffers];
       this.bufSizes = new int[nrBuffers];
@@ -113,7 +315,10 @@ public class MMapDirectory extends FSDirectory {
         int bufSize = (length > (bufferStart + maxBufSize))
           ? maxBufSize
           : (int) (length - bufferStart);
-        this.buffers[bufNr] = rafc.map(MapMode.READ_ONLY,bufferStart,bufSize);
+        MappedByteBuffer mapped = rafc.map(MapMode.READ_ONLY,bufferStart,bufSize);
+        if (load)
+          mapped.load();
+        this.buffers[bufNr] = mapped;
         this.bufSizes[bufNr] = bufSize;
         bufferStart += bufSize;
       }
@@ -124,28 +329,51 @@ public class MMapDirectory extends FSDirectory {
       // Performance might be improved by reading ahead into an array of
       // eg. 128 bytes and readByte() from there.
       if (curAvail == 0) {
-        curBufIndex++;
-        curBuf = buffers[curBufIndex]; // index out of bounds when too many bytes requested
-        curBuf.position(0);
-        curAvail = bufSizes[curBufIndex];
+        nextBuffer();
       }
       curAvail--;
       return curBuf.get();
     }
+
+    public int readVInt() throws IOException {
+      if (curAvail >= 5) {
+        final int start = curBuf.position();
+        final int i = decodeVInt(curBuf);
+        curAvail -= curBuf.position() - start;
+        return i;
+      }
+      return super.readVInt();
+    }
+
+    public long readVLong() throws IOException {
+      if (curAvail >= 9) {
+        final int start = curBuf.position();
+        final long i = decodeVLong(curBuf);
+        curAvail -= curBuf.position() - start;
+        return i;
+      }
+      return super.readVLong();
+    }
   
     public void readBytes(byte[] b, int offset, int len) throws IOException {
       while (len > curAvail) {
         curBuf.get(b, offset, curAvail);
         len -= curAvail;
         offset += curAvail;
-        curBufIndex++;
-        curBuf = buffers[curBufIndex]; // index out of bounds when too many bytes requested
-        curBuf.position(0);
-        curAvail = bufSizes[curBufIndex];
+        nextBuffer();
       }
       curBuf.get(b, offset, len);
       curAvail -= len;
     }
+
+    private void nextBuffer() throws IOException {
+      if (curBufIndex+1 >= buffers.length)
+        throw new IOException("read past EOF");
+      curBufIndex++;
+      curBuf = buffers[curBufIndex];
+      curBuf.position(0);
+      curAvail = bufSizes[curBufIndex];
+    }
   
     public long getFilePointer() {
       return (curBufIndex * (long) maxBufSize) + curBuf.position();
@@ -153,8 +381,12 @@ public class MMapDirectory extends FSDirectory {
   
     public void seek(long pos) throws IOException {
       curBufIndex = (int) (pos / maxBufSize);
+      if (curBufIndex == buffers.length && pos == length) {
+        // positioned at EOF on a chunk boundary
+        curBufIndex--;
+      }
       curBuf = buffers[curBufIndex];
-      int bufOffset = (int) (pos - (curBufIndex * maxBufSize));
+      int bufOffset = (int) (pos - (curBufIndex * (long) maxBufSize));
       curBuf.position(bufOffset);
       curAvail = bufSizes[curBufIndex] - bufOffset;
     }
@@ -165,6 +397,7 @@ public class MMapDirectory extends FSDirectory {
   
     public Object clone() {
       MultiMMapIndexInput clone = (MultiMMapIndexInput)super.clone();
+      clone.isClone = true;
       clone.buffers = new ByteBuffer[buffers.length];
       // No need to clone bufSizes.
       // Since most clones will use only one buffer, duplicate() could also be
@@ -182,24 +415,78 @@ public class MMapDirectory extends FSDirectory {
       return clone;
     }
   
-    public void close() throws IOException {}
+    public void close() throws IOException {
+      if (isClone || buffers == null) return;
+      try {
+        if (useUnmap) {
+          for (int bufNr = 0; bufNr < buffers.length; bufNr++)
+            DirectBufferCleaner.clean(buffers[bufNr]);
+        }
+      } finally {
+        buffers = null;
+        curBuf = null;
+      }
+    }
+  }
+
+  // Caller must ensure at least 5 bytes remain in the buffer
+  private static int decodeVInt(ByteBuffer buffer) throws IOException {
+    byte b = buffer.get();
+    if (b >= 0) return b;
+    int i = b & 0x7F;
+    b = buffer.get();
+    i |= (b & 0x7F) << 7;
+    if (b >= 0) return i;
+    b = buffer.get();
+    i |= (b & 0x7F) << 14;
+    if (b >= 0) return i;
+    b = buffer.get();
+    i |= (b & 0x7F) << 21;
+    if (b >= 0) return i;
+    b = buffer.get();
+    // only the low 4 bits of the fifth byte may be set
+    i |= (b & 0x0F) << 28;
+    if ((b & 0xF0) == 0) return i;
+    throw new IOException("Invalid vInt detected (too many bits)");
+  }
+
+  // Caller must ensure at least 9 bytes remain in the buffer
+  private static long decodeVLong(ByteBuffer buffer) throws IOException {
+    byte b = buffer.get();
+    long i = b & 0x7F;
+    for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+      if (shift > 56)
+        throw new IOException("Invalid vLong detected (too many bits)");
+      b = buffer.get();
+      i |= (b & 0x7FL) << shift;
+    }
+    return i;
   }
-  
-  private final int MAX_BBUF = Integer.MAX_VALUE;
 
   public IndexInput openInput(String name) throws IOException {
+    return openInput(name, BufferedIndexInput.BUFFER_SIZE);
+  }
+
+  public IndexInput openInput(String name, int bufferSize) throws IOException {
+    ensureOpen();
     File f =  new File(getFile(), name);
+    int hint = getReadHint(name);
+    if (bufferSize > BufferedIndexInput.BUFFER_SIZE && hint != READ_WILLNEED)
+      hint = READ_SEQUENTIAL;
+    if (hint == READ_SEQUENTIAL) {
+      FSIndexInput in = new FSIndexInput(f, Math.max(bufferSize, sequentialBufferSize));
+      in.setMaxBufferSize(getReadAheadSize(name));
+      return in;
+    }
+
     RandomAccessFile raf = new RandomAccessFile(f, "r");
     try {
-      return (raf.length() <= MAX_BBUF)
-             ? (IndexInput) new MMapIndexInput(raf)
-             : (IndexInput) new MultiMMapIndexInput(raf, MAX_BBUF);
+      final boolean load = hint == READ_WILLNEED;
+      return (raf.length() <= maxChunkSize)
+             ? (IndexInput) new MMapIndexInput(raf, useUnmap, load)
+             : (IndexInput) new MultiMMapIndexInput(raf, maxChunkSize, useUnmap, load);
     } finally {
       raf.close();
     }
   }
-
-  public IndexInput openInput(String name, int bufferSize) throws IOException {
-    return openInput(name);
-  }
 }
@@ -26,7 +26,9 @@ import java.nio.channels.FileChannel;
  * NIO version of FSDirectory.  Uses FileChannel.read(ByteBuffer dst, long position) method
  * which allows multiple threads to read from the file without synchronizing.  FSDirectory
  * synchronizes in the FSIndexInput.readInternal method which can cause pileups when there
- * are many threads accessing the Directory concurrently.  
+ * are many threads accessing the Directory concurrently.  Reads share no
+ * position state; small ones go through a direct buffer kept per thread,
+ * larger ones straight into the caller's array.
  *
  * This class only uses FileChannel when reading; writing
  * with an IndexOutput is inherited from FSDirectory.
@@ -46,15 +48,20 @@ public class NIOFSDirectory extends FSDirectory {
   // Inherit javadoc
   public IndexInput openInput(String name, int bufferSize) throws IOException {
     ensureOpen();
-    return new NIOFSIndexInput(new File(getFile(), name), bufferSize);
+    NIOFSIndexInput in = new NIOFSIndexInput(new File(getFile(), name), bufferSize);
+    in.setMaxBufferSize(getReadAheadSize(name));
+    return in;
   }
 
   private static class NIOFSIndexInput extends FSDirectory.FSIndexInput {
 
-    private ByteBuffer byteBuf; // wraps the buffer for NIO
+    // Reads up to this size go through the thread's direct
+    // buffer, larger ones straight into the caller's array
+    private static final int MAX_DIRECT_READ = Directory.DEFAULT_READ_AHEAD_SIZE;
 
-    private byte[] otherBuffer;
-    private ByteBuffer otherByteBuf;
+    // Grown up to MAX_DIRECT_READ as reads need; shared by
+    // all inputs and clones read by the thread
+    private static final ThreadLocal directBuffers = new ThreadLocal();
 
     final FileChannel channel;
 
@@ -63,11 +70,6 @@ public class NIOFSDirectory extends FSDirectory {
       channel = file.getChannel();
     }
 
-    protected void newBuffer(byte[] newBuffer) {
-      super.newBuffer(newBuffer);
-      byteBuf = ByteBuffer.wrap(newBuffer);
-    }
-
     public void close() throws IOException {
       if (!isClone && file.isOpen) {
         // Close the channel & file
@@ -80,34 +82,29 @@ public class NIOFSDirectory extends FSDirectory {
     }
 
     protected void readInternal(byte[] b, int offset, int len) throws IOException {
+      if (len > MAX_DIRECT_READ) {
+        read(ByteBuffer.wrap(b, offset, len));
+        return;
+      }
 
-      final ByteBuffer bb;
-
-      // Determine the ByteBuffer we should use
-      if (b == buffer && 0 == offset) {
-        // Use our own pre-wrapped byteBuf:
-        assert byteBuf != null;
-        byteBuf.clear();
-        byteBuf.limit(len);
-        bb = byteBuf;
-      } else {
-        if (offset == 0) {
-          if (otherBuffer != b) {
-            // Now wrap this other buffer; with compound
-            // file, we are repeatedly called with its
-            // buffer, so we wrap it once and then re-use it
-            // on subsequent calls
-            otherBuffer = b;
-            otherByteBuf = ByteBuffer.wrap(b);
-          } else
-            otherByteBuf.clear();
-          otherByteBuf.limit(len);
-          bb = otherByteBuf;
-        } else
-          // Always wrap when offset != 0
-          bb = ByteBuffer.wrap(b, offset, len);
+      ByteBuffer directBuf = (ByteBuffer) directBuffers.get();
+      if (directBuf == null || directBuf.capacity() < len) {
+        int size = directBuf == null ? BUFFER_SIZE : directBuf.capacity();
+        while (size < len)
+          size <<= 1;
+        directBuf = ByteBuffer.allocateDirect(Math.min(size, MAX_DIRECT_READ));
+        directBuffers.set(directBuf);
       }
+      directBuf.clear();
+      directBuf.limit(len);
+      read(directBuf);
+      directBuf.flip();
+      directBuf.get(b, offset, len);
+    }
 
+    private void read(ByteBuffer bb) throws IOException {
+      // Positional reads keep no state in the channel, so
+      // any number of clones can read concurrently
       long pos = getFilePointer();
       while (bb.hasRemaining()) {
         int i = channel.read(bb, pos);
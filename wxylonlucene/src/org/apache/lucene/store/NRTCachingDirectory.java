@@ -0,0 +1,345 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Wraps a (usually {@link FSDirectory}) directory and keeps
+ * newly written small files, such as the segments flushed by
+ * {@link org.apache.lucene.index.IndexWriter} between commits,
+ * in a {@link RAMDirectory}.  This saves the small-file I/O
+ * of frequent flushes in high-churn indexes and lets readers
+ * see new segments without touching the disk.
+ *
+ * <p>A file is written to RAM only while the cache holds less
+ * than {@link #getMaxCachedBytes} bytes, and spills over to
+ * the wrapped directory as soon as it grows beyond {@link
+ * #getMaxFileSizeBytes} bytes, as large merged segments do.
+ * {@link #sync} moves a cached file to the wrapped directory
+ * before syncing it, so commits are as durable as without
+ * the cache; deleting a file removes it from wherever it
+ * lives.  The segments files are never cached.
+ *
+ * <p>{@link #close} moves all still cached files to the
+ * wrapped directory before closing it.  Locking is delegated
+ * to the wrapped directory.
+ */
+public class NRTCachingDirectory extends Directory {
+
+  private final RAMDirectory cache = new RAMDirectory();
+  private final Directory delegate;
+  private final long maxFileSizeBytes;
+  private final long maxCachedBytes;
+
+  /**
+   * @param delegate the directory files end up in
+   * @param maxFileSizeMB files growing larger than this are
+   *        written to the delegate instead
+   * @param maxCachedMB no new files are cached while the
+   *        cache holds more than this
+   */
+  public NRTCachingDirectory(Directory delegate, double maxFileSizeMB, double maxCachedMB) {
+    this.delegate = delegate;
+    this.maxFileSizeBytes = (long) (maxFileSizeMB*1024*1024);
+    this.maxCachedBytes = (long) (maxCachedMB*1024*1024);
+  }
+
+  /** Returns the wrapped directory. */
+  public Directory getDelegate() {
+    return delegate;
+  }
+
+  /** @see #NRTCachingDirectory(Directory,double,double) */
+  public long getMaxFileSizeBytes() {
+    return maxFileSizeBytes;
+  }
+
+  /** @see #NRTCachingDirectory(Directory,double,double) */
+  public long getMaxCachedBytes() {
+    return maxCachedBytes;
+  }
+
+  /** Returns the number of bytes currently cached in RAM. */
+  public long cachedBytes() {
+    return cache.sizeInBytes();
+  }
+
+  /** Returns the names of the files currently cached in RAM. */
+  public String[] listCachedFiles() {
+    return cache.list();
+  }
+
+  public synchronized String[] list() throws IOException {
+    ensureOpen();
+    Set files = new HashSet();
+    String[] cached = cache.list();
+    for (int i = 0; i < cached.length; i++)
+      files.add(cached[i]);
+    String[] stored = delegate.list();
+    if (stored == null)
+      throw new IOException("cannot read directory " + delegate + ": list() returned null");
+    for (int i = 0; i < stored.length; i++)
+      files.add(stored[i]);
+    return (String[]) files.toArray(new String[files.size()]);
+  }
+
+  public boolean fileExists(String name) throws IOException {
+    ensureOpen();
+    return cache.fileExists(name) || delegate.fileExists(name);
+  }
+
+  public long fileModified(String name) throws IOException {
+    ensureOpen();
+    try {
+      return cache.fileModified(name);
+    } catch (FileNotFoundException fnfe) {
+      return delegate.fileModified(name);
+    }
+  }
+
+  public void touchFile(String name) throws IOException {
+    ensureOpen();
+    try {
+      cache.touchFile(name);
+    } catch (FileNotFoundException fnfe) {
+      delegate.touchFile(name);
+    }
+  }
+
+  public long fileLength(String name) throws IOException {
+    ensureOpen();
+    try {
+      return cache.fileLength(name);
+    } catch (FileNotFoundException fnfe) {
+      return delegate.fileLength(name);
+    }
+  }
+
+  public synchronized void deleteFile(String name) throws IOException {
+    ensureOpen();
+    if (cache.fileExists(name))
+      cache.deleteFile(name);
+    else
+      delegate.deleteFile(name);
+  }
+
+  /** @deprecated */
+  @Deprecated
+  public synchronized void renameFile(String from, String to) throws IOException {
+    ensureOpen();
+    unCache(from);
+    if (cache.fileExists(to))
+      cache.deleteFile(to);
+    delegate.renameFile(from, to);
+  }
+
+  public synchronized IndexOutput createOutput(String name) throws IOException {
+    ensureOpen();
+    if (doCacheWrite(name)) {
+      // the file may exist on disk from an earlier attempt
+      if (delegate.fileExists(name))
+        delegate.deleteFile(name);
+      return new CachingIndexOutput(name, cache.createOutput(name));
+    } else {
+      if (cache.fileExists(name))
+        cache.deleteFile(name);
+      return delegate.createOutput(name);
+    }
+  }
+
+  /** Returns true if a new file of this name should be
+   *  written to RAM. */
+  protected boolean doCacheWrite(String name) {
+    return !name.startsWith("segments") && cache.sizeInBytes() < maxCachedBytes;
+  }
+
+  public void sync(String name) throws IOException {
+    ensureOpen();
+    unCache(name);
+    delegate.sync(name);
+  }
+
+  public void sync(Collection names) throws IOException {
+    ensureOpen();
+    Iterator it = names.iterator();
+    while (it.hasNext())
+      unCache((String) it.next());
+    delegate.sync(names);
+  }
+
+  public IndexInput openInput(String name) throws IOException {
+    ensureOpen();
+    try {
+      return cache.openInput(name);
+    } catch (FileNotFoundException fnfe) {
+      return delegate.openInput(name);
+    }
+  }
+
+  public IndexInput openInput(String name, int bufferSize) throws IOException {
+    ensureOpen();
+    try {
+      return cache.openInput(name);
+    } catch (FileNotFoundException fnfe) {
+      return delegate.openInput(name, bufferSize);
+    }
+  }
+
+  public Lock makeLock(String name) {
+    return delegate.makeLock(name);
+  }
+
+  public void clearLock(String name) throws IOException {
+    delegate.clearLock(name);
+  }
+
+  public void setLockFactory(LockFactory lockFactory) {
+    delegate.setLockFactory(lockFactory);
+  }
+
+  public LockFactory getLockFactory() {
+    return delegate.getLockFactory();
+  }
+
+  public String getLockID() {
+    return delegate.getLockID();
+  }
+
+  public int getReadAheadSize(String name) {
+    return delegate.getReadAheadSize(name);
+  }
+
+  /** Moves all cached files to the wrapped directory, then
+   *  closes it. */
+  public synchronized void close() throws IOException {
+    if (!isOpen)
+      return;
+    String[] cached = cache.list();
+    for (int i = 0; i < cached.length; i++)
+      unCache(cached[i]);
+    isOpen = false;
+    cache.close();
+    delegate.close();
+  }
+
+  public String toString() {
+    return "NRTCachingDirectory(" + delegate + ")";
+  }
+
+  /** Copies a cached file to the wrapped directory and drops
+   *  it from the cache. */
+  private synchronized void unCache(String name) throws IOException {
+    if (!cache.fileExists(name))
+      return;
+    copy(name);
+    cache.deleteFile(name);
+  }
+
+  private void copy(String name) throws IOException {
+    IndexInput in = cache.openInput(name);
+    try {
+      IndexOutput out = delegate.createOutput(name);
+      try {
+        out.copyBytes(in, in.length());
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /** Writes to RAM until the file grows larger than
+   *  maxFileSizeBytes, then moves what was written to the
+   *  wrapped directory and continues there. */
+  private final class CachingIndexOutput extends IndexOutput {
+
+    private final String name;
+    private IndexOutput out;
+    private boolean cached = true;
+
+    CachingIndexOutput(String name, IndexOutput out) {
+      this.name = name;
+      this.out = out;
+    }
+
+    public void writeByte(byte b) throws IOException {
+      out.writeByte(b);
+      if (cached && out.getFilePointer() > maxFileSizeBytes)
+        spill();
+    }
+
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+      out.writeBytes(b, offset, length);
+      if (cached && out.getFilePointer() > maxFileSizeBytes)
+        spill();
+    }
+
+    private void spill() throws IOException {
+      synchronized (NRTCachingDirectory.this) {
+        final long pointer = out.getFilePointer();
+        out.close();
+        IndexInput in = cache.openInput(name);
+        IndexOutput spilled = delegate.createOutput(name);
+        boolean success = false;
+        try {
+          spilled.copyBytes(in, in.length());
+          spilled.seek(pointer);
+          success = true;
+        } finally {
+          in.close();
+          if (!success)
+            spilled.close();
+        }
+        cache.deleteFile(name);
+        out = spilled;
+        cached = false;
+      }
+    }
+
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    public void close() throws IOException {
+      out.close();
+    }
+
+    public long getFilePointer() {
+      return out.getFilePointer();
+    }
+
+    public void seek(long pos) throws IOException {
+      out.seek(pos);
+    }
+
+    public long length() throws IOException {
+      return out.length();
+    }
+
+    public void setLength(long length) throws IOException {
+      out.setLength(length);
+    }
+  }
+}
@@ -4,9 +4,12 @@ import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.io.File;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * ǣһDirectoryڴʵֵ SingleInstanceLockFactoryʵ֣Ը
@@ -16,7 +19,9 @@ public class RAMDirectory extends Directory implements Serializable {
 
 	private static final long serialVersionUID = 1l;
 	// ȶ˱ļԼMap
-	HashMap fileMap = new HashMap();
+	// Concurrent so that lookups of committed files never take the directory
+	// lock; mutations still synchronize on this to keep sizeInBytes consistent
+	Map fileMap = new ConcurrentHashMap();
 	//ļռõֽ   
 	long sizeInBytes = 0;
 	
@@ -79,34 +84,28 @@ public class RAMDirectory extends Directory implements Serializable {
 	}
 
 	/**иļڴеļ  */  
-	public synchronized final String[] list() {
+	public final String[] list() {
 		ensureOpen();
+		// keySet iteration is weakly consistent, so size() may be stale
 		Set fileNames = fileMap.keySet();
-		String[] result = new String[fileNames.size()];
-		int i = 0;
+		List names = new ArrayList(fileNames.size());
+
 		Iterator it = fileNames.iterator();
 		while (it.hasNext())
-			result[i++] = (String) it.next();
-		return result;
+			names.add(it.next());
+		return (String[]) names.toArray(new String[names.size()]);
 	}
 
 	/**ָļļдڣ򷵻true򷵻false*/  
 	public final boolean fileExists(String name) {
 		ensureOpen();
-		RAMFile file;
-		synchronized (this) {
-			file = (RAMFile) fileMap.get(name);
-		}
-		return file != null;
+		return fileMap.containsKey(name);
 	}
 
 	/**ָļ޸ʱ   */  
 	public final long fileModified(String name) throws IOException {
 		ensureOpen();
-		RAMFile file;
-		synchronized (this) {
-			file = (RAMFile) fileMap.get(name);
-		}
+		RAMFile file = (RAMFile) fileMap.get(name);
 		if (file == null)
 			throw new FileNotFoundException(name);
 		return file.getLastModified();
@@ -115,10 +114,7 @@ public class RAMDirectory extends Directory implements Serializable {
 	/**ָļ޸ʱΪ */  
 	public void touchFile(String name) throws IOException {
 		ensureOpen();
-		RAMFile file;
-		synchronized (this) {
-			file = (RAMFile) fileMap.get(name);
-		}
+		RAMFile file = (RAMFile) fileMap.get(name);
 		if (file == null)
 			throw new FileNotFoundException(name);
 
@@ -137,10 +133,7 @@ public class RAMDirectory extends Directory implements Serializable {
 	/** ָļĴС*/  
 	public final long fileLength(String name) throws IOException {
 		ensureOpen();
-		RAMFile file;
-		synchronized (this) {
-			file = (RAMFile) fileMap.get(name);
-		}
+		RAMFile file = (RAMFile) fileMap.get(name);
 		if (file == null)
 			throw new FileNotFoundException(name);
 		return file.getLength();
@@ -173,6 +166,8 @@ public class RAMDirectory extends Directory implements Serializable {
 		RAMFile fromFile = (RAMFile) fileMap.get(from);
 		if (fromFile == null)
 			throw new FileNotFoundException(from);
+		if (from.equals(to))
+			return;
 		RAMFile toFile = (RAMFile) fileMap.get(to);
 		if (toFile != null) {
 			sizeInBytes -= toFile.sizeInBytes; // updates to
@@ -180,8 +175,9 @@ public class RAMDirectory extends Directory implements Serializable {
 												// synchronized on directory
 			toFile.directory = null;
 		}
-		fileMap.remove(from);
+		// publish under the new name first so lock-free readers never miss it
 		fileMap.put(to, fromFile);
+		fileMap.remove(from);
 	}
 
 	 /**ƶƣһļҷزļ */  
@@ -202,10 +198,7 @@ public class RAMDirectory extends Directory implements Serializable {
 	/** ָļһļ */
 	public IndexInput openInput(String name) throws IOException {
 		ensureOpen();
-		RAMFile file;
-		synchronized (this) {
-			file = (RAMFile) fileMap.get(name);
-		}
+		RAMFile file = (RAMFile) fileMap.get(name);
 		if (file == null)
 			throw new FileNotFoundException(name);
 		return new RAMInputStream(file);
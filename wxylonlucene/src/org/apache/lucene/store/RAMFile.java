@@ -17,20 +17,26 @@ package org.apache.lucene.store;
  * limitations under the License.
  */
 
-import java.util.ArrayList;
 import java.io.Serializable;
 
 class RAMFile implements Serializable {
 
   private static final long serialVersionUID = 1l;
 
-  private ArrayList buffers = new ArrayList();
-  long length;
+  // Buffers are only ever appended, under this file's lock.
+  // Readers see them without locking: numBuffers is written
+  // after both the (possibly grown) array and the new slot,
+  // so a volatile read of numBuffers publishes every buffer
+  // below it.
+  private volatile byte[][] buffers = new byte[4][];
+  private volatile int numBuffers;
+
+  volatile long length;
   RAMDirectory directory;
   long sizeInBytes;                  // Only maintained if in a directory; updates synchronized on directory
 
   // This is publicly modifiable via Directory.touchFile(), so direct access not supported
-  private long lastModified = System.currentTimeMillis();
+  private volatile long lastModified = System.currentTimeMillis();
 
   // File used as buffer, in no RAMDirectory
   RAMFile() {}
@@ -40,20 +46,20 @@ class RAMFile implements Serializable {
   }
 
   // For non-stream access from thread that might be concurrent with writing
-  synchronized long getLength() {
+  long getLength() {
     return length;
   }
 
-  synchronized void setLength(long length) {
+  void setLength(long length) {
     this.length = length;
   }
 
   // For non-stream access from thread that might be concurrent with writing
-  synchronized long getLastModified() {
+  long getLastModified() {
     return lastModified;
   }
 
-  synchronized void setLastModified(long lastModified) {
+  void setLastModified(long lastModified) {
     this.lastModified = lastModified;
   }
 
@@ -61,21 +67,37 @@ class RAMFile implements Serializable {
     byte[] buffer = newBuffer(size);
     if (directory!=null)
       synchronized (directory) {             // Ensure addition of buffer and adjustment to directory size are atomic wrt directory
-        buffers.add(buffer);
+        appendBuffer(buffer);
         directory.sizeInBytes += size;
         sizeInBytes += size;
       }
     else
-      buffers.add(buffer);
+      appendBuffer(buffer);
     return buffer;
   }
 
-  final synchronized byte[] getBuffer(int index) {
-    return (byte[]) buffers.get(index);
+  private void appendBuffer(byte[] buffer) {
+    final int count = numBuffers;
+    byte[][] current = buffers;
+    if (count == current.length) {
+      byte[][] grown = new byte[count + (count >> 1) + 1][];
+      System.arraycopy(current, 0, grown, 0, count);
+      grown[count] = buffer;
+      buffers = grown;
+    } else
+      current[count] = buffer;
+    numBuffers = count+1;
+  }
+
+  // Lock-free: callers must only ask for index < numBuffers()
+  final byte[] getBuffer(int index) {
+    final int count = numBuffers;         // volatile read first, see above
+    assert index < count: "index=" + index + " numBuffers=" + count;
+    return buffers[index];
   }
 
-  final synchronized int numBuffers() {
-    return buffers.size();
+  final int numBuffers() {
+    return numBuffers;
   }
 
   /**
@@ -0,0 +1,140 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Wraps a directory so that all files created through it
+ * are written no faster than the given {@link RateLimiter}s
+ * allow.  {@link org.apache.lucene.index.IndexWriter} uses
+ * it to throttle merges so they leave disk bandwidth to
+ * searches.  Everything but {@link #createOutput} is passed
+ * to the wrapped directory unchanged.
+ */
+public class RateLimitedDirectoryWrapper extends Directory {
+
+  private final Directory delegate;
+  private final RateLimiter[] rateLimiters;
+
+  /**
+   * @param delegate the directory to write to
+   * @param rateLimiters every written chunk passes through
+   *        each of these, in order
+   */
+  public RateLimitedDirectoryWrapper(Directory delegate, RateLimiter[] rateLimiters) {
+    this.delegate = delegate;
+    this.rateLimiters = rateLimiters.clone();
+  }
+
+  /** Returns the wrapped directory. */
+  public Directory getDelegate() {
+    return delegate;
+  }
+
+  public IndexOutput createOutput(String name) throws IOException {
+    ensureOpen();
+    return new RateLimitedIndexOutput(delegate.createOutput(name), rateLimiters);
+  }
+
+  public String[] list() throws IOException {
+    return delegate.list();
+  }
+
+  public boolean fileExists(String name) throws IOException {
+    return delegate.fileExists(name);
+  }
+
+  public long fileModified(String name) throws IOException {
+    return delegate.fileModified(name);
+  }
+
+  public void touchFile(String name) throws IOException {
+    delegate.touchFile(name);
+  }
+
+  public void deleteFile(String name) throws IOException {
+    delegate.deleteFile(name);
+  }
+
+  /** @deprecated */
+  @Deprecated
+  public void renameFile(String from, String to) throws IOException {
+    delegate.renameFile(from, to);
+  }
+
+  public long fileLength(String name) throws IOException {
+    return delegate.fileLength(name);
+  }
+
+  public void sync(String name) throws IOException {
+    delegate.sync(name);
+  }
+
+  public void sync(Collection names) throws IOException {
+    delegate.sync(names);
+  }
+
+  public IndexInput openInput(String name) throws IOException {
+    return delegate.openInput(name);
+  }
+
+  public IndexInput openInput(String name, int bufferSize) throws IOException {
+    return delegate.openInput(name, bufferSize);
+  }
+
+  public Lock makeLock(String name) {
+    return delegate.makeLock(name);
+  }
+
+  public void clearLock(String name) throws IOException {
+    delegate.clearLock(name);
+  }
+
+  public void setLockFactory(LockFactory lockFactory) {
+    delegate.setLockFactory(lockFactory);
+  }
+
+  public LockFactory getLockFactory() {
+    return delegate.getLockFactory();
+  }
+
+  public String getLockID() {
+    return delegate.getLockID();
+  }
+
+  public void setReadAheadSize(String extension, int maxBufferSize) {
+    delegate.setReadAheadSize(extension, maxBufferSize);
+  }
+
+  public int getReadAheadSize(String name) {
+    return delegate.getReadAheadSize(name);
+  }
+
+  /** Closes the wrapped directory. */
+  public void close() throws IOException {
+    isOpen = false;
+    delegate.close();
+  }
+
+  public String toString() {
+    return "RateLimitedDirectoryWrapper(" + delegate + ")";
+  }
+}
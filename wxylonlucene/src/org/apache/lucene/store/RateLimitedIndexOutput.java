@@ -0,0 +1,75 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import java.io.IOException;
+
+/**
+ * An {@link IndexOutput} that buffers writes and passes
+ * every flushed chunk through one or more {@link
+ * RateLimiter}s before writing it to the wrapped output.
+ */
+class RateLimitedIndexOutput extends BufferedIndexOutput {
+
+  private final IndexOutput delegate;
+  private final RateLimiter[] rateLimiters;
+
+  RateLimitedIndexOutput(IndexOutput delegate, RateLimiter[] rateLimiters) {
+    this.delegate = delegate;
+    this.rateLimiters = rateLimiters;
+  }
+
+  protected void flushBuffer(byte[] b, int offset, int len) throws IOException {
+    for (int i = 0; i < rateLimiters.length; i++)
+      rateLimiters[i].pause(len);
+    delegate.writeBytes(b, offset, len);
+  }
+
+  public void flush() throws IOException {
+    try {
+      super.flush();
+    } finally {
+      delegate.flush();
+    }
+  }
+
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      delegate.close();
+    }
+  }
+
+  public void seek(long pos) throws IOException {
+    super.seek(pos);
+    delegate.seek(pos);
+  }
+
+  public long length() throws IOException {
+    // the buffer may extend the file
+    super.flush();
+    return delegate.length();
+  }
+
+  public void setLength(long length) throws IOException {
+    super.flush();
+    delegate.setLength(length);
+  }
+}
@@ -0,0 +1,115 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * Limits the rate at which bytes are written by making the
+ * writing thread sleep.  One instance may be shared by
+ * several threads to limit their combined rate.  It also
+ * counts the bytes passed to {@link #pause} and the time
+ * spent sleeping.
+ */
+public class RateLimiter {
+
+  private volatile double mbPerSec;
+  private volatile double nsPerByte;
+
+  // All guarded by this
+  private long lastNS;
+  private long totalBytes;
+  private long totalPausedNS;
+
+  /**
+   * @param mbPerSec the maximum rate in MB per second; 0
+   *        means no limit, only counting
+   */
+  public RateLimiter(double mbPerSec) {
+    setMbPerSec(mbPerSec);
+  }
+
+  /** Sets the maximum rate in MB per second; 0 means no
+   *  limit.  Takes effect on the next {@link #pause}. */
+  public void setMbPerSec(double mbPerSec) {
+    if (mbPerSec < 0)
+      throw new IllegalArgumentException("mbPerSec must be >= 0 (got " + mbPerSec + ")");
+    this.mbPerSec = mbPerSec;
+    nsPerByte = mbPerSec == 0 ? 0 : 1000000000.0 / (mbPerSec*1024*1024);
+  }
+
+  /** @see #setMbPerSec */
+  public double getMbPerSec() {
+    return mbPerSec;
+  }
+
+  /** Returns the number of bytes passed to {@link #pause}
+   *  so far. */
+  public synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /** Returns the total time in nanoseconds {@link #pause}
+   *  has slept so far. */
+  public synchronized long getTotalPausedNS() {
+    return totalPausedNS;
+  }
+
+  /**
+   * Records that the given number of bytes were written
+   * and sleeps until the rate is back under the limit.
+   * Time the caller spent without writing is not saved up
+   * for later bursts.  Returns the time slept in
+   * nanoseconds.
+   */
+  public long pause(long bytes) {
+    final long targetNS;
+    synchronized (this) {
+      totalBytes += bytes;
+      final double nsPerByte = this.nsPerByte;
+      if (nsPerByte == 0)
+        return 0;
+      final long curNS = System.nanoTime();
+      if (lastNS < curNS)
+        lastNS = curNS;
+      lastNS += (long) (bytes * nsPerByte);
+      targetNS = lastNS;
+    }
+
+    // Sleep outside the lock so threads sharing this
+    // limiter queue up behind each other's target times
+    final long startNS = System.nanoTime();
+    long curNS = startNS;
+    while (curNS < targetNS) {
+      final long pauseNS = targetNS - curNS;
+      try {
+        Thread.sleep(pauseNS / 1000000, (int) (pauseNS % 1000000));
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      // loop because sleep may return early
+      curNS = System.nanoTime();
+    }
+
+    final long pausedNS = curNS - startNS;
+    synchronized (this) {
+      totalPausedNS += pausedNS;
+    }
+    return pausedNS;
+  }
+}
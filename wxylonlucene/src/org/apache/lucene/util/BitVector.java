@@ -35,7 +35,7 @@ import org.apache.lucene.store.IndexOutput;
 
   @version $Id: BitVector.java 651919 2008-04-27 11:14:10Z mikemccand $
   */
-public final class BitVector {
+public final class BitVector implements Cloneable {
 
   private byte[] bits;
   private int size;
@@ -47,6 +47,14 @@ public final class BitVector {
     bits = new byte[(size >> 3) + 1];
   }
 
+  /** Returns a copy of this vector. */
+  public Object clone() {
+    BitVector clone = new BitVector(size);
+    System.arraycopy(bits, 0, clone.bits, 0, bits.length);
+    clone.count = count;
+    return clone;
+  }
+
   /** Sets the value of <code>bit</code> to one. */
   public final void set(int bit) {
     if (bit >= size) {
@@ -26,4 +26,18 @@ public final class Constants {
 	public static final boolean WINDOWS = OS_NAME.startsWith("Windows");
 	/** True iff running on SunOS. */
 	public static final boolean SUN_OS = OS_NAME.startsWith("SunOS");
+
+	/** The value of <tt>System.getProperty("os.arch")<tt>. * */
+	public static final String OS_ARCH = System.getProperty("os.arch");
+
+	/** True iff running on a 64bit JVM. */
+	public static final boolean JRE_IS_64BIT;
+	static {
+		String model = System.getProperty("sun.arch.data.model");
+		if (model != null)
+			JRE_IS_64BIT = model.indexOf("64") != -1;
+		else
+			JRE_IS_64BIT = OS_ARCH != null && OS_ARCH.indexOf("64") != -1;
+	}
+
 }
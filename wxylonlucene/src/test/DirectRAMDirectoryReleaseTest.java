@@ -0,0 +1,153 @@
+package test;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.DirectRAMDirectory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+
+/**
+ * Checks that DirectRAMDirectory recycles the blocks of segments that
+ * were merged away while a reader searched them, once that reader is
+ * closed, although the reader never closed some clones of its inputs
+ * (the per-thread term enums and stored fields readers). Also checks
+ * that such a clone throws AlreadyClosedException instead of reading
+ * recycled blocks.
+ */
+public class DirectRAMDirectoryReleaseTest {
+
+	private static final int BLOCK_SIZE = 1024;
+
+	public static void buildIndex(DirectRAMDirectory dir) throws IOException {
+		IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true,
+				IndexWriter.MaxFieldLength.UNLIMITED);
+		writer.setMaxBufferedDocs(500);
+		writer.setMergeFactor(100);
+		for (int i = 0; i < 5000; i++) {
+			Document doc = new Document();
+			doc.add(new Field("id", "" + i, Field.Store.YES, Field.Index.NOT_ANALYZED));
+			doc.add(new Field("body", "w" + (i % 7) + " w" + (i % 100) + " w" + (i % 1000),
+					Field.Store.YES, Field.Index.ANALYZED));
+			writer.addDocument(doc);
+		}
+		writer.close();
+	}
+
+	// Searches and loads stored fields from this and from another thread,
+	// leaving clones of the reader's inputs in their thread locals
+	public static void search(final IndexReader reader) throws Exception {
+		final IndexSearcher searcher = new IndexSearcher(reader);
+		final Exception[] failure = new Exception[1];
+		Thread thread = new Thread() {
+			public void run() {
+				try {
+					searchOnce(searcher, "w3");
+				} catch (Exception e) {
+					failure[0] = e;
+				}
+			}
+		};
+		thread.start();
+		searchOnce(searcher, "w5");
+		thread.join();
+		if (failure[0] != null)
+			throw failure[0];
+	}
+
+	private static void searchOnce(IndexSearcher searcher, String word) throws IOException {
+		ScoreDoc[] hits = searcher.search(new TermQuery(new Term("body", word)), null, 100).scoreDocs;
+		if (hits.length == 0)
+			throw new RuntimeException("no hits for " + word);
+		for (int i = 0; i < hits.length; i++)
+			searcher.doc(hits[i].doc);
+		if (searcher.getIndexReader().docFreq(new Term("body", "w12")) == 0)
+			throw new RuntimeException("w12 not found");
+	}
+
+	// The bytes of the blocks the files of the directory take up
+	private static long liveBytes(DirectRAMDirectory dir) throws IOException {
+		String[] files = dir.list();
+		long bytes = 0;
+		for (int i = 0; i < files.length; i++)
+			bytes += (dir.fileLength(files[i]) + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+		return bytes;
+	}
+
+	public static void checkSegmentsReleased() throws Exception {
+		DirectRAMDirectory dir = new DirectRAMDirectory(BLOCK_SIZE, 64 * BLOCK_SIZE);
+		buildIndex(dir);
+
+		IndexReader reader = IndexReader.open(dir);
+		if (reader.getSequentialSubReaders().length < 2)
+			throw new RuntimeException("only one segment");
+		search(reader);
+
+		// merge the searched segments away; their files are deleted but
+		// the reader still has them open
+		IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), false,
+				IndexWriter.MaxFieldLength.UNLIMITED);
+		writer.optimize();
+		writer.close();
+		if (dir.sizeInBytes() <= liveBytes(dir))
+			throw new RuntimeException("blocks of the deleted segments were released while open");
+
+		reader.close();
+		if (dir.sizeInBytes() != liveBytes(dir))
+			throw new RuntimeException(dir.sizeInBytes() + " bytes in blocks instead of " + liveBytes(dir)
+					+ " after the reader was closed");
+
+		// the recycled blocks are used again before more memory is allocated
+		long allocated = dir.allocatedBytes();
+		reader = IndexReader.open(dir);
+		search(reader);
+		reader.close();
+		IndexOutput out = dir.createOutput("filler");
+		out.writeBytes(new byte[(int) (allocated - dir.sizeInBytes())], (int) (allocated - dir.sizeInBytes()));
+		out.close();
+		if (dir.allocatedBytes() != allocated)
+			throw new RuntimeException("allocated " + dir.allocatedBytes() + " bytes instead of reusing blocks");
+		dir.close();
+	}
+
+	public static void checkCloneOfReleasedFile() throws IOException {
+		DirectRAMDirectory dir = new DirectRAMDirectory(BLOCK_SIZE, 64 * BLOCK_SIZE);
+		IndexOutput out = dir.createOutput("file");
+		for (int i = 0; i < 4 * BLOCK_SIZE; i++)
+			out.writeByte((byte) i);
+		out.close();
+
+		IndexInput in = dir.openInput("file");
+		IndexInput clone = (IndexInput) in.clone();
+		clone.readByte();
+		dir.deleteFile("file");
+		if (dir.sizeInBytes() != 4 * BLOCK_SIZE)
+			throw new RuntimeException("blocks released while the input is open");
+		in.close();
+		if (dir.sizeInBytes() != 0)
+			throw new RuntimeException("blocks not released although the clone was never closed");
+		try {
+			clone.seek(2 * BLOCK_SIZE);
+			clone.readByte();
+			throw new RuntimeException("clone read a released file");
+		} catch (AlreadyClosedException e) {
+			// expected
+		}
+		dir.close();
+	}
+
+	public static void main(String[] args) throws Exception {
+		checkSegmentsReleased();
+		checkCloneOfReleasedFile();
+		System.out.println("Deleted files give their blocks back");
+	}
+}
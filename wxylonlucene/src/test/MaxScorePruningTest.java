@@ -0,0 +1,175 @@
+package test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.HitCollector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocCollector;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ * Compares the top hits of disjunctions of terms collected with and
+ * without skipping non-competitive documents
+ * (TopDocCollector.setSkipNonCompetitive). The index has several
+ * segments, deletions, boosted fields and terms of every frequency, so
+ * both the per-term score bounds read from the postings and the bounds
+ * per block of postings between skip points are used. The same is
+ * checked again after IndexReader.setNorm changed norms, and for an
+ * index written without impacts (IndexWriter.setRecordImpacts), before
+ * and after IndexReader.undeleteAll brought back the deleted documents.
+ *
+ * <p>The pruned search adds up the term scores in another order, so its
+ * scores may differ in the last bit and documents scoring nearly the
+ * same may change places. Each hit is therefore checked against the
+ * exact score of its document, within a few ulps.
+ */
+public class MaxScorePruningTest {
+
+	private static final int NUM_DOCS = 20000;
+
+	// relative difference allowed between scores summed in another order
+	private static final float TOLERANCE = 1e-5f;
+
+	public static void buildIndex(Directory dir, boolean recordImpacts) throws IOException {
+		Random random = new Random(24);
+		IndexWriter writer = new IndexWriter(dir, new WhitespaceAnalyzer(), true,
+				IndexWriter.MaxFieldLength.UNLIMITED);
+		writer.setRecordImpacts(recordImpacts);
+		writer.setMaxBufferedDocs(NUM_DOCS / 7 + 1);
+		writer.setMergeFactor(50);
+		for (int i = 0; i < NUM_DOCS; i++) {
+			Document doc = new Document();
+			doc.add(new Field("id", "" + i, Field.Store.YES, Field.Index.NOT_ANALYZED));
+			StringBuffer sb = new StringBuffer();
+			for (int j = random.nextInt(40); j >= 0; j--)
+				sb.append(term(random)).append(' ');
+			Field body = new Field("body", sb.toString(), Field.Store.NO, Field.Index.ANALYZED);
+			if (random.nextInt(10) == 0)
+				body.setBoost(2.0f);
+			doc.add(body);
+			writer.addDocument(doc);
+		}
+		for (int i = 0; i < NUM_DOCS / 20; i++)
+			writer.deleteDocuments(new Term("id", "" + random.nextInt(NUM_DOCS)));
+		writer.close();
+	}
+
+	// terms t0 to t2999, the lower ones much more frequent; the highest
+	// are in fewer documents of a segment than the skip interval
+	private static String term(Random random) {
+		return "t" + (int) Math.floor(Math.pow(3000, random.nextDouble()));
+	}
+
+	/**
+	 * Runs random queries with and without pruning and returns the number
+	 * of hits the pruned searches collected, which is less than the number
+	 * of matches if documents were skipped.
+	 */
+	public static int check(IndexReader reader, long seed) throws IOException {
+		Random random = new Random(seed);
+		IndexSearcher searcher = new IndexSearcher(reader);
+		final float[] scores = new float[reader.maxDoc()];
+		int matches = 0;
+		int collected = 0;
+
+		for (int q = 0; q < 200; q++) {
+			BooleanQuery query = new BooleanQuery();
+			for (int i = 2 + random.nextInt(4); i > 0; i--)
+				query.add(new TermQuery(new Term("body", term(random))), BooleanClause.Occur.SHOULD);
+			int numHits = 1 + random.nextInt(50);
+
+			// the exact score of every matching document
+			Arrays.fill(scores, 0.0f);
+			searcher.search(query, new HitCollector() {
+				public void collect(int doc, float score) {
+					scores[doc] = score;
+				}
+			});
+
+			TopDocCollector full = new TopDocCollector(numHits);
+			searcher.search(query, full);
+			TopDocCollector pruned = new TopDocCollector(numHits);
+			pruned.setSkipNonCompetitive(true);
+			searcher.search(query, pruned);
+			matches += full.getTotalHits();
+			collected += pruned.getTotalHits();
+
+			ScoreDoc[] expected = full.topDocs().scoreDocs;
+			TopDocs actual = pruned.topDocs();
+			if (actual.scoreDocs.length != expected.length)
+				throw new RuntimeException(query + ": " + actual.scoreDocs.length + " hits instead of "
+						+ expected.length);
+			float minScore = expected.length == 0 ? 0.0f : expected[expected.length - 1].score;
+			for (int i = 0; i < expected.length; i++) {
+				ScoreDoc hit = actual.scoreDocs[i];
+				if (!close(hit.score, expected[i].score))
+					throw new RuntimeException(query + ": hit " + i + " scores " + hit.score + " instead of "
+							+ expected[i].score);
+				if (!close(hit.score, scores[hit.doc]))
+					throw new RuntimeException(query + ": doc " + hit.doc + " scores " + hit.score
+							+ " instead of " + scores[hit.doc]);
+				if (scores[hit.doc] < minScore && !close(scores[hit.doc], minScore))
+					throw new RuntimeException(query + ": doc " + hit.doc + " is not a top hit");
+			}
+		}
+		searcher.close();
+
+		if (collected >= matches)
+			throw new RuntimeException("no documents were skipped");
+		return collected;
+	}
+
+	private static boolean close(float a, float b) {
+		return Math.abs(a - b) <= TOLERANCE * Math.max(Math.abs(a), Math.abs(b));
+	}
+
+	public static void main(String[] args) throws IOException {
+		Directory dir = new RAMDirectory();
+		buildIndex(dir, true);
+
+		IndexReader reader = IndexReader.open(dir);
+		System.out.println("collected " + check(reader, 1) + " hits");
+
+		// norms changed since the segments were written
+		Random random = new Random(25);
+		for (int i = 0; i < 200; i++)
+			reader.setNorm(random.nextInt(reader.maxDoc()), "body", 8.0f);
+		System.out.println("collected " + check(reader, 2) + " hits after setNorm");
+		reader.close();
+
+		// the same with the separate norms files written
+		reader = IndexReader.open(dir);
+		System.out.println("collected " + check(reader, 3) + " hits with separate norms");
+		reader.close();
+		dir.close();
+
+		// bounds read from the postings only
+		dir = new RAMDirectory();
+		buildIndex(dir, false);
+		reader = IndexReader.open(dir);
+		System.out.println("collected " + check(reader, 4) + " hits without impacts");
+
+		// the deleted documents are back, with term frequencies and norms
+		// the bounds cached so far did not cover
+		reader.undeleteAll();
+		System.out.println("collected " + check(reader, 4) + " hits after undeleteAll");
+		reader.close();
+		dir.close();
+
+		System.out.println("Pruned top hits match");
+	}
+}
@@ -0,0 +1,143 @@
+package test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.WhitespaceTokenizer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.CheckIndex;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Payload;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ * Merges the same segments with one and with several postings threads
+ * (IndexWriter.setMergePostingsThreadCount) and checks that the merged
+ * .tis, .tii, .frq and .prx files are byte for byte the same. The index
+ * has deletions, a field that omits tf and a field with payloads.
+ */
+public class MergePostingsThreadsTest {
+
+	private static final String[] EXTENSIONS = { "tis", "tii", "frq", "prx" };
+
+	// Gives every token of field "payload" a payload of 0 to 3 bytes
+	static class PayloadAnalyzer extends Analyzer {
+		public TokenStream tokenStream(String fieldName, Reader reader) {
+			TokenStream ts = new WhitespaceTokenizer(reader);
+			if (!"payload".equals(fieldName))
+				return ts;
+			return new TokenFilter(ts) {
+				private int count;
+
+				public Token next(final Token reusableToken) throws IOException {
+					Token token = input.next(reusableToken);
+					if (token != null) {
+						byte[] bytes = new byte[count++ % 4];
+						for (int i = 0; i < bytes.length; i++)
+							bytes[i] = (byte) (count + i);
+						token.setPayload(bytes.length == 0 ? null : new Payload(bytes));
+					}
+					return token;
+				}
+			};
+		}
+	}
+
+	public static void buildIndex(Directory dir) throws IOException {
+		Random random = new Random(17);
+		IndexWriter writer = new IndexWriter(dir, new PayloadAnalyzer(), true,
+				IndexWriter.MaxFieldLength.UNLIMITED);
+		writer.setUseCompoundFile(false);
+		writer.setMaxBufferedDocs(250);
+		writer.setMergeFactor(1000);
+		for (int i = 0; i < 3000; i++) {
+			Document doc = new Document();
+			doc.add(new Field("id", "" + i, Field.Store.YES, Field.Index.NOT_ANALYZED));
+			doc.add(new Field("body", words(random, "b", 400), Field.Store.NO, Field.Index.ANALYZED));
+			Field omitTf = new Field("omittf", words(random, "o", 50), Field.Store.NO, Field.Index.ANALYZED);
+			omitTf.setOmitTf(true);
+			doc.add(omitTf);
+			doc.add(new Field("payload", words(random, "p", 100), Field.Store.NO, Field.Index.ANALYZED));
+			writer.addDocument(doc);
+		}
+		writer.close();
+
+		writer = new IndexWriter(dir, new PayloadAnalyzer(), false, IndexWriter.MaxFieldLength.UNLIMITED);
+		for (int i = 0; i < 200; i++)
+			writer.deleteDocuments(new Term("id", "" + random.nextInt(3000)));
+		writer.close();
+	}
+
+	private static String words(Random random, String prefix, int vocabulary) {
+		StringBuffer sb = new StringBuffer();
+		for (int i = random.nextInt(30); i >= 0; i--)
+			sb.append(prefix).append(random.nextInt(vocabulary)).append(' ');
+		return sb.toString();
+	}
+
+	// Optimizes a copy of dir with the given number of postings threads
+	public static Directory optimize(Directory dir, int threadCount) throws IOException {
+		Directory copy = new RAMDirectory(dir);
+		IndexWriter writer = new IndexWriter(copy, new PayloadAnalyzer(), false,
+				IndexWriter.MaxFieldLength.UNLIMITED);
+		writer.setUseCompoundFile(false);
+		writer.setMergePostingsThreadCount(threadCount);
+		writer.optimize();
+		writer.close();
+		if (!new CheckIndex(copy).checkIndex().clean)
+			throw new RuntimeException("index merged with " + threadCount + " threads is not clean");
+		return copy;
+	}
+
+	// Reads the only file of the optimized index with the given extension
+	private static byte[] readFile(Directory dir, String extension) throws IOException {
+		String[] files = dir.list();
+		String name = null;
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].endsWith("." + extension)) {
+				if (name != null)
+					throw new RuntimeException("more than one ." + extension + " file: " + name + ", " + files[i]);
+				name = files[i];
+			}
+		}
+		if (name == null)
+			throw new RuntimeException("no ." + extension + " file");
+		IndexInput in = dir.openInput(name);
+		try {
+			byte[] bytes = new byte[(int) in.length()];
+			in.readBytes(bytes, 0, bytes.length);
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		Directory dir = new RAMDirectory();
+		buildIndex(dir);
+
+		Directory serial = optimize(dir, 1);
+		for (int threads = 2; threads <= 4; threads++) {
+			Directory parallel = optimize(dir, threads);
+			for (int i = 0; i < EXTENSIONS.length; i++) {
+				if (!Arrays.equals(readFile(serial, EXTENSIONS[i]), readFile(parallel, EXTENSIONS[i])))
+					throw new RuntimeException("." + EXTENSIONS[i] + " differs when merged with " + threads + " threads");
+			}
+			parallel.close();
+		}
+		serial.close();
+		dir.close();
+
+		System.out.println("Merged postings are identical");
+	}
+}